@@ -0,0 +1,157 @@
+package portwatch.benchmark;
+
+import portwatch.core.watch.model.HostUpdate;
+import portwatch.core.watch.model.PortSnapshot;
+import portwatch.core.watch.model.PortStatus;
+import portwatch.core.watch.model.PortUpdate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Random;
+
+/**
+ * Deterministic synthetic scan data for benchmarks.
+ * Fixtures are described by a "HOSTSxPORTS" spec, e.g. "100x1000" is 100 hosts with 1000 reported ports each.
+ */
+public final class Fixtures {
+
+    private static final String[] SERVICES = {
+            "ssh OpenSSH 7.4", "http nginx 1.14.0", "https Apache httpd 2.4.29", "mysql MySQL 5.7.23", "?"
+    };
+    private static final double CHANGE_RATE = 0.05; //fraction of ports changed between scans
+
+    private Fixtures() {
+    }
+
+    /**
+     * @param spec fixture spec
+     * @return number of hosts in spec
+     */
+    public static int hosts(String spec) {
+        return Integer.parseInt(spec.substring(0, spec.indexOf('x')));
+    }
+
+    /**
+     * @param spec fixture spec
+     * @return number of ports per host in spec
+     */
+    public static int ports(String spec) {
+        return Integer.parseInt(spec.substring(spec.indexOf('x') + 1));
+    }
+
+    /**
+     * @param host host index
+     * @return synthetic host address
+     */
+    public static String host(int host) {
+        return String.format("10.%d.%d.%d", (host >> 16) & 255, (host >> 8) & 255, host & 255);
+    }
+
+    private static int state(Random random) {
+        return random.nextInt(10) == 0 ? PortSnapshot.FILTERED : PortSnapshot.OPEN;
+    }
+
+    private static String service(Random random) {
+        return SERVICES[random.nextInt(SERVICES.length)];
+    }
+
+    /**
+     * Synthetic nmap XML output (-oX) for every host in spec
+     * @param spec fixture spec
+     * @return UTF-8 XML document
+     */
+    public static byte[] nmapXml(String spec) {
+        Random random = new Random(spec.hashCode());
+        int ports = ports(spec);
+        StringBuilder xml = new StringBuilder();
+        xml.append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+        xml.append("<!DOCTYPE nmaprun>\n");
+        xml.append("<nmaprun scanner=\"nmap\" args=\"nmap -sV -oX -\" version=\"7.70\" xmloutputversion=\"1.04\">\n");
+        for (int host = 0; host < hosts(spec); host++) {
+            xml.append("<host starttime=\"1540000000\" endtime=\"1540000010\"><status state=\"up\" reason=\"syn-ack\"/>\n");
+            xml.append("<address addr=\"").append(host(host)).append("\" addrtype=\"ipv4\"/>\n");
+            xml.append("<hostnames><hostname name=\"host").append(host).append(".example.com\" type=\"PTR\"/></hostnames>\n");
+            xml.append("<ports>\n");
+            for (int port = 1; port <= ports; port++) {
+                String[] service = service(random).split(" ", 2);
+                xml.append("<port protocol=\"tcp\" portid=\"").append(port).append("\">");
+                xml.append("<state state=\"").append(PortSnapshot.stateName(state(random)))
+                        .append("\" reason=\"syn-ack\" reason_ttl=\"64\"/>");
+                if (!service[0].equals("?")) {
+                    String[] product = service[1].split(" (?=[0-9])", 2);
+                    xml.append("<service name=\"").append(service[0]).append("\" product=\"").append(product[0])
+                            .append("\" version=\"").append(product[1]).append("\" method=\"probed\" conf=\"10\"/>");
+                }
+                xml.append("</port>\n");
+            }
+            xml.append("</ports></host>\n");
+        }
+        xml.append("<runstats><finished time=\"1540000010\"/><hosts up=\"").append(hosts(spec))
+                .append("\" down=\"0\" total=\"").append(hosts(spec)).append("\"/></runstats>\n</nmaprun>\n");
+        return xml.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Consecutive scan results for every host in spec, a small fraction of ports differing between them
+     * @param spec fixture spec
+     * @return [host][0] old snapshot and [host][1] new snapshot
+     */
+    public static PortSnapshot[][] snapshotPairs(String spec) {
+        Random random = new Random(spec.hashCode());
+        int ports = ports(spec);
+        PortSnapshot.Builder oldBuilder = new PortSnapshot.Builder();
+        PortSnapshot.Builder newBuilder = new PortSnapshot.Builder();
+        PortSnapshot[][] pairs = new PortSnapshot[hosts(spec)][];
+        for (int host = 0; host < pairs.length; host++) {
+            oldBuilder.reset();
+            newBuilder.reset();
+            for (int port = 1; port <= ports; port++) {
+                int state = state(random);
+                String service = service(random);
+                oldBuilder.add(port, PortSnapshot.stateName(state), service);
+                if (random.nextDouble() >= CHANGE_RATE) {
+                    newBuilder.add(port, PortSnapshot.stateName(state), service);
+                } else if (random.nextBoolean()) {
+                    newBuilder.add(port, PortSnapshot.stateName(state), service(random) + " changed");
+                } //otherwise port closed
+            }
+            pairs[host] = new PortSnapshot[] { oldBuilder.build(), newBuilder.build() };
+        }
+        return pairs;
+    }
+
+    /**
+     * Port updates for one host, in random port order
+     * @param ports number of port updates
+     * @param random source of randomness
+     * @param initial true for initial reports, which have no old status
+     * @return port updates
+     */
+    public static ArrayList<PortUpdate> portUpdates(int ports, Random random, boolean initial) {
+        ArrayList<PortUpdate> updates = new ArrayList<PortUpdate>(ports);
+        for (int port = 1; port <= ports; port++) {
+            String service = service(random);
+            PortStatus oldStatus = initial ? null : new PortStatus("closed", service);
+            updates.add(new PortUpdate(port, oldStatus, new PortStatus(PortSnapshot.stateName(state(random)), service)));
+        }
+        Collections.shuffle(updates, random);
+        return updates;
+    }
+
+    /**
+     * Host updates for every host in spec, one per host
+     * @param spec fixture spec
+     * @param type type of the updates
+     * @return host updates
+     */
+    public static ArrayList<HostUpdate> hostUpdates(String spec, HostUpdate.UpdateType type) {
+        Random random = new Random(spec.hashCode());
+        ArrayList<HostUpdate> updates = new ArrayList<HostUpdate>(hosts(spec));
+        for (int host = 0; host < hosts(spec); host++) {
+            updates.add(new HostUpdate(type, host(host),
+                    portUpdates(ports(spec), random, type != HostUpdate.UpdateType.UPDATE)));
+        }
+        return updates;
+    }
+}
@@ -0,0 +1,120 @@
+package portwatch.core.watch;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import portwatch.benchmark.Fixtures;
+import portwatch.core.config.profile.port.PortSet;
+import portwatch.core.watch.model.HostUpdate;
+import portwatch.core.watch.model.PortSnapshot;
+import portwatch.core.watch.model.PortUpdate;
+import portwatch.core.watch.scan.NmapXmlParser;
+import portwatch.core.watch.scan.ScannedHost;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of the change detection pipeline: result conversion, comparison and update creation.
+ * Every operation processes all hosts of the fixture.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DetectionBenchmark {
+
+    @Param({ "1x10", "1x1000", "1x65535", "100x1000", "10000x10", "10000x100" })
+    public String fixture;
+
+    private byte[] nmapXml;
+    private PortSnapshot[][] snapshots;
+    private PortSet evenPorts; //mask excluding ports that close between the fixture's snapshots
+    private ArrayList<ArrayList<PortUpdate>> portUpdates;
+    private ArrayList<HostUpdate> hostUpdates;
+
+    @Setup
+    public void setup() {
+        this.nmapXml = Fixtures.nmapXml(this.fixture);
+        this.snapshots = Fixtures.snapshotPairs(this.fixture);
+        Random random = new Random(this.fixture.hashCode());
+        this.portUpdates = new ArrayList<ArrayList<PortUpdate>>();
+        for (int host = 0; host < Fixtures.hosts(this.fixture); host++) {
+            this.portUpdates.add(Fixtures.portUpdates(Fixtures.ports(this.fixture), random, false));
+        }
+        this.hostUpdates = Fixtures.hostUpdates(this.fixture, HostUpdate.UpdateType.UPDATE);
+        this.evenPorts = new PortSet();
+        for (int port = 2; port <= PortSet.MAX_PORT; port += 2) {
+            this.evenPorts.add(port);
+        }
+    }
+
+    /**
+     * nmap XML output to compact snapshots
+     */
+    @Benchmark
+    public void convertPorts(final Blackhole blackhole) throws XMLStreamException {
+        new NmapXmlParser().parse(new ByteArrayInputStream(this.nmapXml), new NmapXmlParser.HostListener() {
+            @Override
+            public void hostParsed(ScannedHost host) {
+                blackhole.consume(host);
+            }
+        });
+    }
+
+    /**
+     * Snapshot comparison and update creation for every host
+     */
+    @Benchmark
+    public void compareStatuses(Blackhole blackhole) {
+        for (int host = 0; host < this.snapshots.length; host++) {
+            ArrayList<PortUpdate> updates = PortWatcher.collectUpdates(this.snapshots[host][0], this.snapshots[host][1], false);
+            if (updates.size() > 0) {
+                blackhole.consume(new HostUpdate(HostUpdate.UpdateType.UPDATE, Fixtures.host(host), updates));
+            }
+        }
+    }
+
+    /**
+     * Snapshot comparison restricted to a port profile narrower than the scanned ports
+     */
+    @Benchmark
+    public void compareMasked(Blackhole blackhole) {
+        for (int host = 0; host < this.snapshots.length; host++) {
+            blackhole.consume(PortWatcher.collectUpdates(this.snapshots[host][0], this.snapshots[host][1], this.evenPorts, false));
+        }
+    }
+
+    /**
+     * Initial report creation, every port of every host reported
+     */
+    @Benchmark
+    public void initialStatuses(Blackhole blackhole) {
+        for (int host = 0; host < this.snapshots.length; host++) {
+            ArrayList<PortUpdate> updates = PortWatcher.collectUpdates(PortSnapshot.EMPTY, this.snapshots[host][1], true);
+            blackhole.consume(new HostUpdate(HostUpdate.UpdateType.INITIAL, Fixtures.host(host), updates));
+        }
+    }
+
+    /**
+     * HostUpdate construction, including sorting of unordered port updates
+     */
+    @Benchmark
+    public void hostUpdateConstruction(Blackhole blackhole) {
+        for (int host = 0; host < this.portUpdates.size(); host++) {
+            ArrayList<PortUpdate> updates = new ArrayList<PortUpdate>(this.portUpdates.get(host)); //keep fixture unsorted
+            blackhole.consume(new HostUpdate(HostUpdate.UpdateType.UPDATE, Fixtures.host(host), updates));
+        }
+    }
+
+    @Benchmark
+    public void hostUpdateToString(Blackhole blackhole) {
+        for (HostUpdate hostUpdate : this.hostUpdates) {
+            blackhole.consume(hostUpdate.toString());
+        }
+    }
+}
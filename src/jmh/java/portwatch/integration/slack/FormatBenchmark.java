@@ -0,0 +1,41 @@
+package portwatch.integration.slack;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import portwatch.benchmark.Fixtures;
+import portwatch.core.watch.model.HostUpdate;
+
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks of slack message formatting. Every operation formats one update per host of the fixture.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FormatBenchmark {
+
+    @Param({ "1x10", "1x1000", "1x65535", "100x1000", "10000x10", "10000x100" })
+    public String fixture;
+
+    @Param({ "INITIAL", "UPDATE" })
+    public HostUpdate.UpdateType type;
+
+    private ArrayList<HostUpdate> hostUpdates;
+
+    @Setup
+    public void setup() {
+        this.hostUpdates = Fixtures.hostUpdates(this.fixture, this.type);
+    }
+
+    @Benchmark
+    public void formatUpdate(Blackhole blackhole) {
+        for (HostUpdate hostUpdate : this.hostUpdates) {
+            blackhole.consume(SlackIntegration.formatUpdate(hostUpdate));
+        }
+    }
+}
@@ -2,17 +2,31 @@ package portwatch;
 
 import org.apache.commons.cli.*;
 
+import portwatch.core.cluster.WorkerNode;
 import portwatch.core.config.*;
+import portwatch.core.journal.ChangeJournal;
+import portwatch.core.journal.JournalReader;
+import portwatch.core.journal.JournalRecord;
 import portwatch.core.logging.Logger;
+import portwatch.core.metrics.MetricsServer;
 import portwatch.core.watch.PortWatcher;
 import portwatch.core.watch.model.HostUpdate;
 import portwatch.integration.Integration;
+import portwatch.integration.IntegrationDispatcher;
 import portwatch.integration.slack.SlackIntegration;
 
 import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeParseException;
 import java.util.HashMap;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.TimeUnit;
 
 /**
  * System invoker. Parses program arguments and invokes subsystems accordingly.
@@ -57,28 +71,81 @@ public class PortWatch implements Observer {
     private Options createOptions() {
         Options options = new Options();
 
-        Option optConfig = new Option("c", "config", true, "config path - required");
-        optConfig.setRequired(true);
+        Option optConfig = new Option("c", "config", true, "config path - required unless querying");
+        optConfig.setRequired(false);
         options.addOption(optConfig);
 
         Option optLog = new Option("l", "log", true, "log path");
         optLog.setRequired(false);
         options.addOption(optLog);
 
+        Option optLogSize = new Option("s", "log-size", true, "log rotation size in MB, 0 to disable - default 10");
+        optLogSize.setRequired(false);
+        options.addOption(optLogSize);
+
+        Option optLogRotate = new Option("r", "log-rotate", true, "log rotation interval in hours, 0 to disable - default 24");
+        optLogRotate.setRequired(false);
+        options.addOption(optLogRotate);
+
         Option optDebug = new Option("d", "debug", false, "enable debug message logging");
         optDebug.setRequired(false);
         options.addOption(optDebug);
 
+        Option optQuery = new Option("q", "query", true, "query change journal in given directory and exit");
+        optQuery.setRequired(false);
+        options.addOption(optQuery);
+
+        Option optHost = new Option("H", "host", true, "journal query: host to match");
+        optHost.setRequired(false);
+        options.addOption(optHost);
+
+        Option optPort = new Option("p", "port", true, "journal query: port to match");
+        optPort.setRequired(false);
+        options.addOption(optPort);
+
+        Option optFrom = new Option("f", "from", true, "journal query: start time, yyyy-MM-dd[THH:mm[:ss]]");
+        optFrom.setRequired(false);
+        options.addOption(optFrom);
+
+        Option optTo = new Option("t", "to", true, "journal query: end time, yyyy-MM-dd[THH:mm[:ss]] - a date includes the whole day");
+        optTo.setRequired(false);
+        options.addOption(optTo);
+
+        Option optWorker = new Option("w", "worker", true, "run as a worker of the coordinator at host:port");
+        optWorker.setRequired(false);
+        options.addOption(optWorker);
+
+        Option optName = new Option("n", "name", true, "worker name, unique per coordinator - default pid@hostname");
+        optName.setRequired(false);
+        options.addOption(optName);
+
         return options;
     }
 
     /**
      * Handle command-line input, invoke subsystems accordingly.
      * @param cmd command-line input object
+     * @throws ParseException if required arguments are missing or invalid
      */
-    private void handleInput(CommandLine cmd) {
+    private void handleInput(CommandLine cmd) throws ParseException {
+        if (cmd.hasOption("query")) {
+            queryJournal(cmd);
+            return;
+        }
+        if (!cmd.hasOption("config")) {
+            throw new MissingOptionException("Missing required option: c");
+        }
+
         if (cmd.hasOption("log")) {
-            Logger.logFile = new File(cmd.getOptionValue("log"));
+            try {
+                long logSizeMb = Long.parseLong(cmd.getOptionValue("log-size", "10"));
+                long logRotateHours = Long.parseLong(cmd.getOptionValue("log-rotate", "24"));
+                Logger.setLogFile(new File(cmd.getOptionValue("log")), logSizeMb * 1024 * 1024,
+                        TimeUnit.HOURS.toMillis(logRotateHours));
+            } catch (NumberFormatException e) {
+                System.err.println("Invalid log rotation setting: " + e.getMessage());
+                System.exit(1);
+            }
         }
         if (cmd.hasOption("debug")) {
             Logger.logVerbosity = Logger.Verbosity.DEBUG;
@@ -86,8 +153,29 @@ public class PortWatch implements Observer {
 
         AppConfig appConfig = AppConfigLoader.load(cmd.getOptionValue("config"));
 
+        //serve metrics before scanning starts so every scan is measured
+        MetricsConfig metricsConfig = appConfig.getMetricsConfig();
+        if (metricsConfig != null) {
+            try {
+                new MetricsServer(new InetSocketAddress(metricsConfig.getAddress(), metricsConfig.getPort())).start();
+            } catch (IOException e) {
+                Logger.logError("Unable to serve metrics: " + e.getMessage(), getClass());
+            }
+        }
+
+        if (cmd.hasOption("worker")) {
+            runWorker(cmd, appConfig.getScanConfig());
+            return;
+        }
+
         //create scanning subsystem
-        PortWatcher portWatcher = new PortWatcher(appConfig.getScanConfig());
+        PortWatcher portWatcher = null;
+        try {
+            portWatcher = new PortWatcher(appConfig.getScanConfig());
+        } catch (IOException e) {
+            Logger.logError(e.getMessage(), getClass());
+            System.exit(1);
+        }
 
         //create integration subsystems
         Logger.logDebug("Loading integrations");
@@ -100,11 +188,156 @@ public class PortWatch implements Observer {
                 Logger.logError("Unknown integration: " + key, getClass());
                 continue;
             }
-            portWatcher.addObserver(integration);
+            IntegrationDispatcher dispatcher = createDispatcher(integration, integrations.get(key));
+            if (dispatcher == null) {
+                continue;
+            }
+            dispatcher.start();
+            portWatcher.addObserver(dispatcher);
+        }
+
+        //create change journal
+        if (appConfig.getScanConfig().getJournalDir() != null) {
+            try {
+                final ChangeJournal journal = new ChangeJournal(new File(appConfig.getScanConfig().getJournalDir()));
+                portWatcher.addObserver(journal);
+                //write the journal's buffered records on exit
+                Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        journal.close();
+                    }
+                }, "journal-close"));
+            } catch (IOException e) {
+                Logger.logError("Unable to open journal: " + e.getMessage(), getClass());
+            }
         }
 
         portWatcher.addObserver(this);
         new Thread(portWatcher).start(); //begin scanning
+
+        //apply host changes from config edits without restarting
+        ConfigWatcher configWatcher = new ConfigWatcher(cmd.getOptionValue("config"));
+        configWatcher.addObserver(portWatcher);
+        Thread configWatcherThread = new Thread(configWatcher, "config-watcher");
+        configWatcherThread.setDaemon(true);
+        configWatcherThread.start();
+    }
+
+    /**
+     * Scan for a coordinator instead of watching the configured hosts
+     * @param cmd command-line input object
+     * @param scanConfig local scanning configuration, its hosts are ignored
+     * @throws ParseException if the coordinator address is invalid
+     */
+    private void runWorker(CommandLine cmd, ScanConfig scanConfig) throws ParseException {
+        String coordinator = cmd.getOptionValue("worker");
+        int separator = coordinator.lastIndexOf(':');
+        InetSocketAddress address;
+        try {
+            address = new InetSocketAddress(coordinator.substring(0, separator), Integer.parseInt(coordinator.substring(separator + 1)));
+        } catch (IllegalArgumentException | StringIndexOutOfBoundsException e) {
+            throw new ParseException("Invalid coordinator address: " + coordinator);
+        }
+        if (scanConfig.getEngine() == ScanConfig.Engine.CLUSTER) {
+            throw new ParseException("Workers can't use the cluster engine");
+        }
+        String name = cmd.getOptionValue("name", ManagementFactory.getRuntimeMXBean().getName());
+        try {
+            new Thread(new WorkerNode(scanConfig, address, name), "cluster-worker").start();
+        } catch (IOException e) {
+            Logger.logError(e.getMessage(), getClass());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Print journaled changes matching the query options
+     * @param cmd command-line input object
+     * @throws ParseException if query options are invalid
+     */
+    private void queryJournal(CommandLine cmd) throws ParseException {
+        File directory = new File(cmd.getOptionValue("query"));
+        if (!directory.isDirectory()) {
+            throw new ParseException("Journal directory not found: " + directory);
+        }
+        String host = cmd.getOptionValue("host");
+        int port = -1;
+        if (cmd.hasOption("port")) {
+            try {
+                port = Integer.parseInt(cmd.getOptionValue("port"));
+            } catch (NumberFormatException e) {
+                throw new ParseException("Invalid port: " + cmd.getOptionValue("port"));
+            }
+        }
+        long from = cmd.hasOption("from") ? parseTime(cmd.getOptionValue("from"), false) : Long.MIN_VALUE;
+        long to = cmd.hasOption("to") ? parseTime(cmd.getOptionValue("to"), true) : Long.MAX_VALUE;
+
+        JournalReader reader = new JournalReader(directory);
+        final long[] matches = new long[1];
+        try {
+            reader.query(host, port, from, to, new JournalReader.RecordVisitor() {
+                @Override
+                public void visit(JournalRecord record) {
+                    System.out.println(record);
+                    matches[0]++;
+                }
+            });
+        } catch (IOException e) {
+            System.err.println("Unable to read journal: " + e.getMessage());
+            System.exit(1);
+        }
+        System.err.println(String.format("%d changes, %d blocks read, %d blocks skipped",
+                matches[0], reader.getBlocksRead(), reader.getBlocksSkipped()));
+    }
+
+    /**
+     * Parse a local date or date-time argument
+     * @param time time string, yyyy-MM-dd or yyyy-MM-ddTHH:mm[:ss]
+     * @param end true if the time ends an inclusive range, a date then means its last millisecond
+     * @return epoch millis
+     * @throws ParseException if the time is invalid
+     */
+    private long parseTime(String time, boolean end) throws ParseException {
+        try {
+            if (time.indexOf('T') < 0) {
+                LocalDate date = LocalDate.parse(time);
+                if (end) {
+                    return date.plusDays(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli() - 1;
+                }
+                return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+            }
+            return LocalDateTime.parse(time).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        } catch (DateTimeParseException e) {
+            throw new ParseException("Invalid time: " + time);
+        }
+    }
+
+    /**
+     * Create asynchronous dispatcher for an integration from its queue settings
+     * @param integration integration to dispatch updates to
+     * @param integrationConfig integration's configuration
+     * @return dispatcher, null if queue settings are invalid
+     */
+    private IntegrationDispatcher createDispatcher(Integration integration, IntegrationConfig integrationConfig) {
+        int queueSize = IntegrationDispatcher.DEFAULT_QUEUE_SIZE;
+        IntegrationDispatcher.OverflowPolicy overflowPolicy = IntegrationDispatcher.OverflowPolicy.COALESCE;
+        try {
+            if (integrationConfig.get("queueSize") != null) {
+                queueSize = Integer.parseInt(integrationConfig.get("queueSize"));
+            }
+        } catch (NumberFormatException e) {
+            Logger.logError("Invalid queueSize: " + integrationConfig.get("queueSize"), getClass());
+            return null;
+        }
+        if (integrationConfig.get("overflow") != null) {
+            overflowPolicy = IntegrationDispatcher.parsePolicy(integrationConfig.get("overflow"));
+            if (overflowPolicy == null) {
+                Logger.logError("Invalid overflow policy: " + integrationConfig.get("overflow"), getClass());
+                return null;
+            }
+        }
+        return new IntegrationDispatcher(integration, Math.max(1, queueSize), overflowPolicy);
     }
 
     @Override
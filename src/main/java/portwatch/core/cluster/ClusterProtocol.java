@@ -0,0 +1,138 @@
+package portwatch.core.cluster;
+
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+import portwatch.core.watch.model.ServiceTable;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+
+/**
+ * Messages exchanged between a coordinator and its workers over TCP.
+ * Each message is a type byte followed by its fields, written with DataOutputStream:
+ * <pre>
+ * HELLO  worker to coordinator: magic, version, name, capacity
+ * SCAN   coordinator to worker: request id, port spec, host count, hosts
+ * RESULT worker to coordinator: request id, host count, (host, snapshot) per host
+ * FAILED worker to coordinator: request id, error message
+ * PING   either direction, keeps idle connections from timing out
+ * CANCEL coordinator to worker: request id, of a request the coordinator gave up on
+ * </pre>
+ * Snapshots are sent as their present ports only, 5 bytes per port plus a table of service names.
+ */
+final class ClusterProtocol {
+
+    static final int MAGIC = 0x50574331; //"PWC1"
+    static final int VERSION = 2;
+
+    static final byte HELLO = 1;
+    static final byte SCAN = 2;
+    static final byte RESULT = 3;
+    static final byte FAILED = 4;
+    static final byte PING = 5;
+    static final byte CANCEL = 6;
+
+    static final int HEARTBEAT_MILLIS = 5000; //interval between pings
+    static final int TIMEOUT_MILLIS = 3 * HEARTBEAT_MILLIS; //silence after which a peer is considered lost
+
+    private static final int MAX_HOSTS = 1 << 20; //sanity limit on counts read from a peer
+    private static final int MAX_PORTS = PortSnapshot.MAX_PORT + 1;
+
+    private ClusterProtocol() {
+    }
+
+    /**
+     * Write a snapshot's timestamp, up flag and present ports
+     * @param out stream to write to
+     * @param snapshot snapshot to write
+     * @throws IOException if writing fails
+     */
+    static void writeSnapshot(DataOutputStream out, HostSnapshot snapshot) throws IOException {
+        PortSnapshot ports = snapshot.getPorts();
+        final int[] portNumbers = new int[ports.getPortCount()];
+        final int[] states = new int[portNumbers.length];
+        final int[] serviceIds = new int[portNumbers.length];
+        ports.forEachPort(new PortSnapshot.ChangeVisitor() {
+            private int i = 0;
+
+            @Override
+            public void portChanged(int port, int oldState, int oldService, int newState, int newService) {
+                portNumbers[i] = port;
+                states[i] = newState;
+                serviceIds[i++] = newService;
+            }
+        });
+
+        //services are sent by name, ids are local to each process
+        HashMap<Integer, Integer> tableIndexes = new HashMap<Integer, Integer>();
+        for (int serviceId : serviceIds) {
+            if (!tableIndexes.containsKey(serviceId)) {
+                tableIndexes.put(serviceId, tableIndexes.size());
+            }
+        }
+        String[] table = new String[tableIndexes.size()];
+        for (Integer serviceId : tableIndexes.keySet()) {
+            table[tableIndexes.get(serviceId)] = ServiceTable.nameOf(serviceId);
+        }
+
+        out.writeLong(snapshot.getTimestamp());
+        out.writeBoolean(snapshot.isUp());
+        out.writeShort(table.length);
+        for (String service : table) {
+            out.writeUTF(service);
+        }
+        out.writeInt(portNumbers.length);
+        for (int i = 0; i < portNumbers.length; i++) {
+            out.writeShort(portNumbers[i]);
+            out.writeByte(states[i]);
+            out.writeShort(tableIndexes.get(serviceIds[i]));
+        }
+    }
+
+    /**
+     * Read a snapshot written by writeSnapshot
+     * @param in stream to read from
+     * @return snapshot read
+     * @throws IOException if reading fails or the snapshot is malformed
+     */
+    static HostSnapshot readSnapshot(DataInputStream in) throws IOException {
+        long timestamp = in.readLong();
+        boolean up = in.readBoolean();
+        int[] table = new int[in.readUnsignedShort()];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = ServiceTable.idOf(in.readUTF());
+        }
+        int portCount = in.readInt();
+        if (portCount < 0 || portCount > MAX_PORTS) {
+            throw new IOException("Invalid port count: " + portCount);
+        }
+        if (portCount == 0) {
+            return new HostSnapshot(timestamp, up, PortSnapshot.EMPTY);
+        }
+        PortSnapshot.Builder builder = new PortSnapshot.Builder();
+        for (int i = 0; i < portCount; i++) {
+            int port = in.readUnsignedShort();
+            int state = in.readUnsignedByte();
+            int tableIndex = in.readUnsignedShort();
+            if (tableIndex >= table.length) {
+                throw new IOException("Invalid service index: " + tableIndex);
+            }
+            builder.add(port, state, table[tableIndex]);
+        }
+        return new HostSnapshot(timestamp, up, builder.build());
+    }
+
+    /**
+     * @param count host count read from a peer
+     * @return count
+     * @throws IOException if the count is out of bounds
+     */
+    static int checkHostCount(int count) throws IOException {
+        if (count < 0 || count > MAX_HOSTS) {
+            throw new IOException("Invalid host count: " + count);
+        }
+        return count;
+    }
+}
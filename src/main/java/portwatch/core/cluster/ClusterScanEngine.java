@@ -0,0 +1,232 @@
+package portwatch.core.cluster;
+
+import portwatch.core.config.ClusterConfig;
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Counter;
+import portwatch.core.metrics.Gauge;
+import portwatch.core.metrics.Metrics;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.scan.ScanEngine;
+import portwatch.core.watch.scan.ScanException;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Coordinator engine, distributes scans to registered worker nodes instead of scanning locally.
+ * Hosts are assigned to workers by consistent hashing, so a host keeps being scanned by the same worker
+ * until workers join or leave. Hosts of a worker that disconnects are reassigned to the remaining workers
+ * within the same scan. A request that times out is cancelled on its worker, which stays registered, and its hosts
+ * are reassigned to the next worker on the ring; workers that lost a request aren't given its batch's hosts again.
+ */
+public class ClusterScanEngine implements ScanEngine {
+
+    private static final int MAX_ATTEMPTS = 3; //assignments of a host before its batch fails
+
+    private static final Gauge workerCount = Metrics.gauge("portwatch_cluster_workers",
+            "Workers registered with the coordinator", null);
+    private static final Counter reassignedHosts = Metrics.counter("portwatch_cluster_reassigned_total",
+            "Hosts reassigned after their worker disconnected or their request timed out", null);
+
+    private ClusterConfig config;
+    private HashRing ring = new HashRing(); //guarded by workers
+    private HashMap<String, WorkerConnection> workers = new HashMap<String, WorkerConnection>(); //mapped by name
+    private AtomicLong nextRequestId = new AtomicLong();
+    private ServerSocket serverSocket;
+
+    /**
+     * @param config coordinator listener configuration
+     */
+    public ClusterScanEngine(ClusterConfig config) {
+        this.config = config;
+        workerCount.set(0);
+    }
+
+    /**
+     * Begin accepting workers and sending them heartbeats on daemon threads
+     * @throws IOException if the address can't be bound
+     */
+    public void start() throws IOException {
+        this.serverSocket = new ServerSocket();
+        this.serverSocket.setReuseAddress(true);
+        this.serverSocket.bind(new InetSocketAddress(this.config.getAddress(), this.config.getPort()));
+
+        Thread acceptThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                acceptWorkers();
+            }
+        }, "cluster-accept");
+        acceptThread.setDaemon(true);
+        acceptThread.start();
+
+        ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cluster-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        heartbeat.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (WorkerConnection worker : getWorkers()) {
+                    worker.ping();
+                }
+            }
+        }, ClusterProtocol.HEARTBEAT_MILLIS, ClusterProtocol.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+
+        Logger.logNormal("Accepting workers on " + this.config.getAddress() + ":" + this.config.getPort());
+    }
+
+    private void acceptWorkers() {
+        while (!this.serverSocket.isClosed()) {
+            try {
+                Socket socket = this.serverSocket.accept();
+                WorkerConnection worker = new WorkerConnection(this, socket);
+                Thread thread = new Thread(worker, "cluster-worker-" + socket.getRemoteSocketAddress());
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!this.serverSocket.isClosed()) {
+                    Logger.logError("Unable to accept worker: " + e.getMessage(), getClass());
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a worker to the ring, replacing a previous connection of the same name
+     * @param worker worker that said hello
+     */
+    void register(WorkerConnection worker) {
+        WorkerConnection previous;
+        int size;
+        synchronized (this.workers) {
+            previous = this.workers.put(worker.getName(), worker);
+            this.ring.add(worker.getName(), worker.getCapacity());
+            size = this.workers.size();
+        }
+        workerCount.set(size);
+        if (previous != null) {
+            previous.close("replaced by reconnected worker");
+        }
+        Logger.logNormal(String.format("Worker %s registered from %s with capacity %d, %d workers", worker.getName(),
+                worker.getAddress(), worker.getCapacity(), size));
+    }
+
+    /**
+     * Remove a worker from the ring, its hosts move to the remaining workers
+     * @param worker closed worker connection
+     * @param reason reason the worker was lost, for logging
+     */
+    void unregister(WorkerConnection worker, String reason) {
+        int size;
+        synchronized (this.workers) {
+            if (this.workers.get(worker.getName()) != worker) {
+                return; //already replaced by a newer connection
+            }
+            this.workers.remove(worker.getName());
+            this.ring.remove(worker.getName());
+            size = this.workers.size();
+        }
+        workerCount.set(size);
+        Logger.logNormal(String.format("Worker %s lost (%s), rebalancing across %d workers", worker.getName(), reason, size));
+    }
+
+    private ArrayList<WorkerConnection> getWorkers() {
+        synchronized (this.workers) {
+            return new ArrayList<WorkerConnection>(this.workers.values());
+        }
+    }
+
+    @Override
+    public HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        HashMap<String, HostSnapshot> results = new HashMap<String, HostSnapshot>();
+        ArrayList<HostProfile> unassigned = hostProfiles;
+        HashSet<String> excluded = new HashSet<String>(); //workers that lost a request of this batch
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(this.config.getRequestTimeoutSeconds());
+        for (int attempt = 1; ; attempt++) {
+            ArrayList<WorkerRequest> requests = new ArrayList<WorkerRequest>();
+            for (Map.Entry<WorkerConnection, ArrayList<HostProfile>> assignment : assign(unassigned, excluded).entrySet()) {
+                requests.add(assignment.getKey().submit(this.nextRequestId.incrementAndGet(), assignment.getValue()));
+            }
+
+            ArrayList<HostProfile> lost = new ArrayList<HostProfile>();
+            String lostReason = null;
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis); //requests run concurrently
+            for (WorkerRequest request : requests) {
+                long remainingMillis = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                WorkerRequest.Outcome outcome = request.await(Math.max(0, remainingMillis));
+                if (outcome == WorkerRequest.Outcome.COMPLETED) {
+                    results.putAll(request.getResults());
+                } else if (outcome == WorkerRequest.Outcome.FAILED) {
+                    throw new ScanException("Worker " + request.getWorker().getName() + ": " + request.getError());
+                } else {
+                    lost.addAll(request.getHostProfiles());
+                    lostReason = request.getError();
+                    excluded.add(request.getWorker().getName()); //a slow worker would only time out again
+                }
+            }
+            if (lost.isEmpty()) {
+                return results;
+            }
+            if (attempt == MAX_ATTEMPTS) {
+                throw new ScanException(String.format("%d hosts unscanned after %d attempts: %s", lost.size(), attempt, lostReason));
+            }
+            reassignedHosts.add(lost.size());
+            Logger.logDebug(String.format("Reassigning %d hosts: %s", lost.size(), lostReason));
+            unassigned = lost;
+        }
+    }
+
+    /**
+     * Group host profiles by the worker owning each host on the ring
+     * @param hostProfiles host profiles to assign
+     * @param excluded names of workers passed over, hosts they own go to the next worker on the ring
+     * @return host profiles mapped by worker
+     * @throws ScanException if no workers are registered, or all of them are excluded
+     */
+    private HashMap<WorkerConnection, ArrayList<HostProfile>> assign(ArrayList<HostProfile> hostProfiles,
+                                                                     HashSet<String> excluded) throws ScanException {
+        HashMap<WorkerConnection, ArrayList<HostProfile>> assignments = new HashMap<WorkerConnection, ArrayList<HostProfile>>();
+        synchronized (this.workers) {
+            if (this.ring.isEmpty()) {
+                throw new ScanException("No workers registered");
+            }
+            for (HostProfile hostProfile : hostProfiles) {
+                String name = this.ring.get(hostProfile.getHost(), excluded);
+                if (name == null) {
+                    throw new ScanException(String.format("%d hosts unscanned, every worker lost a request of them",
+                            hostProfiles.size()));
+                }
+                WorkerConnection worker = this.workers.get(name);
+                ArrayList<HostProfile> assigned = assignments.get(worker);
+                if (assigned == null) {
+                    assigned = new ArrayList<HostProfile>();
+                    assignments.put(worker, assigned);
+                }
+                assigned.add(hostProfile);
+            }
+        }
+        return assignments;
+    }
+
+    @Override
+    public String getName() {
+        return "cluster";
+    }
+}
@@ -0,0 +1,114 @@
+package portwatch.core.cluster;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping hosts to worker names.
+ * Each worker owns virtual nodes in proportion to its capacity, so adding or removing a worker
+ * only moves the hosts that worker gains or loses, and workers with more capacity take a larger share.
+ * Not thread-safe, callers synchronize.
+ */
+class HashRing {
+
+    static final int VIRTUAL_NODES_PER_SLOT = 32; //virtual nodes per unit of worker capacity
+    private static final int MAX_VIRTUAL_NODES = 4096; //per worker
+
+    private TreeMap<Long, String> ring = new TreeMap<Long, String>();
+    private HashMap<String, Integer> nodeCounts = new HashMap<String, Integer>(); //virtual nodes placed per worker
+
+    /**
+     * @param worker worker name, replacing any existing placement
+     * @param capacity concurrent scans the worker runs
+     */
+    void add(String worker, int capacity) {
+        remove(worker);
+        int nodes = (int) Math.min(MAX_VIRTUAL_NODES, (long) Math.max(1, capacity) * VIRTUAL_NODES_PER_SLOT);
+        for (int i = 0; i < nodes; i++) {
+            long point = hash(worker + "#" + i);
+            if (!this.ring.containsKey(point)) { //keep the first owner of a colliding point
+                this.ring.put(point, worker);
+            }
+        }
+        this.nodeCounts.put(worker, nodes);
+    }
+
+    /**
+     * @param worker worker name to remove, its hosts move to the next workers on the ring
+     */
+    void remove(String worker) {
+        Integer nodes = this.nodeCounts.remove(worker);
+        if (nodes == null) {
+            return;
+        }
+        for (int i = 0; i < nodes; i++) {
+            long point = hash(worker + "#" + i);
+            if (worker.equals(this.ring.get(point))) {
+                this.ring.remove(point);
+            }
+        }
+    }
+
+    /**
+     * @param host host to place
+     * @return name of the worker owning the host, null if the ring is empty
+     */
+    String get(String host) {
+        return get(host, Collections.<String>emptySet());
+    }
+
+    /**
+     * @param host host to place
+     * @param excluded names of workers to pass over
+     * @return name of the first worker after the host's position that isn't excluded, which is the owner the host
+     * would have if the excluded workers left, null if every worker is excluded
+     */
+    String get(String host, Set<String> excluded) {
+        if (excluded.containsAll(this.nodeCounts.keySet())) {
+            return null;
+        }
+        long point = hash(host);
+        for (String worker : this.ring.tailMap(point, true).values()) {
+            if (!excluded.contains(worker)) {
+                return worker;
+            }
+        }
+        for (String worker : this.ring.headMap(point, false).values()) {
+            if (!excluded.contains(worker)) {
+                return worker;
+            }
+        }
+        return null;
+    }
+
+    boolean isEmpty() {
+        return this.ring.isEmpty();
+    }
+
+    int size() {
+        return this.nodeCounts.size();
+    }
+
+    /**
+     * 64-bit FNV-1a, finished with a murmur3 mix so similar keys spread around the ring
+     * @param key key to hash
+     * @return ring position
+     */
+    static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
@@ -0,0 +1,207 @@
+package portwatch.core.cluster;
+
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.logging.Logger;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Coordinator's connection to one worker. Reads the worker's hello and results on its own thread,
+ * scan requests are written by the scan threads waiting on them.
+ */
+class WorkerConnection implements Runnable {
+
+    private ClusterScanEngine engine;
+    private Socket socket;
+    private DataInputStream in;
+    private DataOutputStream out; //guarded by itself
+
+    private String name; //set by the worker's hello
+    private int capacity;
+
+    private ConcurrentHashMap<Long, WorkerRequest> requests = new ConcurrentHashMap<Long, WorkerRequest>(); //awaiting results
+    private volatile boolean closed = false;
+
+    /**
+     * @param engine engine to register with once the worker says hello
+     * @param socket accepted worker socket
+     * @throws IOException if the socket's streams can't be opened
+     */
+    WorkerConnection(ClusterScanEngine engine, Socket socket) throws IOException {
+        this.engine = engine;
+        this.socket = socket;
+        this.socket.setSoTimeout(ClusterProtocol.TIMEOUT_MILLIS);
+        this.socket.setTcpNoDelay(true);
+        this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+    }
+
+    @Override
+    public void run() {
+        String reason = "connection closed";
+        try {
+            readHello();
+            this.engine.register(this);
+            while (!this.closed) {
+                byte type = this.in.readByte();
+                if (type == ClusterProtocol.RESULT) {
+                    readResult();
+                } else if (type == ClusterProtocol.FAILED) {
+                    WorkerRequest request = this.requests.remove(this.in.readLong());
+                    String error = this.in.readUTF();
+                    if (request != null) {
+                        request.fail(error);
+                    }
+                } else if (type != ClusterProtocol.PING) {
+                    throw new IOException("Unknown message type: " + type);
+                }
+            }
+        } catch (EOFException e) {
+            reason = "connection closed";
+        } catch (IOException e) {
+            reason = e.getMessage();
+        } finally {
+            close(reason);
+        }
+    }
+
+    private void readHello() throws IOException {
+        if (this.in.readByte() != ClusterProtocol.HELLO || this.in.readInt() != ClusterProtocol.MAGIC) {
+            throw new IOException("Not a PortWatch worker");
+        }
+        int version = this.in.readInt();
+        if (version != ClusterProtocol.VERSION) {
+            throw new IOException("Unsupported protocol version: " + version);
+        }
+        this.name = this.in.readUTF();
+        this.capacity = Math.max(1, this.in.readInt());
+    }
+
+    private void readResult() throws IOException {
+        long id = this.in.readLong();
+        int count = ClusterProtocol.checkHostCount(this.in.readInt());
+        HashMap<String, HostSnapshot> results = new HashMap<String, HostSnapshot>();
+        for (int i = 0; i < count; i++) {
+            String host = this.in.readUTF();
+            results.put(host, ClusterProtocol.readSnapshot(this.in));
+        }
+        WorkerRequest request = this.requests.remove(id);
+        if (request != null) { //null if the request timed out meanwhile
+            request.complete(results);
+        }
+    }
+
+    /**
+     * Send a scan request to the worker
+     * @param id request id
+     * @param hostProfiles host profiles to scan, all sharing the same port profile
+     * @return request to await, lost immediately if the worker is disconnected
+     */
+    WorkerRequest submit(long id, ArrayList<HostProfile> hostProfiles) {
+        WorkerRequest request = new WorkerRequest(id, this, hostProfiles);
+        this.requests.put(id, request);
+        if (this.closed) { //closed before the request was tracked, close won't see it
+            this.requests.remove(id);
+            request.lose("worker disconnected");
+            return request;
+        }
+        try {
+            synchronized (this.out) {
+                this.out.writeByte(ClusterProtocol.SCAN);
+                this.out.writeLong(id);
+                this.out.writeUTF(hostProfiles.get(0).getPortProfile().toString());
+                this.out.writeInt(hostProfiles.size());
+                for (HostProfile hostProfile : hostProfiles) {
+                    this.out.writeUTF(hostProfile.getHost());
+                }
+                this.out.flush();
+            }
+        } catch (IOException e) {
+            close(e.getMessage());
+        }
+        return request;
+    }
+
+    /**
+     * Stop tracking a request and tell the worker to cancel it, its result is ignored if the worker still sends one
+     * @param id request id
+     */
+    void abandon(long id) {
+        this.requests.remove(id);
+        try {
+            synchronized (this.out) {
+                this.out.writeByte(ClusterProtocol.CANCEL);
+                this.out.writeLong(id);
+                this.out.flush();
+            }
+        } catch (IOException e) {
+            close(e.getMessage());
+        }
+    }
+
+    /**
+     * Send a heartbeat so the worker doesn't time out an idle connection
+     */
+    void ping() {
+        try {
+            synchronized (this.out) {
+                this.out.writeByte(ClusterProtocol.PING);
+                this.out.flush();
+            }
+        } catch (IOException e) {
+            close(e.getMessage());
+        }
+    }
+
+    /**
+     * Close the connection, unregister the worker and lose its outstanding requests so their hosts are reassigned
+     * @param reason reason for closing, for logging
+     */
+    void close(String reason) {
+        synchronized (this) {
+            if (this.closed) {
+                return;
+            }
+            this.closed = true;
+        }
+        try {
+            this.socket.close();
+        } catch (IOException e) {
+            //closing anyway
+        }
+        if (this.name != null) {
+            this.engine.unregister(this, reason);
+        }
+        for (Long id : this.requests.keySet()) {
+            WorkerRequest request = this.requests.remove(id);
+            if (request != null) {
+                request.lose("worker " + this.name + " disconnected");
+            }
+        }
+    }
+
+    String getName() {
+        return this.name;
+    }
+
+    int getCapacity() {
+        return this.capacity;
+    }
+
+    /**
+     * @return remote address of the worker, for logging
+     */
+    String getAddress() {
+        return this.socket.getRemoteSocketAddress().toString();
+    }
+}
@@ -0,0 +1,281 @@
+package portwatch.core.cluster;
+
+import portwatch.core.config.ScanConfig;
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.config.profile.port.PortProfile;
+import portwatch.core.config.profile.port.PortSpecProfile;
+import portwatch.core.logging.Logger;
+import portwatch.core.watch.history.ScanHistory;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.scan.RateBudget;
+import portwatch.core.watch.scan.ScanEngine;
+import portwatch.core.watch.scan.ScanException;
+import portwatch.core.watch.scan.SupervisedScanEngine;
+import portwatch.core.watch.threading.ScanThreadManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Worker mode. Connects to a coordinator, runs the scans it is sent with the locally configured engine
+ * and streams the results back. Reconnects with backoff whenever the coordinator is lost.
+ */
+public class WorkerNode implements Runnable {
+
+    private static final long MIN_BACKOFF_MILLIS = 1000;
+    private static final long MAX_BACKOFF_MILLIS = 30000;
+
+    private ScanConfig config;
+    private InetSocketAddress coordinator;
+    private String name;
+
+    private ScanEngine engine;
+    private ScanHistory scanHistory; //results of this worker's hosts, hybrid scans carry services over from it
+    private ExecutorService scanners;
+    private ScheduledExecutorService heartbeat;
+    private HashMap<String, PortProfile> portProfiles = new HashMap<String, PortProfile>(); //compiled per spec, guarded by itself
+
+    /**
+     * @param config local scanning configuration, its engine, scan type, maxThreads and scan supervision are used
+     * @param coordinator coordinator address to connect to
+     * @param name worker name, hosts are placed on workers by name
+     * @throws IOException if the scan engine can't be started
+     */
+    public WorkerNode(ScanConfig config, InetSocketAddress coordinator, String name) throws IOException {
+        this.config = config;
+        this.coordinator = coordinator;
+        this.name = name;
+        this.scanHistory = new ScanHistory(config.getHistoryDepth());
+        this.scanners = Executors.newFixedThreadPool(config.getMaxThreads(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "scan-worker-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        RateBudget rateBudget = null;
+        if (config.getMaxRate() > 0) {
+            final ThreadPoolExecutor pool = (ThreadPoolExecutor) this.scanners; //fixed thread pools are ThreadPoolExecutors
+            rateBudget = new RateBudget(config.getMaxRate(), config.getMaxThreads(), new RateBudget.Demand() {
+                @Override
+                public int get() {
+                    return pool.getActiveCount() + pool.getQueue().size();
+                }
+            });
+        }
+        this.engine = new SupervisedScanEngine(ScanThreadManager.createEngine(config, this.scanHistory, rateBudget), config);
+        this.heartbeat = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "cluster-heartbeat");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Serve the coordinator until interrupted, reconnecting with exponential backoff
+     */
+    public void run() {
+        long backoffMillis = MIN_BACKOFF_MILLIS;
+        while (!Thread.interrupted()) {
+            Socket socket = new Socket();
+            try {
+                socket.connect(this.coordinator, ClusterProtocol.TIMEOUT_MILLIS);
+                Logger.logNormal(String.format("Connected to coordinator %s as %s", this.coordinator, this.name));
+                backoffMillis = MIN_BACKOFF_MILLIS;
+                serve(socket);
+            } catch (EOFException e) {
+                Logger.logError("Coordinator " + this.coordinator + " closed the connection", getClass());
+            } catch (IOException e) {
+                Logger.logError("Coordinator " + this.coordinator + " unavailable: " + e.getMessage(), getClass());
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e) {
+                    //reconnecting anyway
+                }
+            }
+
+            try {
+                Thread.sleep(backoffMillis);
+            } catch (InterruptedException e) {
+                break;
+            }
+            backoffMillis = Math.min(MAX_BACKOFF_MILLIS, backoffMillis * 2);
+        }
+    }
+
+    /**
+     * Say hello, then run scan requests until the connection is lost.
+     * The coordinator reassigns a lost connection's requests, so scans still queued or running for it are cancelled.
+     * @param socket connected coordinator socket
+     * @throws IOException when the connection is lost
+     */
+    private void serve(Socket socket) throws IOException {
+        socket.setSoTimeout(ClusterProtocol.TIMEOUT_MILLIS);
+        socket.setTcpNoDelay(true);
+        DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+        final DataOutputStream out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+
+        synchronized (out) {
+            out.writeByte(ClusterProtocol.HELLO);
+            out.writeInt(ClusterProtocol.MAGIC);
+            out.writeInt(ClusterProtocol.VERSION);
+            out.writeUTF(this.name);
+            out.writeInt(this.config.getMaxThreads());
+            out.flush();
+        }
+
+        ScheduledFuture<?> pings = this.heartbeat.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    synchronized (out) {
+                        out.writeByte(ClusterProtocol.PING);
+                        out.flush();
+                    }
+                } catch (IOException e) {
+                    //the read loop notices the lost connection
+                }
+            }
+        }, ClusterProtocol.HEARTBEAT_MILLIS, ClusterProtocol.HEARTBEAT_MILLIS, TimeUnit.MILLISECONDS);
+
+        final ConcurrentHashMap<Long, Future<?>> tasks = new ConcurrentHashMap<Long, Future<?>>(); //queued and running scans by request id
+        try {
+            while (true) {
+                byte type = in.readByte();
+                if (type == ClusterProtocol.SCAN) {
+                    final long id = in.readLong();
+                    PortProfile portProfile = getPortProfile(in.readUTF());
+                    int count = ClusterProtocol.checkHostCount(in.readInt());
+                    final ArrayList<HostProfile> hostProfiles = new ArrayList<HostProfile>(count);
+                    for (int i = 0; i < count; i++) {
+                        hostProfiles.add(new HostProfile(in.readUTF(), portProfile));
+                    }
+                    FutureTask<Void> task = new FutureTask<Void>(new Runnable() {
+                        @Override
+                        public void run() {
+                            scan(id, hostProfiles, out);
+                        }
+                    }, null) {
+                        @Override
+                        protected void done() {
+                            tasks.remove(id, this);
+                        }
+                    };
+                    tasks.put(id, task);
+                    this.scanners.execute(task);
+                } else if (type == ClusterProtocol.CANCEL) {
+                    Future<?> task = tasks.remove(in.readLong());
+                    if (task != null && task.cancel(true)) { //the coordinator timed the request out and reassigned it
+                        Logger.logDebug("Cancelled scan of timed out request");
+                    }
+                } else if (type != ClusterProtocol.PING) {
+                    throw new IOException("Unknown message type: " + type);
+                }
+            }
+        } finally {
+            pings.cancel(false);
+            int cancelled = 0;
+            for (Future<?> task : tasks.values()) {
+                if (task.cancel(true)) { //interrupting a running scan stops it, destroying its nmap process
+                    cancelled++;
+                }
+            }
+            if (cancelled > 0) {
+                Logger.logDebug(String.format("Cancelled %d scans of lost connection", cancelled));
+            }
+        }
+    }
+
+    /**
+     * @param spec port spec sent by the coordinator
+     * @return compiled port profile, shared by requests with the same spec
+     * @throws IOException if the spec is invalid
+     */
+    private PortProfile getPortProfile(String spec) throws IOException {
+        synchronized (this.portProfiles) {
+            PortProfile portProfile = this.portProfiles.get(spec);
+            if (portProfile == null) {
+                try {
+                    portProfile = new PortSpecProfile(spec);
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Invalid port spec from coordinator: " + spec);
+                }
+                this.portProfiles.put(spec, portProfile);
+            }
+            return portProfile;
+        }
+    }
+
+    /**
+     * Scan a request's hosts and send back the results or failure
+     * @param id request id
+     * @param hostProfiles host profiles to scan, all sharing the same port profile
+     * @param out coordinator stream the request came from
+     */
+    private void scan(long id, ArrayList<HostProfile> hostProfiles, DataOutputStream out) {
+        HashMap<String, HostSnapshot> results;
+        try {
+            results = this.engine.scan(hostProfiles);
+        } catch (ScanException e) {
+            Logger.logError("Scan failed: " + e.getMessage(), getClass());
+            try {
+                synchronized (out) {
+                    out.writeByte(ClusterProtocol.FAILED);
+                    out.writeLong(id);
+                    out.writeUTF(e.getMessage() != null ? e.getMessage() : "scan failed");
+                    out.flush();
+                }
+            } catch (IOException ioException) {
+                //coordinator lost, it reassigns the request
+            }
+            return;
+        } catch (InterruptedException e) {
+            return;
+        }
+
+        for (Map.Entry<String, HostSnapshot> result : results.entrySet()) {
+            this.scanHistory.record(result.getKey(), result.getValue());
+        }
+        try {
+            synchronized (out) {
+                out.writeByte(ClusterProtocol.RESULT);
+                out.writeLong(id);
+                out.writeInt(results.size());
+                for (Map.Entry<String, HostSnapshot> result : results.entrySet()) {
+                    out.writeUTF(result.getKey());
+                    ClusterProtocol.writeSnapshot(out, result.getValue());
+                }
+                out.flush();
+            }
+        } catch (IOException e) {
+            //coordinator lost, it reassigns the request
+        }
+    }
+}
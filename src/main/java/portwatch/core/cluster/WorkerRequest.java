@@ -0,0 +1,106 @@
+package portwatch.core.cluster;
+
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scan request sent to a worker, completed by the worker's result, failure or loss.
+ */
+class WorkerRequest {
+
+    enum Outcome { PENDING, COMPLETED, FAILED, LOST }
+
+    private long id;
+    private WorkerConnection worker;
+    private ArrayList<HostProfile> hostProfiles;
+
+    private CountDownLatch done = new CountDownLatch(1);
+    private Outcome outcome = Outcome.PENDING; //guarded by this
+    private HashMap<String, HostSnapshot> results; //set when completed
+    private String error; //set when failed or lost
+
+    /**
+     * @param id request id, unique per coordinator
+     * @param worker worker the request is sent to
+     * @param hostProfiles host profiles to scan, all sharing the same port profile
+     */
+    WorkerRequest(long id, WorkerConnection worker, ArrayList<HostProfile> hostProfiles) {
+        this.id = id;
+        this.worker = worker;
+        this.hostProfiles = hostProfiles;
+    }
+
+    /**
+     * @param results single-host results reported by the worker
+     */
+    void complete(HashMap<String, HostSnapshot> results) {
+        finish(Outcome.COMPLETED, results, null);
+    }
+
+    /**
+     * @param error scan error reported by the worker
+     */
+    void fail(String error) {
+        finish(Outcome.FAILED, null, error);
+    }
+
+    /**
+     * @param reason why the worker can no longer answer, its hosts are reassigned
+     */
+    void lose(String reason) {
+        finish(Outcome.LOST, null, reason);
+    }
+
+    private synchronized void finish(Outcome outcome, HashMap<String, HostSnapshot> results, String error) {
+        if (this.outcome != Outcome.PENDING) {
+            return; //first outcome wins
+        }
+        this.outcome = outcome;
+        this.results = results;
+        this.error = error;
+        this.done.countDown();
+    }
+
+    /**
+     * Wait for the request to finish, losing it if the worker takes too long.
+     * Only the request is given up on and cancelled on the worker, the connection stays up as long as the worker
+     * answers heartbeats.
+     * @param timeoutMillis maximum time to wait
+     * @return outcome, never PENDING
+     * @throws InterruptedException if interrupted while waiting
+     */
+    Outcome await(long timeoutMillis) throws InterruptedException {
+        if (!this.done.await(timeoutMillis, TimeUnit.MILLISECONDS)) {
+            this.worker.abandon(this.id); //a late result is ignored
+            lose("request timed out");
+        }
+        synchronized (this) {
+            return this.outcome;
+        }
+    }
+
+    long getId() {
+        return this.id;
+    }
+
+    WorkerConnection getWorker() {
+        return this.worker;
+    }
+
+    ArrayList<HostProfile> getHostProfiles() {
+        return this.hostProfiles;
+    }
+
+    synchronized HashMap<String, HostSnapshot> getResults() {
+        return this.results;
+    }
+
+    synchronized String getError() {
+        return this.error;
+    }
+}
@@ -8,6 +8,7 @@ import java.util.HashMap;
 public class AppConfig {
     private ScanConfig scanConfig;
     private HashMap<String, IntegrationConfig> integrations;
+    private MetricsConfig metricsConfig; //null if metrics aren't served
 
     /**
      * @param scanConfig scanning configuration
@@ -32,4 +33,15 @@ public class AppConfig {
     public HashMap<String, IntegrationConfig> getIntegrations() {
         return this.integrations;
     }
+
+    public MetricsConfig getMetricsConfig() {
+        return this.metricsConfig;
+    }
+
+    /**
+     * @param metricsConfig metrics endpoint configuration
+     */
+    public void setMetricsConfig(MetricsConfig metricsConfig) {
+        this.metricsConfig = metricsConfig;
+    }
 }
\ No newline at end of file
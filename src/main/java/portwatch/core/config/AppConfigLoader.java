@@ -1,14 +1,23 @@
 package portwatch.core.config;
 
 import com.google.gson.*;
-import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.config.profile.host.AddressRanges;
+import portwatch.core.config.profile.host.HostGroup;
+import portwatch.core.config.profile.host.HostList;
 import portwatch.core.config.profile.port.PortListProfile;
 import portwatch.core.config.profile.port.PortProfile;
 import portwatch.core.config.profile.port.PortRangeProfile;
+import portwatch.core.config.profile.port.PortSet;
+import portwatch.core.config.profile.port.PortSpecProfile;
 import portwatch.core.logging.Logger;
+import portwatch.core.watch.history.ScanHistory;
 
-import java.io.FileNotFoundException;
+import java.io.ByteArrayInputStream;
 import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
@@ -26,23 +35,83 @@ public class AppConfigLoader {
     public static AppConfig load(String configPath) {
         Logger.logDebug("Loading config");
         try {
-            JsonElement json = new JsonParser().parse(new FileReader(configPath));
+            return read(configPath);
+        } catch (ConfigParseException e) {
+            Logger.logError(e.getMessage(), AppConfigLoader.class);
+            System.exit(1);
+            return null;
+        }
+    }
+
+    /**
+     * Read and parse a JSON-formatted application configuration without exiting on errors
+     * @param configPath path of the config to parse
+     * @return AppConfig object containing objects parsed from the config
+     * @throws ConfigParseException if the config can't be read or is invalid
+     */
+    public static AppConfig read(String configPath) throws ConfigParseException {
+        try (Reader reader = new FileReader(configPath)) {
+            return parse(reader);
+        } catch (IOException e) {
+            throw new ConfigParseException(String.valueOf(e.getMessage()));
+        }
+    }
+
+    /**
+     * Parse a JSON-formatted application configuration already read into memory, without exiting on errors
+     * @param contents UTF-8 config contents
+     * @return AppConfig object containing objects parsed from the config
+     * @throws ConfigParseException if the config is invalid
+     */
+    public static AppConfig read(byte[] contents) throws ConfigParseException {
+        return parse(new InputStreamReader(new ByteArrayInputStream(contents), StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param reader source of the JSON-formatted config, left open
+     * @return AppConfig object containing objects parsed from the config
+     * @throws ConfigParseException if the config can't be read or is invalid
+     */
+    private static AppConfig parse(Reader reader) throws ConfigParseException {
+        try {
+            JsonElement json = new JsonParser().parse(reader);
             //retrieve root object
             JsonObject configObject = json.getAsJsonObject().get("config").getAsJsonObject();
 
             //parse sub-configs
             ScanConfig scanConfig = parseScanConfig(configObject.get("scan").getAsJsonObject());
+            AppConfig appConfig;
             if (configObject.get("integrations") == null) { //integrations config is optional
-                return new AppConfig(scanConfig);
+                appConfig = new AppConfig(scanConfig);
             } else {
                 HashMap<String, IntegrationConfig> integrations = parseIntegrationsConfig(configObject.get("integrations").getAsJsonArray());
-                return new AppConfig(scanConfig, integrations);
+                appConfig = new AppConfig(scanConfig, integrations);
+            }
+            if (configObject.get("metrics") != null) { //metrics config is optional
+                appConfig.setMetricsConfig(parseMetricsConfig(configObject.get("metrics").getAsJsonObject()));
             }
+            return appConfig;
+        } catch (ConfigParseException e) {
+            throw e;
         } catch (Exception e) { //too many different exceptions to catch, so catch 'em all
-            Logger.logError(e.getMessage(), AppConfigLoader.class);
-            System.exit(1);
-            return null;
+            throw new ConfigParseException(String.valueOf(e.getMessage()));
+        }
+    }
+
+
+    /**
+     * Parse metrics endpoint config
+     * @param config metrics config JsonObject
+     * @return parsed MetricsConfig object
+     * @throws ConfigParseException
+     */
+    private static MetricsConfig parseMetricsConfig(JsonObject config) throws ConfigParseException {
+        int port = config.get("port").getAsInt();
+        if (port < 1 || port > 65535) {
+            throw new ConfigParseException("Invalid metrics port: " + port);
         }
+        String address = config.get("address") != null ? config.get("address").getAsString() : MetricsConfig.DEFAULT_ADDRESS;
+        return new MetricsConfig(address, port);
     }
 
 
@@ -84,42 +153,359 @@ public class AppConfigLoader {
             scanType = ScanConfig.ScanType.STEALTH;
         } else if (scanTypeStr.equals("version")) {
             scanType = ScanConfig.ScanType.VERSION;
+        } else if (scanTypeStr.equals("connect")) {
+            scanType = ScanConfig.ScanType.CONNECT;
+        } else if (scanTypeStr.equals("hybrid")) {
+            scanType = ScanConfig.ScanType.HYBRID;
         } else {
             throw new ConfigParseException("Invalid scan type: " + scanTypeStr);
         }
 
-        String nmapPath = config.get("nmapPath").getAsString();
+        //nmap is only needed by the nmap engine, checked once the engine is known
+        String nmapPath = config.get("nmapPath") != null ? config.get("nmapPath").getAsString() : null;
         int maxThreads = config.get("maxThreads").getAsInt();
         int waitSeconds = config.get("waitSeconds").getAsInt();
 
-        //parse host list into HostProfiles
-        ArrayList<HostProfile> hostProfiles = new ArrayList<HostProfile>();
+        //parse host list into HostGroups, address ranges are expanded lazily
+        ArrayList<HostGroup> hostGroups = new ArrayList<HostGroup>();
         JsonArray hosts = config.get("hosts").getAsJsonArray();
+        HashMap<String, PortProfile> portProfiles = new HashMap<String, PortProfile>();
         for (JsonElement hostElement : hosts) {
             JsonObject hostObject = hostElement.getAsJsonObject();
             String host = hostObject.get("host").getAsString();
+            int intervalSeconds = 0;
+            if (hostObject.get("intervalSeconds") != null) {
+                intervalSeconds = hostObject.get("intervalSeconds").getAsInt();
+                if (intervalSeconds < 1) {
+                    throw new ConfigParseException("intervalSeconds must be at least 1 for host: " + host);
+                }
+            }
 
+            //hosts with identical port objects share one compiled profile
             JsonObject ports = hostObject.getAsJsonObject("ports");
-            String portProfileType = ports.get("type").getAsString();
-            PortProfile portProfile;
-            if (portProfileType.equals("range")) {
-                int lower = ports.get("lower").getAsInt();
-                int upper = ports.get("upper").getAsInt();
-
-                portProfile = new PortRangeProfile(lower, upper);
-            } else if (portProfileType.equals("list")) {
-                ArrayList<Integer> portList = new ArrayList<Integer>();
-                JsonArray portListArray = ports.get("list").getAsJsonArray();
-                for (JsonElement portElement : portListArray) {
-                    portList.add(portElement.getAsInt());
+            PortProfile portProfile = portProfiles.get(ports.toString());
+            if (portProfile == null) {
+                portProfile = parsePortProfile(ports, host);
+                portProfiles.put(ports.toString(), portProfile);
+            }
+
+            if (AddressRanges.isAddressSpec(host)) {
+                hostGroups.add(new HostGroup(parseAddresses(hostObject, host), portProfile, intervalSeconds));
+            } else {
+                hostGroups.add(new HostGroup(host, portProfile, intervalSeconds));
+            }
+        }
+        HostList hostList = new HostList(hostGroups);
+        if (hostList.getDuplicates() > 0) {
+            Logger.logNormal(String.format("%d hosts are configured more than once, each is scanned with its first entry's ports",
+                    hostList.getDuplicates()));
+        }
+        ScanConfig scanConfig = new ScanConfig(nmapPath, scanType, hostList, maxThreads, waitSeconds);
+
+        //optional variables
+        if (config.get("historyDepth") != null) {
+            int historyDepth = config.get("historyDepth").getAsInt();
+            if (historyDepth < ScanHistory.MIN_DEPTH) {
+                throw new ConfigParseException("historyDepth must be at least " + ScanHistory.MIN_DEPTH);
+            }
+            scanConfig.setHistoryDepth(historyDepth);
+        }
+        if (config.get("batchSize") != null) {
+            int batchSize = config.get("batchSize").getAsInt();
+            if (batchSize < 1) {
+                throw new ConfigParseException("batchSize must be at least 1");
+            }
+            scanConfig.setBatchSize(batchSize);
+        }
+        if (config.get("scheduling") != null) {
+            String schedulingStr = config.get("scheduling").getAsString();
+            if (schedulingStr.equals("cycle")) {
+                scanConfig.setScheduling(ScanConfig.Scheduling.CYCLE);
+            } else if (schedulingStr.equals("independent")) {
+                scanConfig.setScheduling(ScanConfig.Scheduling.INDEPENDENT);
+            } else {
+                throw new ConfigParseException("Invalid scheduling mode: " + schedulingStr);
+            }
+        }
+        if (config.get("jitterSeconds") != null) {
+            scanConfig.setJitterSeconds(Math.max(0, config.get("jitterSeconds").getAsInt()));
+        }
+        if (config.get("fingerprintEvery") != null) {
+            int fingerprintEvery = config.get("fingerprintEvery").getAsInt();
+            if (fingerprintEvery < 1) {
+                throw new ConfigParseException("fingerprintEvery must be at least 1");
+            }
+            scanConfig.setFingerprintEvery(fingerprintEvery);
+        }
+        if (config.get("connectTimeoutMillis") != null) {
+            int connectTimeoutMillis = config.get("connectTimeoutMillis").getAsInt();
+            if (connectTimeoutMillis < 1) {
+                throw new ConfigParseException("connectTimeoutMillis must be at least 1");
+            }
+            scanConfig.setConnectTimeoutMillis(connectTimeoutMillis);
+        }
+        if (config.get("connectConcurrency") != null) {
+            int connectConcurrency = config.get("connectConcurrency").getAsInt();
+            if (connectConcurrency < 1) {
+                throw new ConfigParseException("connectConcurrency must be at least 1");
+            }
+            scanConfig.setConnectConcurrency(connectConcurrency);
+        }
+        if (config.get("stateFile") != null) {
+            scanConfig.setStateFile(config.get("stateFile").getAsString());
+        }
+        if (config.get("journalDir") != null) {
+            scanConfig.setJournalDir(config.get("journalDir").getAsString());
+        }
+        if (config.get("adaptive") != null) {
+            JsonObject adaptive = config.get("adaptive").getAsJsonObject();
+            int minSeconds = adaptive.get("minSeconds").getAsInt();
+            int maxSeconds = adaptive.get("maxSeconds").getAsInt();
+            double backoff = adaptive.get("backoff") != null ? adaptive.get("backoff").getAsDouble() : 2.0;
+            if (minSeconds < 1 || maxSeconds < minSeconds || backoff < 1.0) {
+                throw new ConfigParseException("Invalid adaptive interval: requires 1 <= minSeconds <= maxSeconds and backoff >= 1");
+            }
+            if (scanConfig.getScheduling() != ScanConfig.Scheduling.INDEPENDENT) {
+                throw new ConfigParseException("Adaptive intervals require independent scheduling");
+            }
+            scanConfig.setAdaptive(minSeconds, maxSeconds, backoff);
+        }
+        if (config.get("engine") != null) {
+            String engineStr = config.get("engine").getAsString();
+            if (engineStr.equals("nmap")) {
+                if (scanType == ScanConfig.ScanType.CONNECT) {
+                    throw new ConfigParseException("Connect scans can't use the nmap engine");
+                }
+                scanConfig.setEngine(ScanConfig.Engine.NMAP);
+            } else if (engineStr.equals("connect")) {
+                scanConfig.setEngine(ScanConfig.Engine.CONNECT);
+            } else if (engineStr.equals("synthetic")) {
+                scanConfig.setEngine(ScanConfig.Engine.SYNTHETIC);
+                scanConfig.setSyntheticConfig(parseSyntheticConfig(config.get("synthetic") != null ?
+                        config.get("synthetic").getAsJsonObject() : new JsonObject()));
+            } else if (engineStr.equals("cluster")) {
+                if (config.get("cluster") == null) {
+                    throw new ConfigParseException("The cluster engine requires a cluster config");
                 }
-                portProfile = new PortListProfile(portList);
+                scanConfig.setEngine(ScanConfig.Engine.CLUSTER);
+                scanConfig.setClusterConfig(parseClusterConfig(config.get("cluster").getAsJsonObject()));
             } else {
-                throw new ConfigParseException("Invalid port profile type: " + portProfileType);
+                throw new ConfigParseException("Invalid engine: " + engineStr);
+            }
+        }
+        if (config.get("livenessSweep") != null && config.get("livenessSweep").getAsBoolean()) {
+            if (scanConfig.getScheduling() != ScanConfig.Scheduling.CYCLE) {
+                throw new ConfigParseException("livenessSweep requires cycle scheduling");
+            }
+            if (scanConfig.getEngine() != ScanConfig.Engine.NMAP) {
+                throw new ConfigParseException("livenessSweep requires the nmap engine");
+            }
+            scanConfig.setLivenessSweep(true);
+        }
+        if (config.get("shardSize") != null) {
+            int shardSize = config.get("shardSize").getAsInt();
+            if (shardSize < 1) {
+                throw new ConfigParseException("shardSize must be at least 1");
+            }
+            if (scanConfig.getScheduling() != ScanConfig.Scheduling.CYCLE) {
+                throw new ConfigParseException("shardSize requires cycle scheduling");
+            }
+            scanConfig.setShardSize(shardSize);
+            if (config.get("shardTargetSeconds") != null) {
+                int shardTargetSeconds = config.get("shardTargetSeconds").getAsInt();
+                if (shardTargetSeconds < 1) {
+                    throw new ConfigParseException("shardTargetSeconds must be at least 1");
+                }
+                scanConfig.setShardTargetSeconds(shardTargetSeconds);
+            }
+        }
+        if (config.get("maxRate") != null) {
+            int maxRate = config.get("maxRate").getAsInt();
+            if (maxRate < 1) {
+                throw new ConfigParseException("maxRate must be at least 1");
+            }
+            if (scanConfig.getEngine() != ScanConfig.Engine.NMAP) {
+                throw new ConfigParseException("maxRate requires the nmap engine");
+            }
+            scanConfig.setMaxRate(maxRate);
+        }
+        if (config.get("scanTimeoutSeconds") != null) {
+            int scanTimeoutSeconds = config.get("scanTimeoutSeconds").getAsInt();
+            if (scanTimeoutSeconds < 1) {
+                throw new ConfigParseException("scanTimeoutSeconds must be at least 1");
+            }
+            scanConfig.setScanTimeoutSeconds(scanTimeoutSeconds);
+        }
+        if (config.get("scanRetries") != null) {
+            int scanRetries = config.get("scanRetries").getAsInt();
+            if (scanRetries < 0) {
+                throw new ConfigParseException("scanRetries can't be negative");
+            }
+            scanConfig.setScanRetries(scanRetries);
+        }
+        if (config.get("retryBackoffSeconds") != null) {
+            int retryBackoffSeconds = config.get("retryBackoffSeconds").getAsInt();
+            if (retryBackoffSeconds < 1) {
+                throw new ConfigParseException("retryBackoffSeconds must be at least 1");
+            }
+            scanConfig.setRetryBackoffSeconds(retryBackoffSeconds);
+        }
+        if (nmapPath == null && scanConfig.getEngine() == ScanConfig.Engine.NMAP) {
+            throw new ConfigParseException("nmapPath is required for " + scanTypeStr + " scans");
+        }
+
+        return scanConfig;
+    }
+
+    /**
+     * Parse the addresses of a host config whose host is an address, address range or CIDR block
+     * @param hostObject host config JsonObject
+     * @param host address spec of host config
+     * @return configured addresses, less excluded addresses
+     * @throws ConfigParseException
+     */
+    private static AddressRanges parseAddresses(JsonObject hostObject, String host) throws ConfigParseException {
+        AddressRanges addresses;
+        try {
+            ArrayList<AddressRanges> specs = new ArrayList<AddressRanges>();
+            for (String spec : host.split(",")) {
+                specs.add(AddressRanges.parse(spec));
+            }
+            addresses = AddressRanges.union(specs);
+            if (hostObject.get("exclude") != null) {
+                ArrayList<AddressRanges> excluded = new ArrayList<AddressRanges>();
+                for (JsonElement excludeElement : hostObject.get("exclude").getAsJsonArray()) {
+                    excluded.add(AddressRanges.parse(excludeElement.getAsString()));
+                }
+                addresses = addresses.subtract(AddressRanges.union(excluded));
+            }
+        } catch (IllegalArgumentException e) {
+            throw new ConfigParseException(e.getMessage());
+        }
+        if (addresses.size() == 0) {
+            throw new ConfigParseException("Every address is excluded for host: " + host);
+        }
+        return addresses;
+    }
+
+    /**
+     * Parse port profile
+     * @param ports port profile JsonObject
+     * @param host host the profile belongs to, for error messages
+     * @return parsed PortProfile object
+     * @throws ConfigParseException
+     */
+    private static PortProfile parsePortProfile(JsonObject ports, String host) throws ConfigParseException {
+        String portProfileType = ports.get("type").getAsString();
+        PortProfile portProfile;
+        if (portProfileType.equals("range")) {
+            int lower = parsePort(ports.get("lower").getAsInt(), host);
+            int upper = parsePort(ports.get("upper").getAsInt(), host);
+
+            portProfile = new PortRangeProfile(lower, upper);
+        } else if (portProfileType.equals("list")) {
+            ArrayList<Integer> portList = new ArrayList<Integer>();
+            JsonArray portListArray = ports.get("list").getAsJsonArray();
+            for (JsonElement portElement : portListArray) {
+                portList.add(parsePort(portElement.getAsInt(), host));
+            }
+            portProfile = new PortListProfile(portList);
+        } else if (portProfileType.equals("spec")) {
+            try {
+                portProfile = new PortSpecProfile(ports.get("spec").getAsString());
+            } catch (IllegalArgumentException e) {
+                throw new ConfigParseException(e.getMessage() + " for host: " + host);
             }
+        } else {
+            throw new ConfigParseException("Invalid port profile type: " + portProfileType);
+        }
 
-            hostProfiles.add(new HostProfile(host, portProfile));
+        if (portProfile.getPortSet().size() == 0) {
+            throw new ConfigParseException("Port profile is empty for host: " + host);
+        }
+        return portProfile;
+    }
+
+    /**
+     * @param port port number
+     * @param host host the port belongs to, for error messages
+     * @return port
+     * @throws ConfigParseException if not between 0 and 65535
+     */
+    private static int parsePort(int port, String host) throws ConfigParseException {
+        if (port < 0 || port > PortSet.MAX_PORT) {
+            throw new ConfigParseException("Invalid port " + port + " for host: " + host);
+        }
+        return port;
+    }
+
+    /**
+     * Parse cluster engine config
+     * @param config cluster config JsonObject
+     * @return parsed ClusterConfig object
+     * @throws ConfigParseException
+     */
+    private static ClusterConfig parseClusterConfig(JsonObject config) throws ConfigParseException {
+        int port = config.get("port").getAsInt();
+        if (port < 1 || port > 65535) {
+            throw new ConfigParseException("Invalid cluster port: " + port);
+        }
+        String address = config.get("address") != null ? config.get("address").getAsString() : ClusterConfig.DEFAULT_ADDRESS;
+        ClusterConfig clusterConfig = new ClusterConfig(address, port);
+        if (config.get("requestTimeoutSeconds") != null) {
+            int requestTimeoutSeconds = config.get("requestTimeoutSeconds").getAsInt();
+            if (requestTimeoutSeconds < 1) {
+                throw new ConfigParseException("requestTimeoutSeconds must be at least 1");
+            }
+            clusterConfig.setRequestTimeoutSeconds(requestTimeoutSeconds);
+        }
+        return clusterConfig;
+    }
+
+    /**
+     * Parse synthetic engine config
+     * @param config synthetic config JsonObject, empty for defaults
+     * @return parsed SyntheticConfig object
+     * @throws ConfigParseException
+     */
+    private static SyntheticConfig parseSyntheticConfig(JsonObject config) throws ConfigParseException {
+        SyntheticConfig syntheticConfig = new SyntheticConfig();
+        if (config.get("seed") != null) {
+            syntheticConfig.setSeed(config.get("seed").getAsLong());
+        }
+        if (config.get("latencyMillis") != null || config.get("latencyStddevMillis") != null) {
+            int latencyMillis = config.get("latencyMillis") != null ?
+                    config.get("latencyMillis").getAsInt() : syntheticConfig.getLatencyMillis();
+            int latencyStddevMillis = config.get("latencyStddevMillis") != null ?
+                    config.get("latencyStddevMillis").getAsInt() : 0;
+            if (latencyMillis < 0 || latencyStddevMillis < 0) {
+                throw new ConfigParseException("Synthetic latency can't be negative");
+            }
+            syntheticConfig.setLatency(latencyMillis, latencyStddevMillis);
+        }
+        if (config.get("openPorts") != null) {
+            syntheticConfig.setOpenPorts(Math.max(0, config.get("openPorts").getAsInt()));
+        }
+        if (config.get("changeRate") != null) {
+            syntheticConfig.setChangeRate(parseRate(config, "changeRate"));
+        }
+        if (config.get("downRate") != null) {
+            syntheticConfig.setDownRate(parseRate(config, "downRate"));
+        }
+        return syntheticConfig;
+    }
+
+    /**
+     * @param config config JsonObject
+     * @param key key of probability variable
+     * @return parsed probability
+     * @throws ConfigParseException if not between 0 and 1
+     */
+    private static double parseRate(JsonObject config, String key) throws ConfigParseException {
+        double rate = config.get(key).getAsDouble();
+        if (rate < 0 || rate > 1) {
+            throw new ConfigParseException(key + " must be between 0 and 1");
         }
-        return new ScanConfig(nmapPath, scanType, hostProfiles, maxThreads, waitSeconds);
+        return rate;
     }
 }
\ No newline at end of file
@@ -0,0 +1,42 @@
+package portwatch.core.config;
+
+/**
+ * Configuration of the coordinator's worker listener, used by the cluster engine.
+ */
+public class ClusterConfig {
+
+    public static final String DEFAULT_ADDRESS = "127.0.0.1";
+    public static final int DEFAULT_REQUEST_TIMEOUT_SECONDS = 600;
+
+    private String address; //address to accept workers on
+    private int port; //port to accept workers on
+    private int requestTimeoutSeconds = DEFAULT_REQUEST_TIMEOUT_SECONDS; //time a worker has to answer a scan request
+
+    /**
+     * @param address address to accept workers on
+     * @param port port to accept workers on
+     */
+    public ClusterConfig(String address, int port) {
+        this.address = address;
+        this.port = port;
+    }
+
+    public String getAddress() {
+        return this.address;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    public int getRequestTimeoutSeconds() {
+        return this.requestTimeoutSeconds;
+    }
+
+    /**
+     * @param requestTimeoutSeconds seconds a worker has to answer a scan request before its hosts are reassigned
+     */
+    public void setRequestTimeoutSeconds(int requestTimeoutSeconds) {
+        this.requestTimeoutSeconds = requestTimeoutSeconds;
+    }
+}
@@ -0,0 +1,112 @@
+package portwatch.core.config;
+
+import portwatch.core.logging.Logger;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.Observable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watches the config file for changes. On change the config is re-parsed and, if valid,
+ * handed to observers as an AppConfig. Invalid configs are logged and ignored.
+ */
+public class ConfigWatcher extends Observable implements Runnable {
+
+    private static final long SETTLE_MILLIS = 500; //editors often write a file in several steps
+
+    private File configFile;
+    private byte[] lastContents; //contents of last loaded config
+
+    /**
+     * @param configPath path of the loaded config
+     */
+    public ConfigWatcher(String configPath) {
+        this.configFile = new File(configPath).getAbsoluteFile();
+        this.lastContents = readContents();
+    }
+
+    /**
+     * Watch the config's directory until interrupted
+     */
+    public void run() {
+        Path directory = this.configFile.getParentFile().toPath();
+        try (WatchService watchService = FileSystems.getDefault().newWatchService()) {
+            directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            Logger.logDebug("Watching config " + this.configFile);
+
+            while (!Thread.interrupted()) {
+                WatchKey key = watchService.take();
+                boolean changed = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    //overflow events have no context, the config may have changed
+                    Object context = event.context();
+                    if (context == null || this.configFile.getName().equals(context.toString())) {
+                        changed = true;
+                    }
+                }
+                if (!key.reset()) {
+                    Logger.logError("Config directory no longer watchable: " + directory, getClass());
+                    return;
+                }
+
+                if (changed) {
+                    //wait for writes to settle, then drop the events they caused
+                    Thread.sleep(SETTLE_MILLIS);
+                    WatchKey pending;
+                    while ((pending = watchService.poll(0, TimeUnit.MILLISECONDS)) != null) {
+                        pending.pollEvents();
+                        pending.reset();
+                    }
+                    reload();
+                }
+            }
+        } catch (IOException e) {
+            Logger.logError("Unable to watch config: " + e.getMessage(), getClass());
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            //stopped
+        }
+    }
+
+    /**
+     * Re-parse the config if its contents changed since it was last loaded, notifying observers if it is valid
+     */
+    private void reload() {
+        byte[] contents = readContents();
+        if (contents == null || Arrays.equals(contents, this.lastContents)) {
+            return; //deleted, or touched without changes
+        }
+        this.lastContents = contents;
+
+        Logger.logDebug("Reloading config");
+        AppConfig appConfig;
+        try {
+            appConfig = AppConfigLoader.read(contents); //parse what was compared, the file may change again meanwhile
+        } catch (ConfigParseException e) {
+            Logger.logError("Config not reloaded: " + e.getMessage(), getClass());
+            return;
+        }
+        this.setChanged();
+        this.notifyObservers(appConfig);
+    }
+
+    /**
+     * @return config file contents, null if unreadable
+     */
+    private byte[] readContents() {
+        try {
+            return Files.readAllBytes(this.configFile.toPath());
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+package portwatch.core.config;
+
+import portwatch.core.config.profile.host.HostList;
+import portwatch.core.config.profile.host.HostProfile;
+
+import java.util.ArrayList;
+
+/**
+ * Differences between two host profile lists, matched by host.
+ * A host profile is modified if its ports or scan interval changed.
+ */
+public class HostProfileDiff {
+
+    private ArrayList<HostProfile> added = new ArrayList<HostProfile>();
+    private ArrayList<HostProfile> removed = new ArrayList<HostProfile>();
+    private ArrayList<HostProfile> modified = new ArrayList<HostProfile>(); //new profiles of modified hosts
+
+    /**
+     * @param oldProfiles running host profiles
+     * @param newProfiles reloaded host profiles
+     */
+    public HostProfileDiff(HostList oldProfiles, HostList newProfiles) {
+        for (HostProfile hostProfile : newProfiles) {
+            HostProfile old = oldProfiles.get(hostProfile.getHost());
+            if (old == null) {
+                this.added.add(hostProfile);
+            } else if (!old.getPortProfile().getPortSet().equals(hostProfile.getPortProfile().getPortSet())
+                    || old.getIntervalSeconds() != hostProfile.getIntervalSeconds()) {
+                this.modified.add(hostProfile);
+            }
+        }
+        for (HostProfile hostProfile : oldProfiles) {
+            if (!newProfiles.contains(hostProfile.getHost())) {
+                this.removed.add(hostProfile);
+            }
+        }
+    }
+
+    public ArrayList<HostProfile> getAdded() {
+        return this.added;
+    }
+
+    public ArrayList<HostProfile> getRemoved() {
+        return this.removed;
+    }
+
+    public ArrayList<HostProfile> getModified() {
+        return this.modified;
+    }
+
+    /**
+     * @return true if no host profile was added, removed or modified
+     */
+    public boolean isEmpty() {
+        return this.added.isEmpty() && this.removed.isEmpty() && this.modified.isEmpty();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%d added, %d removed, %d modified", this.added.size(), this.removed.size(), this.modified.size());
+    }
+}
@@ -0,0 +1,29 @@
+package portwatch.core.config;
+
+/**
+ * Configuration of the embedded metrics endpoint.
+ */
+public class MetricsConfig {
+
+    public static final String DEFAULT_ADDRESS = "127.0.0.1";
+
+    private String address; //address to listen on
+    private int port; //port to listen on
+
+    /**
+     * @param address address to listen on
+     * @param port port to listen on
+     */
+    public MetricsConfig(String address, int port) {
+        this.address = address;
+        this.port = port;
+    }
+
+    public String getAddress() {
+        return this.address;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+}
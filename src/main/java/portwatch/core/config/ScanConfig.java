@@ -1,35 +1,65 @@
 package portwatch.core.config;
 
-import portwatch.core.config.profile.host.HostProfile;
-
-import java.util.ArrayList;
+import portwatch.core.config.profile.host.HostList;
+import portwatch.core.watch.history.ScanHistory;
+import portwatch.core.watch.scan.ConnectScanner;
 
 /**
  * Scanning configuration.
  */
 public class ScanConfig {
 
-    public enum ScanType { STEALTH, VERSION }
+    public enum ScanType { STEALTH, VERSION, CONNECT, HYBRID }
+    public enum Scheduling { CYCLE, INDEPENDENT }
+    public enum Engine { NMAP, CONNECT, SYNTHETIC, CLUSTER }
 
     private String nmapPath;
     private ScanType scanType;
-    private ArrayList<HostProfile> hostProfiles;
+    private volatile HostList hostProfiles; //replaced, never modified, when the config is reloaded
     private int maxThreads;
     private int waitSeconds;
+    private Engine engine;
+    private SyntheticConfig syntheticConfig; //null unless the synthetic engine is used
+    private ClusterConfig clusterConfig; //null unless the cluster engine is used
+    private int historyDepth = ScanHistory.DEFAULT_DEPTH; //snapshots retained per host
+    private int batchSize = 1; //maximum host profiles per nmap run
+    private Scheduling scheduling = Scheduling.CYCLE;
+    private int jitterSeconds = 0; //maximum random delay added to independently scheduled scans
+
+    private boolean livenessSweep = false; //ping sweep all hosts before each cycle, only port scanning live hosts
+    private int fingerprintEvery = 10; //hybrid scans between full version scans of a host
+    private int shardSize = 0; //ports per shard of a batch's port profile, 0 if batches aren't sharded
+    private int shardTargetSeconds = 0; //target shard scan duration to tune shard size to, 0 if shard size is fixed
+    private int connectTimeoutMillis = ConnectScanner.DEFAULT_TIMEOUT_MILLIS; //connect scan attempt timeout
+    private int connectConcurrency = ConnectScanner.DEFAULT_CONCURRENCY; //connect scan attempts in flight per scan
+    private int maxRate = 0; //packets per second shared by all nmap runs, 0 if runs aren't rate limited
+    private int scanTimeoutSeconds = 0; //deadline of each scan attempt, 0 if scans have no deadline
+    private int scanRetries = 2; //attempts after a scan's first fails
+    private int retryBackoffSeconds = 5; //wait before a failed scan's first retry, doubled for each further retry
+
+    private String stateFile; //path of persisted host state, null if state isn't persisted
+    private String journalDir; //directory of change journal, null if changes aren't journaled
+
+    //adaptive intervals, only used with independent scheduling
+    private boolean adaptive = false;
+    private int adaptiveMinSeconds;
+    private int adaptiveMaxSeconds;
+    private double adaptiveBackoff;
 
     /**
      * @param nmapPath path of directory containing nmap binary
-     * @param scanType nmap scan type (stealth or version)
-     * @param hostProfiles list of host profiles to scan
+     * @param scanType scan type (stealth, version, connect or hybrid)
+     * @param hostProfiles hosts to scan
      * @param maxThreads maximum number of threads to use for scanning
      * @param waitSeconds seconds to wait between scan cycles
      */
-    public ScanConfig(String nmapPath, ScanType scanType, ArrayList<HostProfile> hostProfiles, int maxThreads, int waitSeconds) {
+    public ScanConfig(String nmapPath, ScanType scanType, HostList hostProfiles, int maxThreads, int waitSeconds) {
         this.nmapPath = nmapPath;
         this.scanType = scanType;
         this.hostProfiles = hostProfiles;
         this.maxThreads = maxThreads;
         this.waitSeconds = waitSeconds;
+        this.engine = scanType == ScanType.CONNECT ? Engine.CONNECT : Engine.NMAP;
     }
 
     public String getNmapPath() {
@@ -40,10 +70,17 @@ public class ScanConfig {
         return this.scanType;
     }
 
-    public ArrayList<HostProfile> getHostProfiles() {
+    public HostList getHostProfiles() {
         return this.hostProfiles;
     }
 
+    /**
+     * @param hostProfiles hosts to scan, replacing the current hosts
+     */
+    public void setHostProfiles(HostList hostProfiles) {
+        this.hostProfiles = hostProfiles;
+    }
+
     public int getWaitSeconds() {
         return this.waitSeconds;
     }
@@ -51,4 +88,242 @@ public class ScanConfig {
     public int getMaxThreads() {
         return this.maxThreads;
     }
+
+    public int getHistoryDepth() {
+        return this.historyDepth;
+    }
+
+    /**
+     * @param historyDepth number of scan snapshots to retain per host (minimum 2)
+     */
+    public void setHistoryDepth(int historyDepth) {
+        this.historyDepth = historyDepth;
+    }
+
+    public int getBatchSize() {
+        return this.batchSize;
+    }
+
+    /**
+     * @param batchSize maximum number of host profiles sharing a port profile to scan in a single nmap run
+     */
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    public Scheduling getScheduling() {
+        return this.scheduling;
+    }
+
+    /**
+     * @param scheduling scan scheduling mode (global cycles or independent per-host schedules)
+     */
+    public void setScheduling(Scheduling scheduling) {
+        this.scheduling = scheduling;
+    }
+
+    public int getJitterSeconds() {
+        return this.jitterSeconds;
+    }
+
+    /**
+     * @param jitterSeconds maximum random delay added to each independently scheduled scan
+     */
+    public void setJitterSeconds(int jitterSeconds) {
+        this.jitterSeconds = jitterSeconds;
+    }
+
+    public Engine getEngine() {
+        return this.engine;
+    }
+
+    /**
+     * @param engine engine performing scans, defaults to the engine of the scan type
+     */
+    public void setEngine(Engine engine) {
+        this.engine = engine;
+    }
+
+    public SyntheticConfig getSyntheticConfig() {
+        return this.syntheticConfig;
+    }
+
+    /**
+     * @param syntheticConfig synthetic engine configuration
+     */
+    public void setSyntheticConfig(SyntheticConfig syntheticConfig) {
+        this.syntheticConfig = syntheticConfig;
+    }
+
+    public ClusterConfig getClusterConfig() {
+        return this.clusterConfig;
+    }
+
+    /**
+     * @param clusterConfig cluster engine configuration
+     */
+    public void setClusterConfig(ClusterConfig clusterConfig) {
+        this.clusterConfig = clusterConfig;
+    }
+
+    public boolean isLivenessSweep() {
+        return this.livenessSweep;
+    }
+
+    /**
+     * @param livenessSweep true to ping sweep all hosts at the start of each cycle and only port scan live hosts
+     */
+    public void setLivenessSweep(boolean livenessSweep) {
+        this.livenessSweep = livenessSweep;
+    }
+
+    public int getFingerprintEvery() {
+        return this.fingerprintEvery;
+    }
+
+    /**
+     * @param fingerprintEvery hybrid scans of a host between full version scans of all its open ports
+     */
+    public void setFingerprintEvery(int fingerprintEvery) {
+        this.fingerprintEvery = fingerprintEvery;
+    }
+
+    public int getShardSize() {
+        return this.shardSize;
+    }
+
+    /**
+     * @param shardSize maximum ports per concurrently scanned shard of a batch, 0 to scan batches whole
+     */
+    public void setShardSize(int shardSize) {
+        this.shardSize = shardSize;
+    }
+
+    public int getShardTargetSeconds() {
+        return this.shardTargetSeconds;
+    }
+
+    /**
+     * @param shardTargetSeconds scan duration shard sizes are tuned towards from past scans, 0 for fixed shard sizes
+     */
+    public void setShardTargetSeconds(int shardTargetSeconds) {
+        this.shardTargetSeconds = shardTargetSeconds;
+    }
+
+    public int getConnectTimeoutMillis() {
+        return this.connectTimeoutMillis;
+    }
+
+    /**
+     * @param connectTimeoutMillis milliseconds a connect scan waits for a port to accept or refuse a connection
+     */
+    public void setConnectTimeoutMillis(int connectTimeoutMillis) {
+        this.connectTimeoutMillis = connectTimeoutMillis;
+    }
+
+    public int getConnectConcurrency() {
+        return this.connectConcurrency;
+    }
+
+    /**
+     * @param connectConcurrency maximum connection attempts a connect scan keeps in flight
+     */
+    public void setConnectConcurrency(int connectConcurrency) {
+        this.connectConcurrency = connectConcurrency;
+    }
+
+    public int getMaxRate() {
+        return this.maxRate;
+    }
+
+    /**
+     * @param maxRate packets per second shared by all concurrent nmap runs, 0 for no limit
+     */
+    public void setMaxRate(int maxRate) {
+        this.maxRate = maxRate;
+    }
+
+    public int getScanTimeoutSeconds() {
+        return this.scanTimeoutSeconds;
+    }
+
+    /**
+     * @param scanTimeoutSeconds seconds a scan attempt may take before it is stopped, 0 for no deadline
+     */
+    public void setScanTimeoutSeconds(int scanTimeoutSeconds) {
+        this.scanTimeoutSeconds = scanTimeoutSeconds;
+    }
+
+    public int getScanRetries() {
+        return this.scanRetries;
+    }
+
+    /**
+     * @param scanRetries number of times a failed or timed out scan is retried before it is reported as failed
+     */
+    public void setScanRetries(int scanRetries) {
+        this.scanRetries = scanRetries;
+    }
+
+    public int getRetryBackoffSeconds() {
+        return this.retryBackoffSeconds;
+    }
+
+    /**
+     * @param retryBackoffSeconds seconds to wait before a failed scan's first retry, doubled for each further retry
+     */
+    public void setRetryBackoffSeconds(int retryBackoffSeconds) {
+        this.retryBackoffSeconds = retryBackoffSeconds;
+    }
+
+    public String getStateFile() {
+        return this.stateFile;
+    }
+
+    /**
+     * @param stateFile path of file to persist last known host state to, for warm restarts
+     */
+    public void setStateFile(String stateFile) {
+        this.stateFile = stateFile;
+    }
+
+    public String getJournalDir() {
+        return this.journalDir;
+    }
+
+    /**
+     * @param journalDir directory to journal every port change to
+     */
+    public void setJournalDir(String journalDir) {
+        this.journalDir = journalDir;
+    }
+
+    public boolean isAdaptive() {
+        return this.adaptive;
+    }
+
+    public int getAdaptiveMinSeconds() {
+        return this.adaptiveMinSeconds;
+    }
+
+    public int getAdaptiveMaxSeconds() {
+        return this.adaptiveMaxSeconds;
+    }
+
+    public double getAdaptiveBackoff() {
+        return this.adaptiveBackoff;
+    }
+
+    /**
+     * Enable adaptive per-host intervals
+     * @param minSeconds interval used after a host changes
+     * @param maxSeconds ceiling for backed-off intervals of stable hosts
+     * @param backoff interval multiplier applied after each stable scan
+     */
+    public void setAdaptive(int minSeconds, int maxSeconds, double backoff) {
+        this.adaptive = true;
+        this.adaptiveMinSeconds = minSeconds;
+        this.adaptiveMaxSeconds = maxSeconds;
+        this.adaptiveBackoff = backoff;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,76 @@
+package portwatch.core.config;
+
+/**
+ * Configuration of the synthetic scan engine, which fabricates deterministic scan results for load testing.
+ */
+public class SyntheticConfig {
+
+    private long seed = 0; //seed all fabricated results are derived from
+    private int latencyMillis = 1000; //mean scan duration
+    private int latencyStddevMillis = 0; //scan duration standard deviation, 0 for fixed durations
+    private int openPorts = 10; //open ports per host
+    private double changeRate = 0.01; //probability of a host changing per scan
+    private double downRate = 0.001; //probability of a host being down per scan
+
+    public long getSeed() {
+        return this.seed;
+    }
+
+    /**
+     * @param seed seed all fabricated results are derived from
+     */
+    public void setSeed(long seed) {
+        this.seed = seed;
+    }
+
+    public int getLatencyMillis() {
+        return this.latencyMillis;
+    }
+
+    public int getLatencyStddevMillis() {
+        return this.latencyStddevMillis;
+    }
+
+    /**
+     * Scan durations are log-normally distributed with the given mean and standard deviation
+     * @param latencyMillis mean scan duration
+     * @param latencyStddevMillis scan duration standard deviation, 0 for fixed durations
+     */
+    public void setLatency(int latencyMillis, int latencyStddevMillis) {
+        this.latencyMillis = latencyMillis;
+        this.latencyStddevMillis = latencyStddevMillis;
+    }
+
+    public int getOpenPorts() {
+        return this.openPorts;
+    }
+
+    /**
+     * @param openPorts open ports per host
+     */
+    public void setOpenPorts(int openPorts) {
+        this.openPorts = openPorts;
+    }
+
+    public double getChangeRate() {
+        return this.changeRate;
+    }
+
+    /**
+     * @param changeRate probability of a host changing per scan
+     */
+    public void setChangeRate(double changeRate) {
+        this.changeRate = changeRate;
+    }
+
+    public double getDownRate() {
+        return this.downRate;
+    }
+
+    /**
+     * @param downRate probability of a host being down per scan
+     */
+    public void setDownRate(double downRate) {
+        this.downRate = downRate;
+    }
+}
@@ -0,0 +1,208 @@
+package portwatch.core.config.profile.host;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Immutable set of IPv4 addresses held as sorted, disjoint inclusive ranges of packed addresses.
+ * Addresses are never expanded; the nth address is found by binary search over cumulative range sizes.
+ */
+public class AddressRanges {
+
+    private final long[] lower; //range lower bounds, ascending
+    private final long[] upper; //range upper bounds
+    private final long[] offsets; //number of addresses before each range
+
+    private AddressRanges(long[] lower, long[] upper) {
+        this.lower = lower;
+        this.upper = upper;
+        this.offsets = new long[lower.length + 1];
+        for (int i = 0; i < lower.length; i++) {
+            this.offsets[i + 1] = this.offsets[i] + upper[i] - lower[i] + 1;
+        }
+    }
+
+    /**
+     * Parse an address spec: a single address ("10.0.0.1"), a CIDR block ("10.0.0.0/16"),
+     * an address range ("10.0.0.1-10.0.3.255") or a last octet range ("10.0.0.1-50")
+     * @param spec address spec
+     * @return parsed addresses
+     * @throws IllegalArgumentException if the spec is invalid
+     */
+    public static AddressRanges parse(String spec) {
+        spec = spec.trim();
+        int slash = spec.indexOf('/');
+        int dash = spec.indexOf('-');
+        if (slash >= 0) {
+            long base = Ipv4.parse(spec.substring(0, slash));
+            int prefix;
+            try {
+                prefix = Integer.parseInt(spec.substring(slash + 1));
+            } catch (NumberFormatException e) {
+                prefix = -1;
+            }
+            if (base < 0 || prefix < 0 || prefix > 32) {
+                throw new IllegalArgumentException("Invalid CIDR block: " + spec);
+            }
+            long mask = (Ipv4.MAX_ADDRESS << (32 - prefix)) & Ipv4.MAX_ADDRESS;
+            return range(base & mask, (base & mask) | (~mask & Ipv4.MAX_ADDRESS));
+        } else if (dash >= 0) {
+            long lower = Ipv4.parse(spec.substring(0, dash));
+            String end = spec.substring(dash + 1);
+            long upper = end.indexOf('.') >= 0 ? Ipv4.parse(end) : Ipv4.parse(spec.substring(0, spec.lastIndexOf('.', dash) + 1) + end);
+            if (lower < 0 || upper < lower) {
+                throw new IllegalArgumentException("Invalid address range: " + spec);
+            }
+            return range(lower, upper);
+        }
+        long address = Ipv4.parse(spec);
+        if (address < 0) {
+            throw new IllegalArgumentException("Invalid address: " + spec);
+        }
+        return range(address, address);
+    }
+
+    /**
+     * @param spec host spec
+     * @return true if spec is an address, address range or CIDR block, or a list of them, rather than a hostname
+     */
+    public static boolean isAddressSpec(String spec) {
+        if (spec.indexOf(',') >= 0) {
+            spec = spec.substring(0, spec.indexOf(','));
+        }
+        int end = spec.length();
+        if (spec.indexOf('/') >= 0) {
+            end = spec.indexOf('/');
+        } else if (spec.indexOf('-') >= 0) {
+            end = spec.indexOf('-');
+        }
+        return Ipv4.parse(spec.substring(0, end).trim()) >= 0;
+    }
+
+    /**
+     * @param lower first address, packed
+     * @param upper last address, packed
+     * @return addresses from lower to upper inclusive
+     */
+    public static AddressRanges range(long lower, long upper) {
+        return new AddressRanges(new long[]{lower}, new long[]{upper});
+    }
+
+    /**
+     * @param ranges address sets to combine
+     * @return union of address sets
+     */
+    public static AddressRanges union(ArrayList<AddressRanges> ranges) {
+        int count = 0;
+        for (AddressRanges range : ranges) {
+            count += range.lower.length;
+        }
+        long[][] bounds = new long[count][];
+        int i = 0;
+        for (AddressRanges range : ranges) {
+            for (int r = 0; r < range.lower.length; r++) {
+                bounds[i++] = new long[]{range.lower[r], range.upper[r]};
+            }
+        }
+        Arrays.sort(bounds, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                return Long.compare(a[0], b[0]);
+            }
+        });
+
+        //merge overlapping and adjacent ranges
+        long[] lower = new long[count];
+        long[] upper = new long[count];
+        int merged = 0;
+        for (long[] bound : bounds) {
+            if (merged > 0 && bound[0] <= upper[merged - 1] + 1) {
+                upper[merged - 1] = Math.max(upper[merged - 1], bound[1]);
+            } else {
+                lower[merged] = bound[0];
+                upper[merged] = bound[1];
+                merged++;
+            }
+        }
+        return new AddressRanges(Arrays.copyOf(lower, merged), Arrays.copyOf(upper, merged));
+    }
+
+    /**
+     * @param excluded addresses to remove
+     * @return addresses in this set but not in excluded
+     */
+    public AddressRanges subtract(AddressRanges excluded) {
+        long[] lower = new long[this.lower.length + excluded.lower.length];
+        long[] upper = new long[lower.length];
+        int count = 0;
+        int e = 0;
+        for (int r = 0; r < this.lower.length; r++) {
+            long start = this.lower[r];
+            long end = this.upper[r];
+            while (e < excluded.lower.length && excluded.upper[e] < start) {
+                e++;
+            }
+            //cut every excluded range overlapping this one out of it
+            int x = e;
+            while (start <= end && x < excluded.lower.length && excluded.lower[x] <= end) {
+                if (excluded.lower[x] > start) {
+                    lower[count] = start;
+                    upper[count++] = excluded.lower[x] - 1;
+                }
+                start = Math.max(start, excluded.upper[x] + 1);
+                x++;
+            }
+            if (start <= end) {
+                lower[count] = start;
+                upper[count++] = end;
+            }
+        }
+        return new AddressRanges(Arrays.copyOf(lower, count), Arrays.copyOf(upper, count));
+    }
+
+    /**
+     * @return number of addresses in set
+     */
+    public long size() {
+        return this.offsets[this.lower.length];
+    }
+
+    /**
+     * @param address packed address
+     * @return true if address is in set
+     */
+    public boolean contains(long address) {
+        int r = Arrays.binarySearch(this.lower, address);
+        if (r >= 0) {
+            return true;
+        }
+        r = -r - 2; //range with the greatest lower bound below address
+        return r >= 0 && address <= this.upper[r];
+    }
+
+    /**
+     * @param index index of address, 0 to size() - 1
+     * @return packed address at index, in ascending address order
+     */
+    public long get(long index) {
+        int r = Arrays.binarySearch(this.offsets, index);
+        r = r >= 0 ? r : -r - 2;
+        return this.lower[r] + (index - this.offsets[r]);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder spec = new StringBuilder();
+        for (int r = 0; r < this.lower.length; r++) {
+            if (spec.length() > 0) {
+                spec.append(',');
+            }
+            spec.append(Ipv4.format(this.lower[r]));
+            if (this.upper[r] > this.lower[r]) {
+                spec.append('-').append(Ipv4.format(this.upper[r]));
+            }
+        }
+        return spec.toString();
+    }
+}
@@ -0,0 +1,137 @@
+package portwatch.core.config.profile.host;
+
+import portwatch.core.config.profile.port.PortProfile;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Hosts configured by a single host config entry: either one named host, or a set of IPv4 addresses
+ * from CIDR blocks and address ranges. Addresses are expanded into host profiles lazily, one at a time.
+ */
+public class HostGroup implements Iterable<HostProfile> {
+
+    private String host; //named host, null if group is a set of addresses
+    private AddressRanges addresses; //null if group is a named host
+    private PortProfile portProfile;
+    private int intervalSeconds;
+    private String metricLabel; //label of the group's hosts' metrics, ranges are aggregated so metrics stay bounded
+
+    /**
+     * @param host hostname or address
+     * @param portProfile port profile shared by the group
+     * @param intervalSeconds seconds between scans when scheduled independently, 0 to use scan default
+     */
+    public HostGroup(String host, PortProfile portProfile, int intervalSeconds) {
+        this.host = host;
+        this.portProfile = portProfile;
+        this.intervalSeconds = intervalSeconds;
+        this.metricLabel = host;
+    }
+
+    /**
+     * @param addresses addresses of group
+     * @param portProfile port profile shared by the group
+     * @param intervalSeconds seconds between scans when scheduled independently, 0 to use scan default
+     */
+    public HostGroup(AddressRanges addresses, PortProfile portProfile, int intervalSeconds) {
+        this(addresses, portProfile, intervalSeconds, addresses.toString());
+    }
+
+    /**
+     * @param addresses addresses of group
+     * @param portProfile port profile shared by the group
+     * @param intervalSeconds seconds between scans when scheduled independently, 0 to use scan default
+     * @param metricLabel label of the group's hosts' metrics
+     */
+    private HostGroup(AddressRanges addresses, PortProfile portProfile, int intervalSeconds, String metricLabel) {
+        this.addresses = addresses;
+        this.portProfile = portProfile;
+        this.intervalSeconds = intervalSeconds;
+        this.metricLabel = metricLabel;
+    }
+
+    /**
+     * @return number of hosts in group
+     */
+    public long size() {
+        return this.addresses != null ? this.addresses.size() : 1;
+    }
+
+    /**
+     * @return true if group is a set of addresses rather than a named host
+     */
+    public boolean isAddressRange() {
+        return this.addresses != null;
+    }
+
+    /**
+     * @return addresses of group, null if group is a named host
+     */
+    public AddressRanges getAddresses() {
+        return this.addresses;
+    }
+
+    /**
+     * @param excluded addresses to remove
+     * @return address group with the same profile less excluded addresses
+     */
+    HostGroup subtract(AddressRanges excluded) {
+        return new HostGroup(this.addresses.subtract(excluded), this.portProfile, this.intervalSeconds, this.metricLabel);
+    }
+
+    /**
+     * @param host host string
+     * @param address packed address of host, -1 if host isn't a dotted quad
+     * @return true if host is in group
+     */
+    public boolean contains(String host, long address) {
+        if (this.addresses != null) {
+            return address >= 0 && this.addresses.contains(address);
+        }
+        return this.host.equals(host);
+    }
+
+    /**
+     * @param host host in group
+     * @return profile of host
+     */
+    public HostProfile getProfile(String host) {
+        return new HostProfile(host, this.portProfile, this.intervalSeconds, this.metricLabel);
+    }
+
+    /**
+     * @return host profiles of group, created as iterated
+     */
+    @Override
+    public Iterator<HostProfile> iterator() {
+        return new Iterator<HostProfile>() {
+            private long next = 0;
+
+            @Override
+            public boolean hasNext() {
+                return this.next < size();
+            }
+
+            @Override
+            public HostProfile next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                String nextHost = addresses != null ? Ipv4.format(addresses.get(this.next)) : host;
+                this.next++;
+                return getProfile(nextHost);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return this.addresses != null ? this.addresses.toString() : this.host;
+    }
+}
@@ -0,0 +1,138 @@
+package portwatch.core.config.profile.host;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Configured hosts, in configuration order. Host profiles are created while iterating,
+ * so large address ranges never exist as a list of profiles.
+ * A host configured by more than one group belongs to the first; later groups are built without it,
+ * so every host is scanned once per cycle with a single port profile.
+ */
+public class HostList implements Iterable<HostProfile> {
+
+    private ArrayList<HostGroup> groups;
+    private long size;
+    private long duplicates = 0; //hosts dropped from groups after the first containing them
+
+    private HashMap<String, HostGroup> namedHosts; //single-host groups by host
+    private ArrayList<HostGroup> addressGroups; //groups of address ranges
+
+    /**
+     * @param groups configured host groups, in configuration order
+     */
+    public HostList(ArrayList<HostGroup> groups) {
+        this.groups = new ArrayList<HostGroup>();
+        this.namedHosts = new HashMap<String, HostGroup>();
+        this.addressGroups = new ArrayList<HostGroup>();
+        AddressRanges claimed = null; //addresses of earlier groups, named addresses included
+        for (HostGroup group : groups) {
+            AddressRanges addresses;
+            if (group.isAddressRange()) {
+                if (claimed != null) {
+                    HostGroup remaining = group.subtract(claimed);
+                    this.duplicates += group.size() - remaining.size();
+                    group = remaining;
+                }
+                if (group.size() == 0) {
+                    continue;
+                }
+                this.addressGroups.add(group);
+                addresses = group.getAddresses();
+            } else {
+                String host = group.toString();
+                long address = Ipv4.parse(host);
+                if (this.namedHosts.containsKey(host) || (address >= 0 && claimed != null && claimed.contains(address))) {
+                    this.duplicates++;
+                    continue;
+                }
+                this.namedHosts.put(host, group);
+                addresses = address >= 0 ? AddressRanges.range(address, address) : null;
+            }
+            this.groups.add(group);
+            this.size += group.size();
+            if (addresses != null) {
+                claimed = claimed == null ? addresses : AddressRanges.union(new ArrayList<AddressRanges>(Arrays.asList(claimed, addresses)));
+            }
+        }
+    }
+
+    /**
+     * @return number of hosts
+     */
+    public long size() {
+        return this.size;
+    }
+
+    /**
+     * @return number of hosts configured by more than one group, counted once per extra group
+     */
+    public long getDuplicates() {
+        return this.duplicates;
+    }
+
+    /**
+     * @param host host string
+     * @return true if host is configured
+     */
+    public boolean contains(String host) {
+        return get(host) != null;
+    }
+
+    /**
+     * @param host host string
+     * @return profile of host from the group containing it, null if host isn't configured
+     */
+    public HostProfile get(String host) {
+        HostGroup group = this.namedHosts.get(host);
+        if (group == null) {
+            long address = Ipv4.parse(host);
+            for (HostGroup addressGroup : this.addressGroups) {
+                if (addressGroup.contains(host, address)) {
+                    group = addressGroup;
+                    break;
+                }
+            }
+        }
+        return group != null ? group.getProfile(host) : null;
+    }
+
+    public ArrayList<HostGroup> getGroups() {
+        return this.groups;
+    }
+
+    @Override
+    public Iterator<HostProfile> iterator() {
+        return new Iterator<HostProfile>() {
+            private int group = 0;
+            private Iterator<HostProfile> current = null;
+
+            @Override
+            public boolean hasNext() {
+                while (this.current == null || !this.current.hasNext()) {
+                    if (this.group == groups.size()) {
+                        return false;
+                    }
+                    this.current = groups.get(this.group++).iterator();
+                }
+                return true;
+            }
+
+            @Override
+            public HostProfile next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this.current.next();
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -9,14 +9,37 @@ public class HostProfile {
 
     private String host;
     private PortProfile portProfile;
+    private int intervalSeconds; //seconds between scans when scheduled independently, 0 to use scan default
+    private String metricLabel; //host label of per-host metrics, shared by the hosts of an address range
 
     /**
      * @param host hostname
      * @param portProfile associated port profile
+     * @param intervalSeconds seconds between scans when scheduled independently, 0 to use scan default
+     * @param metricLabel label to export the host's metrics under, host itself unless it is part of an address range
      */
-    public HostProfile(String host, PortProfile portProfile) {
+    public HostProfile(String host, PortProfile portProfile, int intervalSeconds, String metricLabel) {
         this.host = host;
         this.portProfile = portProfile;
+        this.intervalSeconds = intervalSeconds;
+        this.metricLabel = metricLabel;
+    }
+
+    /**
+     * @param host hostname
+     * @param portProfile associated port profile
+     * @param intervalSeconds seconds between scans when scheduled independently, 0 to use scan default
+     */
+    public HostProfile(String host, PortProfile portProfile, int intervalSeconds) {
+        this(host, portProfile, intervalSeconds, host);
+    }
+
+    /**
+     * @param host hostname
+     * @param portProfile associated port profile
+     */
+    public HostProfile(String host, PortProfile portProfile) {
+        this(host, portProfile, 0);
     }
 
     public String getHost() {
@@ -26,4 +49,19 @@ public class HostProfile {
     public PortProfile getPortProfile() {
         return this.portProfile;
     }
+
+    public int getIntervalSeconds() {
+        return this.intervalSeconds;
+    }
+
+    public String getMetricLabel() {
+        return this.metricLabel;
+    }
+
+    /**
+     * @return true if the host has metrics of its own, rather than sharing its address range's
+     */
+    public boolean hasOwnMetrics() {
+        return this.metricLabel.equals(this.host);
+    }
 }
\ No newline at end of file
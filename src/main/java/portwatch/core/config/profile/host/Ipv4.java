@@ -0,0 +1,62 @@
+package portwatch.core.config.profile.host;
+
+/**
+ * IPv4 address packing. Addresses are packed big-endian into the low 32 bits of a long,
+ * so they order and subtract naturally.
+ */
+public class Ipv4 {
+
+    public static final long MAX_ADDRESS = 0xFFFFFFFFL;
+
+    private Ipv4() {
+    }
+
+    /**
+     * Parse a dotted quad
+     * @param address address string
+     * @return packed address, -1 if not a dotted quad
+     */
+    public static long parse(String address) {
+        long packed = 0;
+        int octets = 0;
+        int value = -1; //current octet, -1 before its first digit
+        for (int i = 0; i <= address.length(); i++) {
+            char c = i < address.length() ? address.charAt(i) : '.';
+            if (c >= '0' && c <= '9') {
+                value = (value < 0 ? 0 : value * 10) + (c - '0');
+                if (value > 255) {
+                    return -1;
+                }
+            } else if (c == '.' && value >= 0 && octets < 4) {
+                packed = (packed << 8) | value;
+                octets++;
+                value = -1;
+            } else {
+                return -1;
+            }
+        }
+        return octets == 4 ? packed : -1;
+    }
+
+    /**
+     * Parse a dotted quad in the form format produces, so formatting the packed address gives back the same string
+     * @param address address string
+     * @return packed address, -1 if not a dotted quad or an octet has leading zeros
+     */
+    public static long parseCanonical(String address) {
+        for (int i = 0; i + 1 < address.length(); i++) {
+            if (address.charAt(i) == '0' && (i == 0 || address.charAt(i - 1) == '.') && address.charAt(i + 1) != '.') {
+                return -1;
+            }
+        }
+        return parse(address);
+    }
+
+    /**
+     * @param address packed address
+     * @return dotted quad
+     */
+    public static String format(long address) {
+        return ((address >>> 24) & 0xFF) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+}
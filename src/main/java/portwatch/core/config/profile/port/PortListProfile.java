@@ -7,25 +7,34 @@ import java.util.ArrayList;
  */
 public class PortListProfile implements PortProfile {
 
-    private ArrayList<Integer> ports;
+    private PortSet portSet;
+    private String spec; //rendered on first use, the set never changes
 
     /**
-     * @param ports list of ports
+     * @param ports list of ports, duplicates are ignored
      */
     public PortListProfile(ArrayList<Integer> ports) {
-        this.ports = ports;
+        this.portSet = new PortSet();
+        for (int port : ports) {
+            this.portSet.add(port);
+        }
+    }
+
+    @Override
+    public int[] getPorts() {
+        return this.portSet.toArray();
+    }
+
+    @Override
+    public PortSet getPortSet() {
+        return this.portSet;
     }
 
     @Override
     public String toString() {
-        String result = "";
-        for (int i = 0; i < ports.size(); i++) {
-            if (i < ports.size() - 1) {
-                result += ports.get(i) + ",";
-            } else {
-                result += ports.get(i);
-            }
+        if (this.spec == null) {
+            this.spec = this.portSet.toSpec();
         }
-        return result;
+        return this.spec;
     }
-}
\ No newline at end of file
+}
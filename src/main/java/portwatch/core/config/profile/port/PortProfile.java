@@ -4,5 +4,18 @@ package portwatch.core.config.profile.port;
  * Abstract representation of a port profile.
  */
 public interface PortProfile {
+    /**
+     * @return shortest nmap port spec for profile
+     */
     String toString();
-}
\ No newline at end of file
+
+    /**
+     * @return ports in profile, ascending
+     */
+    int[] getPorts();
+
+    /**
+     * @return compiled ports in profile, shared and not to be modified
+     */
+    PortSet getPortSet();
+}
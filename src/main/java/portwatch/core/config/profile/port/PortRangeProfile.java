@@ -7,6 +7,8 @@ public class PortRangeProfile implements PortProfile {
 
     private int lowerBound;
     private int upperBound;
+    private PortSet portSet;
+    private String spec; //rendered on first use, the set never changes
 
     /**
      * @param lowerBound lower port bound (inclusive)
@@ -15,10 +17,31 @@ public class PortRangeProfile implements PortProfile {
     public PortRangeProfile(int lowerBound, int upperBound) {
         this.lowerBound = lowerBound;
         this.upperBound = upperBound;
+        this.portSet = new PortSet();
+        if (lowerBound <= upperBound) {
+            this.portSet.addRange(lowerBound, upperBound);
+        }
+    }
+
+    @Override
+    public int[] getPorts() {
+        int[] ports = new int[Math.max(0, this.upperBound - this.lowerBound + 1)];
+        for (int i = 0; i < ports.length; i++) {
+            ports[i] = this.lowerBound + i;
+        }
+        return ports;
+    }
+
+    @Override
+    public PortSet getPortSet() {
+        return this.portSet;
     }
 
     @Override
     public String toString() {
-        return String.format("%d-%d", this.lowerBound, this.upperBound);
+        if (this.spec == null) {
+            this.spec = this.portSet.toSpec();
+        }
+        return this.spec;
     }
 }
@@ -0,0 +1,258 @@
+package portwatch.core.config.profile.port;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compiled set of TCP ports, one bit per port 0-65535.
+ * Parsed from port specs: comma-separated ports, ranges ("8000-9000", "-1024", "60000-", "-") and named presets,
+ * and rendered back as the shortest equivalent nmap -p spec.
+ */
+public class PortSet {
+
+    public static final int MAX_PORT = 65535;
+    private static final int WORDS = (MAX_PORT >>> 6) + 1;
+
+    private static final HashMap<String, String> presets = new HashMap<String, String>();
+
+    static {
+        //nmap's most common TCP ports, as scanned by --top-ports
+        presets.put("top20", "21-23,25,53,80,110-111,135,139,143,443,445,993,995,1723,3306,3389,5900,8080");
+        presets.put("top100", "7,9,13,21-23,25-26,37,53,79-81,88,106,110-111,113,119,135,139,143-144,179,199,389,427,"
+                + "443-445,465,513-515,543-544,548,554,587,631,646,873,990,993,995,1025-1029,1110,1433,1720,1723,1755,1900,"
+                + "2000-2001,2049,2121,2717,3000,3128,3306,3389,3986,4899,5000,5009,5051,5060,5101,5190,5357,5432,5631,5666,"
+                + "5800,5900,6000-6001,6646,7070,8000,8008-8009,8080-8081,8443,8888,9100,9999-10000,32768,49152-49157");
+        presets.put("well-known", "1-1023");
+        presets.put("registered", "1024-49151");
+        presets.put("dynamic", "49152-65535");
+        presets.put("all", "1-65535");
+        presets.put("web", "80-81,443,591,3000,8000,8008,8080-8081,8443,8888");
+        presets.put("databases", "1433,1521,3306,5432,6379,7000-7001,9042,9200,9300,11211,27017-27019");
+        presets.put("mail", "25,110,143,465,587,993,995");
+        presets.put("remote-access", "22-23,3389,5900-5903");
+    }
+
+    private final long[] words = new long[WORDS];
+
+    /**
+     * Parse a port spec
+     * @param spec comma-separated ports, ranges and presets
+     * @return compiled set
+     * @throws IllegalArgumentException if the spec is invalid
+     */
+    public static PortSet parse(String spec) {
+        PortSet set = new PortSet();
+        for (String part : spec.split(",")) {
+            part = part.trim();
+            if (part.isEmpty()) {
+                continue;
+            }
+            String preset = presets.get(part.toLowerCase());
+            if (preset != null) {
+                set.addAll(parse(preset));
+                continue;
+            }
+            int dash = part.indexOf('-');
+            if (dash < 0) {
+                set.add(parsePort(part));
+            } else {
+                //omitted range bounds default to 1 and 65535, as in nmap
+                int lower = dash == 0 ? 1 : parsePort(part.substring(0, dash));
+                int upper = dash == part.length() - 1 ? MAX_PORT : parsePort(part.substring(dash + 1));
+                if (lower > upper) {
+                    throw new IllegalArgumentException("Invalid port range: " + part);
+                }
+                set.addRange(lower, upper);
+            }
+        }
+        return set;
+    }
+
+    private static int parsePort(String port) {
+        try {
+            int parsed = Integer.parseInt(port.trim());
+            if (parsed >= 0 && parsed <= MAX_PORT) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            //reported below
+        }
+        throw new IllegalArgumentException("Invalid port or preset: " + port);
+    }
+
+    /**
+     * @param port port to add
+     * @return this set
+     */
+    public PortSet add(int port) {
+        this.words[port >>> 6] |= 1L << port;
+        return this;
+    }
+
+    /**
+     * @param lower lower port bound (inclusive)
+     * @param upper upper port bound (inclusive)
+     * @return this set
+     */
+    public PortSet addRange(int lower, int upper) {
+        for (int w = lower >>> 6; w <= upper >>> 6; w++) {
+            long mask = -1L;
+            if (w == lower >>> 6) {
+                mask &= -1L << lower;
+            }
+            if (w == upper >>> 6) {
+                mask &= -1L >>> (63 - (upper & 63));
+            }
+            this.words[w] |= mask;
+        }
+        return this;
+    }
+
+    /**
+     * @param other set whose ports to add
+     * @return this set
+     */
+    public PortSet addAll(PortSet other) {
+        for (int w = 0; w < WORDS; w++) {
+            this.words[w] |= other.words[w];
+        }
+        return this;
+    }
+
+    public boolean contains(int port) {
+        return (this.words[port >>> 6] & (1L << port)) != 0;
+    }
+
+    /**
+     * @param w word index
+     * @return bits of ports w*64 to w*64+63
+     */
+    public long word(int w) {
+        return w < WORDS ? this.words[w] : 0L;
+    }
+
+    /**
+     * @return number of ports in set
+     */
+    public int size() {
+        int size = 0;
+        for (long word : this.words) {
+            size += Long.bitCount(word);
+        }
+        return size;
+    }
+
+    /**
+     * @return ports in set, ascending
+     */
+    public int[] toArray() {
+        int[] ports = new int[size()];
+        int i = 0;
+        for (int w = 0; w < WORDS; w++) {
+            long word = this.words[w];
+            while (word != 0) {
+                ports[i++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+        }
+        return ports;
+    }
+
+    /**
+     * Split into consecutive chunks of ports
+     * @param chunkSize maximum number of ports per chunk
+     * @return chunks in ascending port order, together holding every port in this set
+     */
+    public ArrayList<PortSet> split(int chunkSize) {
+        ArrayList<PortSet> chunks = new ArrayList<PortSet>();
+        PortSet chunk = null;
+        int count = 0;
+        for (int port : toArray()) {
+            if (chunk == null || count == chunkSize) {
+                chunk = new PortSet();
+                chunks.add(chunk);
+                count = 0;
+            }
+            chunk.add(port);
+            count++;
+        }
+        return chunks;
+    }
+
+    /**
+     * Render the shortest nmap -p spec for this set.
+     * Runs of two or more ports become ranges, ranges starting at 1 or ending at 65535 omit that bound.
+     * @return port spec
+     */
+    public String toSpec() {
+        StringBuilder spec = new StringBuilder();
+        int port = nextSet(0);
+        while (port >= 0) {
+            int end = nextClear(port) - 1;
+            if (spec.length() > 0) {
+                spec.append(',');
+            }
+            if (end > port) {
+                if (port != 1) {
+                    spec.append(port);
+                }
+                spec.append('-');
+                if (end != MAX_PORT) {
+                    spec.append(end);
+                }
+            } else {
+                spec.append(port);
+            }
+            port = end < MAX_PORT ? nextSet(end + 1) : -1;
+        }
+        return spec.toString();
+    }
+
+    /**
+     * @param from port to start at
+     * @return first port in set at or after from, -1 if none
+     */
+    private int nextSet(int from) {
+        int w = from >>> 6;
+        long word = this.words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == WORDS) {
+                return -1;
+            }
+            word = this.words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    /**
+     * @param from port to start at
+     * @return first port not in set at or after from, 65536 if none
+     */
+    private int nextClear(int from) {
+        int w = from >>> 6;
+        long word = ~this.words[w] & (-1L << from);
+        while (word == 0) {
+            if (++w == WORDS) {
+                return MAX_PORT + 1;
+            }
+            word = ~this.words[w];
+        }
+        return (w << 6) + Long.numberOfTrailingZeros(word);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof PortSet && Arrays.equals(this.words, ((PortSet) other).words);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(this.words);
+    }
+
+    @Override
+    public String toString() {
+        return toSpec();
+    }
+}
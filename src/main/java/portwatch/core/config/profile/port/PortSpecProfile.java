@@ -0,0 +1,43 @@
+package portwatch.core.config.profile.port;
+
+/**
+ * Port profile for specifying a union of ports, ranges and presets, e.g. "1-1024,3306,top20,8000-9000".
+ */
+public class PortSpecProfile implements PortProfile {
+
+    private PortSet portSet;
+    private String spec; //rendered on first use, the set never changes
+
+    /**
+     * @param spec port spec, see {@link PortSet#parse(String)}
+     * @throws IllegalArgumentException if the spec is invalid
+     */
+    public PortSpecProfile(String spec) {
+        this.portSet = PortSet.parse(spec);
+    }
+
+    /**
+     * @param portSet compiled ports
+     */
+    public PortSpecProfile(PortSet portSet) {
+        this.portSet = portSet;
+    }
+
+    @Override
+    public int[] getPorts() {
+        return this.portSet.toArray();
+    }
+
+    @Override
+    public PortSet getPortSet() {
+        return this.portSet;
+    }
+
+    @Override
+    public String toString() {
+        if (this.spec == null) {
+            this.spec = this.portSet.toSpec();
+        }
+        return this.spec;
+    }
+}
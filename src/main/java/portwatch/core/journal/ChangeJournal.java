@@ -0,0 +1,287 @@
+package portwatch.core.journal;
+
+import portwatch.core.logging.Logger;
+import portwatch.core.watch.model.HostUpdate;
+import portwatch.core.watch.model.PortSnapshot;
+import portwatch.core.watch.model.PortStatus;
+import portwatch.core.watch.model.PortUpdate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+/**
+ * Append-only binary journal of every port change, observes PortWatcher.
+ *
+ * The journal is a directory of numbered segments. Each segment file holds compressed blocks of records
+ * and is accompanied by an index file with one fixed-size entry per block (time range, offset, host bloom filter),
+ * so queries only decompress blocks that can match. Segments are rolled once they reach a size limit.
+ *
+ * Records are buffered into a block until it is large enough to compress well, its host filter would stop
+ * being selective, or its oldest record reaches a time limit. Buffered records are written on close.
+ */
+public class ChangeJournal implements Observer {
+
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    static final int BLOCK_HEADER_SIZE = 12; //compressed length, raw length, record count
+    private static final long MAX_SEGMENT_SIZE = 16 << 20;
+    private static final int MAX_BLOCK_SIZE = 64 << 10; //raw bytes buffered before a block is written
+    private static final int MAX_FILTER_BITS = 32; //host filter bits set before a block is written, half the filter
+    private static final long MAX_BLOCK_AGE_MILLIS = 15000; //age of a block's oldest record before it is written
+
+    private File directory;
+    private int segmentNumber;
+    private FileChannel segmentChannel;
+    private FileChannel indexChannel;
+    private long segmentSize; //bytes written to current segment
+
+    private ByteArrayOutputStream rawBlock;
+    private DataOutputStream blockOutput;
+    private Deflater deflater;
+    private byte[] compressBuffer;
+    private ByteBuffer indexBuffer;
+
+    //buffered block, guarded by this
+    private int blockRecords = 0;
+    private long blockMinTimestamp;
+    private long blockMaxTimestamp;
+    private long blockHostFilter;
+
+    private ScheduledExecutorService flusher; //writes blocks that reached the age limit
+
+    /**
+     * @param directory journal directory, created if it doesn't exist
+     * @throws IOException if the journal can't be opened
+     */
+    public ChangeJournal(File directory) throws IOException {
+        this.directory = directory;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create journal directory " + directory);
+        }
+        this.rawBlock = new ByteArrayOutputStream(4096);
+        this.blockOutput = new DataOutputStream(this.rawBlock);
+        this.deflater = new Deflater(Deflater.BEST_SPEED);
+        this.compressBuffer = new byte[4096];
+        this.indexBuffer = ByteBuffer.allocate(JournalIndexEntry.SIZE);
+
+        int[] segments = JournalReader.listSegments(directory);
+        this.segmentNumber = segments.length > 0 ? segments[segments.length - 1] : 0;
+        openSegment();
+
+        this.flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "journal-flush");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.flusher.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    flushExpiredBlock();
+                } catch (IOException e) {
+                    Logger.logError("Unable to write journal: " + e.getMessage(), ChangeJournal.class);
+                }
+            }
+        }, MAX_BLOCK_AGE_MILLIS / 3, MAX_BLOCK_AGE_MILLIS / 3, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param directory journal directory
+     * @param segmentNumber segment number
+     * @param suffix segment or index suffix
+     * @return file of segment
+     */
+    static File segmentFile(File directory, int segmentNumber, String suffix) {
+        return new File(directory, String.format("journal-%08d%s", segmentNumber, suffix));
+    }
+
+    /**
+     * Open the current segment for appending, starting a new segment if it's full.
+     * Any trailing data not covered by the index (partially written block) is truncated.
+     * @throws IOException
+     */
+    private void openSegment() throws IOException {
+        File segment = segmentFile(this.directory, this.segmentNumber, SEGMENT_SUFFIX);
+        File index = segmentFile(this.directory, this.segmentNumber, INDEX_SUFFIX);
+        this.segmentChannel = FileChannel.open(segment.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        this.indexChannel = FileChannel.open(index.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+
+        //index is written after its block, so the last complete index entry marks the end of valid data
+        long entries = this.indexChannel.size() / JournalIndexEntry.SIZE;
+        this.segmentSize = 0;
+        if (entries > 0) {
+            ByteBuffer last = ByteBuffer.allocate(JournalIndexEntry.SIZE);
+            this.indexChannel.read(last, (entries - 1) * JournalIndexEntry.SIZE);
+            last.flip();
+            JournalIndexEntry entry = JournalIndexEntry.readFrom(last);
+            this.segmentSize = entry.getOffset() + entry.getLength();
+        }
+        this.indexChannel.truncate(entries * JournalIndexEntry.SIZE);
+        this.indexChannel.position(entries * JournalIndexEntry.SIZE);
+        this.segmentChannel.truncate(this.segmentSize);
+        this.segmentChannel.position(this.segmentSize);
+
+        if (this.segmentSize >= MAX_SEGMENT_SIZE) {
+            rollSegment();
+        }
+    }
+
+    /**
+     * Close current segment and start the next one
+     * @throws IOException
+     */
+    private void rollSegment() throws IOException {
+        closeSegment();
+        this.segmentNumber++;
+        Logger.logDebug("Starting journal segment " + this.segmentNumber);
+        openSegment();
+    }
+
+    private void closeSegment() throws IOException {
+        this.segmentChannel.close();
+        this.indexChannel.close();
+    }
+
+    /**
+     * Buffer all port changes of a host update, writing the block once it is full
+     * @param hostUpdate host update to journal
+     * @throws IOException
+     */
+    public synchronized void append(HostUpdate hostUpdate) throws IOException {
+        if (hostUpdate.getPortUpdates().isEmpty()) {
+            return;
+        }
+
+        long timestamp = System.currentTimeMillis();
+        if (this.blockRecords == 0) {
+            this.blockMinTimestamp = timestamp;
+            this.blockHostFilter = 0;
+        }
+        for (PortUpdate portUpdate : hostUpdate.getPortUpdates()) {
+            new JournalRecord(timestamp, hostUpdate.getType(), hostUpdate.getHost(), portUpdate.getPort(),
+                    stateOf(portUpdate.getOldStatus()), stateOf(portUpdate.getNewStatus()), portUpdate.getService())
+                    .writeTo(this.blockOutput);
+        }
+        this.blockRecords += hostUpdate.getPortUpdates().size();
+        this.blockMaxTimestamp = timestamp;
+        this.blockHostFilter |= JournalIndexEntry.hostBits(hostUpdate.getHost());
+
+        if (this.rawBlock.size() >= MAX_BLOCK_SIZE || Long.bitCount(this.blockHostFilter) >= MAX_FILTER_BITS) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Write the buffered block if its oldest record reached the age limit
+     * @throws IOException
+     */
+    private synchronized void flushExpiredBlock() throws IOException {
+        if (this.blockRecords > 0 && System.currentTimeMillis() - this.blockMinTimestamp >= MAX_BLOCK_AGE_MILLIS) {
+            flushBlock();
+        }
+    }
+
+    /**
+     * Compress and write the buffered block followed by its index entry, if any records are buffered.
+     * Caller must hold this journal's lock.
+     * @throws IOException
+     */
+    private void flushBlock() throws IOException {
+        if (this.blockRecords == 0) {
+            return;
+        }
+        this.blockOutput.flush();
+        int records = this.blockRecords;
+        this.blockRecords = 0;
+
+        //compress block
+        byte[] raw = this.rawBlock.toByteArray();
+        this.rawBlock.reset();
+        this.deflater.reset();
+        this.deflater.setInput(raw);
+        this.deflater.finish();
+        int compressedLength = 0;
+        while (!this.deflater.finished()) {
+            if (compressedLength == this.compressBuffer.length) {
+                byte[] grown = new byte[this.compressBuffer.length * 2];
+                System.arraycopy(this.compressBuffer, 0, grown, 0, compressedLength);
+                this.compressBuffer = grown;
+            }
+            compressedLength += this.deflater.deflate(this.compressBuffer, compressedLength,
+                    this.compressBuffer.length - compressedLength);
+        }
+
+        ByteBuffer block = ByteBuffer.allocate(BLOCK_HEADER_SIZE + compressedLength);
+        block.putInt(compressedLength).putInt(raw.length).putInt(records);
+        block.put(this.compressBuffer, 0, compressedLength);
+        block.flip();
+        long offset = this.segmentSize;
+        while (block.hasRemaining()) {
+            this.segmentChannel.write(block);
+        }
+        this.segmentSize += block.limit();
+
+        //index entry last, so it never refers to an incomplete block
+        this.indexBuffer.clear();
+        new JournalIndexEntry(this.blockMinTimestamp, this.blockMaxTimestamp, offset, block.limit(), records,
+                this.blockHostFilter).writeTo(this.indexBuffer);
+        this.indexBuffer.flip();
+        while (this.indexBuffer.hasRemaining()) {
+            this.indexChannel.write(this.indexBuffer);
+        }
+
+        if (this.segmentSize >= MAX_SEGMENT_SIZE) {
+            rollSegment();
+        }
+    }
+
+    /**
+     * @param status port status, may be null
+     * @return state code of status, closed if null
+     */
+    private static int stateOf(PortStatus status) {
+        return status != null ? PortSnapshot.parseState(status.getState()) : PortSnapshot.CLOSED;
+    }
+
+    /**
+     * Write any buffered records and close the journal
+     */
+    public synchronized void close() {
+        this.flusher.shutdownNow();
+        try {
+            flushBlock();
+            closeSegment();
+            this.deflater.end();
+        } catch (IOException e) {
+            Logger.logError("Unable to close journal: " + e.getMessage(), getClass());
+        }
+    }
+
+    @Override
+    public void update(Observable observed, Object object) {
+        if (object instanceof HostUpdate) {
+            //PortWatcher observed host update
+            try {
+                append((HostUpdate) object);
+            } catch (IOException e) {
+                Logger.logError("Unable to write journal: " + e.getMessage(), getClass());
+            }
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package portwatch.core.journal;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Sparse index entry describing one compressed block of a journal segment.
+ * Holds the block's time range and a small bloom filter of its hosts so blocks can be skipped without reading them.
+ */
+public class JournalIndexEntry {
+
+    public static final int SIZE = 8 + 8 + 8 + 4 + 4 + 8;
+
+    private long minTimestamp;
+    private long maxTimestamp;
+    private long offset; //block offset within segment
+    private int length; //block length including header
+    private int records;
+    private long hostFilter; //64-bit bloom filter of block's hosts
+
+    /**
+     * @param minTimestamp earliest record timestamp in block
+     * @param maxTimestamp latest record timestamp in block
+     * @param offset block offset within segment
+     * @param length block length including header
+     * @param records number of records in block
+     * @param hostFilter bloom filter of block's hosts
+     */
+    public JournalIndexEntry(long minTimestamp, long maxTimestamp, long offset, int length, int records, long hostFilter) {
+        this.minTimestamp = minTimestamp;
+        this.maxTimestamp = maxTimestamp;
+        this.offset = offset;
+        this.length = length;
+        this.records = records;
+        this.hostFilter = hostFilter;
+    }
+
+    /**
+     * @param host host to add to a filter
+     * @return filter bits for host
+     */
+    public static long hostBits(String host) {
+        int hash = host.toLowerCase().hashCode();
+        int mixed = hash * 0x9E3779B9;
+        return (1L << (hash & 63)) | (1L << ((mixed >>> 26) & 63));
+    }
+
+    /**
+     * @param host host to check
+     * @return false if the block definitely has no records for host
+     */
+    public boolean mightContain(String host) {
+        long bits = hostBits(host);
+        return (this.hostFilter & bits) == bits;
+    }
+
+    /**
+     * @param from range start, epoch millis inclusive
+     * @param to range end, epoch millis inclusive
+     * @return true if the block's time range overlaps the given range
+     */
+    public boolean overlaps(long from, long to) {
+        return this.maxTimestamp >= from && this.minTimestamp <= to;
+    }
+
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(this.minTimestamp).putLong(this.maxTimestamp).putLong(this.offset)
+                .putInt(this.length).putInt(this.records).putLong(this.hostFilter);
+    }
+
+    public static JournalIndexEntry readFrom(ByteBuffer buffer) {
+        return new JournalIndexEntry(buffer.getLong(), buffer.getLong(), buffer.getLong(), buffer.getInt(),
+                buffer.getInt(), buffer.getLong());
+    }
+
+    public long getOffset() {
+        return this.offset;
+    }
+
+    public int getLength() {
+        return this.length;
+    }
+
+    public int getRecords() {
+        return this.records;
+    }
+}
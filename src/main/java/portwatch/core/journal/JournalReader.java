@@ -0,0 +1,168 @@
+package portwatch.core.journal;
+
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Reads records from a change journal directory.
+ * Blocks are filtered by their index entries first; only blocks that may match a query are decompressed.
+ */
+public class JournalReader {
+
+    public interface RecordVisitor {
+        /**
+         * @param record record matching the query
+         */
+        void visit(JournalRecord record);
+    }
+
+    private File directory;
+
+    private long blocksRead = 0;
+    private long blocksSkipped = 0;
+
+    /**
+     * @param directory journal directory
+     */
+    public JournalReader(File directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * @param directory journal directory
+     * @return segment numbers present in directory, ascending
+     */
+    static int[] listSegments(File directory) {
+        String[] names = directory.list();
+        if (names == null) {
+            return new int[0];
+        }
+        int[] segments = new int[names.length];
+        int count = 0;
+        for (String name : names) {
+            if (name.startsWith("journal-") && name.endsWith(ChangeJournal.SEGMENT_SUFFIX)) {
+                try {
+                    segments[count] = Integer.parseInt(name.substring(8, name.length() - ChangeJournal.SEGMENT_SUFFIX.length()));
+                    count++;
+                } catch (NumberFormatException e) {
+                    //not a segment
+                }
+            }
+        }
+        segments = Arrays.copyOf(segments, count);
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Visit all records matching the query, in journal order
+     * @param host host to match, null for any
+     * @param port port to match, -1 for any
+     * @param from range start, epoch millis inclusive
+     * @param to range end, epoch millis inclusive
+     * @param visitor visitor of matching records
+     * @throws IOException if the journal can't be read
+     */
+    public void query(String host, int port, long from, long to, RecordVisitor visitor) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            for (int segment : listSegments(this.directory)) {
+                querySegment(segment, host, port, from, to, visitor, inflater);
+            }
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private void querySegment(int segment, String host, int port, long from, long to, RecordVisitor visitor,
+                              Inflater inflater) throws IOException {
+        File indexFile = ChangeJournal.segmentFile(this.directory, segment, ChangeJournal.INDEX_SUFFIX);
+        File segmentFile = ChangeJournal.segmentFile(this.directory, segment, ChangeJournal.SEGMENT_SUFFIX);
+        if (!indexFile.isFile()) {
+            return;
+        }
+
+        ByteBuffer index;
+        try (FileChannel indexChannel = FileChannel.open(indexFile.toPath(), StandardOpenOption.READ)) {
+            int entries = (int) (indexChannel.size() / JournalIndexEntry.SIZE);
+            index = ByteBuffer.allocate(entries * JournalIndexEntry.SIZE);
+            while (index.hasRemaining() && indexChannel.read(index) >= 0) {
+                //read whole index
+            }
+            index.flip();
+        }
+
+        try (FileChannel segmentChannel = FileChannel.open(segmentFile.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer block = ByteBuffer.allocate(4096);
+            byte[] raw = new byte[4096];
+            while (index.remaining() >= JournalIndexEntry.SIZE) {
+                JournalIndexEntry entry = JournalIndexEntry.readFrom(index);
+                if (!entry.overlaps(from, to) || (host != null && !entry.mightContain(host))) {
+                    this.blocksSkipped++;
+                    continue;
+                }
+                this.blocksRead++;
+
+                if (block.capacity() < entry.getLength()) {
+                    block = ByteBuffer.allocate(entry.getLength());
+                }
+                block.clear();
+                block.limit(entry.getLength());
+                long position = entry.getOffset();
+                while (block.hasRemaining()) {
+                    int read = segmentChannel.read(block, position);
+                    if (read < 0) {
+                        throw new IOException("Truncated journal block in " + segmentFile);
+                    }
+                    position += read;
+                }
+                block.flip();
+
+                int compressedLength = block.getInt();
+                int rawLength = block.getInt();
+                int records = block.getInt();
+                if (raw.length < rawLength) {
+                    raw = new byte[rawLength];
+                }
+                inflater.reset();
+                inflater.setInput(block.array(), block.position(), compressedLength);
+                try {
+                    int inflated = 0;
+                    while (inflated < rawLength && !inflater.finished()) {
+                        inflated += inflater.inflate(raw, inflated, rawLength - inflated);
+                    }
+                } catch (DataFormatException e) {
+                    throw new IOException("Corrupt journal block in " + segmentFile, e);
+                }
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(raw, 0, rawLength));
+                for (int i = 0; i < records; i++) {
+                    JournalRecord record = JournalRecord.readFrom(in);
+                    if (record.getTimestamp() < from || record.getTimestamp() > to) {
+                        continue;
+                    }
+                    if ((host == null || host.equalsIgnoreCase(record.getHost()))
+                            && (port < 0 || port == record.getPort())) {
+                        visitor.visit(record);
+                    }
+                }
+            }
+        }
+    }
+
+    public long getBlocksRead() {
+        return this.blocksRead;
+    }
+
+    public long getBlocksSkipped() {
+        return this.blocksSkipped;
+    }
+}
@@ -0,0 +1,99 @@
+package portwatch.core.journal;
+
+import portwatch.core.watch.model.HostUpdate;
+import portwatch.core.watch.model.PortSnapshot;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+
+/**
+ * A single journaled port change.
+ */
+public class JournalRecord {
+
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss")
+            .withZone(ZoneId.systemDefault());
+
+    private long timestamp; //epoch millis
+    private HostUpdate.UpdateType type;
+    private String host;
+    private int port;
+    private int oldState; //PortSnapshot state code
+    private int newState; //PortSnapshot state code
+    private String service;
+
+    /**
+     * @param timestamp time the change was detected, epoch millis
+     * @param type type of the update the change was part of
+     * @param host host the change was observed on
+     * @param port port number
+     * @param oldState old state code
+     * @param newState new state code
+     * @param service service string
+     */
+    public JournalRecord(long timestamp, HostUpdate.UpdateType type, String host, int port, int oldState, int newState,
+                         String service) {
+        this.timestamp = timestamp;
+        this.type = type;
+        this.host = host;
+        this.port = port;
+        this.oldState = oldState;
+        this.newState = newState;
+        this.service = service;
+    }
+
+    /**
+     * Write binary form: timestamp, type, host, port, states, service
+     * @param out output to write to
+     * @throws IOException
+     */
+    public void writeTo(DataOutput out) throws IOException {
+        out.writeLong(this.timestamp);
+        out.writeByte(this.type.ordinal());
+        out.writeUTF(this.host);
+        out.writeShort(this.port);
+        out.writeByte(this.oldState);
+        out.writeByte(this.newState);
+        out.writeUTF(this.service);
+    }
+
+    /**
+     * Read binary form written by writeTo
+     * @param in input to read from
+     * @return read record
+     * @throws IOException
+     */
+    public static JournalRecord readFrom(DataInput in) throws IOException {
+        long timestamp = in.readLong();
+        HostUpdate.UpdateType type = HostUpdate.UpdateType.values()[in.readByte()];
+        String host = in.readUTF();
+        int port = in.readUnsignedShort();
+        int oldState = in.readByte();
+        int newState = in.readByte();
+        String service = in.readUTF();
+        return new JournalRecord(timestamp, type, host, port, oldState, newState, service);
+    }
+
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public String getHost() {
+        return this.host;
+    }
+
+    public int getPort() {
+        return this.port;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s] %s %s %d (%s) %s -> %s", dateFormat.format(Instant.ofEpochMilli(this.timestamp)),
+                this.type.toString().toLowerCase(), this.host, this.port, this.service,
+                PortSnapshot.stateName(this.oldState), PortSnapshot.stateName(this.newState));
+    }
+}
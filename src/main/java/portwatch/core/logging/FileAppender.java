@@ -0,0 +1,160 @@
+package portwatch.core.logging;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asynchronous log file appender.
+ * Messages are placed in a ring buffer and written in batches by a single writer thread through one open channel.
+ * The file is rotated once it exceeds a maximum size or age.
+ */
+public class FileAppender implements Runnable {
+
+    private static final int BUFFER_SIZE = 8192; //messages held before producers wait
+    private static final int BATCH_SIZE = 512; //messages written per batch at most
+    private static final long POLL_MILLIS = 200; //longest wait for messages before checking for close
+    private static final DateTimeFormatter rotationFormat = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+
+    private File file;
+    private long maxBytes; //rotate once file exceeds this size, 0 to disable
+    private long maxAgeMillis; //rotate once file has been open this long, 0 to disable
+
+    private final ArrayBlockingQueue<String> buffer = new ArrayBlockingQueue<String>(BUFFER_SIZE);
+    private FileChannel channel;
+    private long openedMillis; //time current file was opened
+    private Thread writer;
+    private volatile boolean running = true;
+
+    /**
+     * @param file log file, appended to if it exists
+     * @param maxBytes rotate once file exceeds this size, 0 to disable
+     * @param maxAgeMillis rotate once file has been open this long, 0 to disable
+     * @throws IOException if log file can't be opened
+     */
+    public FileAppender(File file, long maxBytes, long maxAgeMillis) throws IOException {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+        open();
+
+        this.writer = new Thread(this, "log-writer");
+        this.writer.setDaemon(true);
+        this.writer.start();
+    }
+
+    /**
+     * Queue a message to be written, waiting only if the buffer is full
+     * @param message message to write, without line terminator
+     */
+    public void append(String message) {
+        try {
+            this.buffer.put(message);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write all queued messages and close the file
+     */
+    public void close() {
+        //writer isn't interrupted, interrupting a thread in a channel write closes the channel
+        this.running = false;
+        try {
+            this.writer.join(TimeUnit.SECONDS.toMillis(5));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Write queued messages in batches until closed
+     */
+    public void run() {
+        ArrayList<String> batch = new ArrayList<String>(BATCH_SIZE);
+        StringBuilder text = new StringBuilder();
+        while (this.running || !this.buffer.isEmpty()) {
+            try {
+                String first = this.buffer.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue; //check whether still running
+                }
+                batch.add(first);
+            } catch (InterruptedException e) {
+                break;
+            }
+            this.buffer.drainTo(batch, BATCH_SIZE - 1);
+
+            text.setLength(0);
+            for (String message : batch) {
+                text.append(message).append(System.lineSeparator());
+            }
+            batch.clear();
+            write(text);
+        }
+
+        try {
+            this.channel.close();
+        } catch (IOException e) {
+            System.err.println(e.getMessage());
+        }
+    }
+
+    /**
+     * Write text to the current file, rotating first if needed
+     * @param text text to write
+     */
+    private void write(CharSequence text) {
+        try {
+            if (needsRotation()) {
+                rotate();
+            }
+            ByteBuffer bytes = StandardCharsets.UTF_8.encode(text.toString());
+            while (bytes.hasRemaining()) {
+                this.channel.write(bytes);
+            }
+        } catch (IOException e) {
+            //logger can't log its own failure to the file
+            System.err.println("Log write failed: " + e.getMessage());
+        }
+    }
+
+    private boolean needsRotation() throws IOException {
+        if (this.maxBytes > 0 && this.channel.size() >= this.maxBytes) {
+            return true;
+        }
+        return this.maxAgeMillis > 0 && System.currentTimeMillis() - this.openedMillis >= this.maxAgeMillis;
+    }
+
+    /**
+     * Close the current file, move it aside with a timestamp suffix and open a new one
+     * @throws IOException
+     */
+    private void rotate() throws IOException {
+        this.channel.close();
+        String rotatedPath = this.file.getPath() + "." + LocalDateTime.now().format(rotationFormat);
+        File rotated = new File(rotatedPath);
+        for (int i = 1; rotated.exists(); i++) {
+            rotated = new File(rotatedPath + "-" + i); //rotated more than once within a second
+        }
+        if (!this.file.renameTo(rotated)) {
+            System.err.println("Log rotation failed, could not rename " + this.file.getPath());
+        }
+        open();
+    }
+
+    private void open() throws IOException {
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.APPEND);
+        this.openedMillis = System.currentTimeMillis();
+    }
+}
@@ -1,21 +1,44 @@
 package portwatch.core.logging;
 
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.PrintWriter;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.Date;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
 
 public class Logger {
 
     enum MessageType { NORMAL, ERROR }
     public enum Verbosity { NORMAL, DEBUG }
 
-    public static File logFile;
-    public static Verbosity logVerbosity = Verbosity.NORMAL;
+    private static final DateTimeFormatter dateFormat = DateTimeFormatter.ofPattern("yyyy/MM/dd HH:mm:ss"); //immutable, thread-safe
 
-    public static synchronized void log(String message, Verbosity verbosity, MessageType type, Class context) {
+    public static volatile Verbosity logVerbosity = Verbosity.NORMAL;
+    private static volatile FileAppender fileAppender; //null if logging to console
+
+    /**
+     * Log to a file instead of the console
+     * @param logFile file to append to
+     * @param maxBytes rotate once file exceeds this size, 0 to disable
+     * @param maxAgeMillis rotate once file has been open this long, 0 to disable
+     */
+    public static void setLogFile(File logFile, long maxBytes, long maxAgeMillis) {
+        try {
+            final FileAppender appender = new FileAppender(logFile, maxBytes, maxAgeMillis);
+            fileAppender = appender;
+            Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    appender.close();
+                }
+            }));
+        } catch (IOException e) {
+            //revert to console logging
+            fileAppender = null;
+            logError(e.getMessage(), Logger.class);
+        }
+    }
+
+    public static void log(String message, Verbosity verbosity, MessageType type, Class context) {
         if (logVerbosity == Verbosity.NORMAL && verbosity == Verbosity.DEBUG) {
             return;
         }
@@ -27,10 +50,11 @@ public class Logger {
             logMessage = String.format("[%s] %s ERROR: %s", getDateString(), context.getSimpleName(), message);
         }
 
-        if (logFile == null) {
+        FileAppender appender = fileAppender;
+        if (appender == null) {
             System.out.println(logMessage);
         } else {
-            logToFile(logMessage);
+            appender.append(logMessage);
         }
     }
 
@@ -47,24 +71,6 @@ public class Logger {
     }
 
     private static String getDateString() {
-        DateFormat dateFormat = new SimpleDateFormat("yyyy/MM/dd HH:mm:ss");
-        Date date = new Date();
-        return dateFormat.format(date);
-    }
-
-    private static void logToFile(String logMessage) {
-        PrintWriter fileOut = null;
-        try {
-            fileOut = new PrintWriter(logFile);
-            fileOut.append(logMessage + "\n");
-        } catch (FileNotFoundException e) {
-            //revert to console logging
-            Logger.logFile = null;
-            logError(e.getMessage(), Logger.class);
-        } finally {
-            if (fileOut != null) {
-                fileOut.close();
-            }
-        }
+        return LocalDateTime.now().format(dateFormat);
     }
 }
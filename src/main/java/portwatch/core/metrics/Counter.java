@@ -0,0 +1,68 @@
+package portwatch.core.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Monotonically increasing count. Backed by striped adders, so concurrent increments don't contend.
+ */
+public class Counter extends Metric {
+
+    private final ConcurrentHashMap<String, LongAdder> children = new ConcurrentHashMap<String, LongAdder>();
+
+    Counter(String name, String help, String labelName) {
+        super(name, help, labelName);
+    }
+
+    private LongAdder child(String label) {
+        String key = key(label);
+        LongAdder child = this.children.get(key);
+        if (child == null) {
+            LongAdder created = new LongAdder();
+            child = this.children.putIfAbsent(key, created);
+            if (child == null) {
+                child = created;
+            }
+        }
+        return child;
+    }
+
+    public void inc() {
+        child(NO_LABEL).increment();
+    }
+
+    /**
+     * @param label label value of child to increment
+     */
+    public void inc(String label) {
+        child(label).increment();
+    }
+
+    /**
+     * @param amount amount to increase by
+     */
+    public void add(long amount) {
+        child(NO_LABEL).add(amount);
+    }
+
+    /**
+     * @param label label value of child to increase
+     * @param amount amount to increase by
+     */
+    public void add(String label, long amount) {
+        child(label).add(amount);
+    }
+
+    @Override
+    String getType() {
+        return "counter";
+    }
+
+    @Override
+    void writeSamples(StringBuilder output) {
+        for (Map.Entry<String, LongAdder> child : this.children.entrySet()) {
+            writeSample(output, "", child.getKey(), null, Long.toString(child.getValue().sum()));
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package portwatch.core.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Current value that can go up and down, either set directly or read from a source when scraped.
+ */
+public class Gauge extends Metric {
+
+    /**
+     * Supplies a gauge's value when scraped
+     */
+    public interface Source {
+        /**
+         * @return current value
+         */
+        double get();
+    }
+
+    private static class Value implements Source {
+        private volatile double value;
+
+        @Override
+        public double get() {
+            return this.value;
+        }
+    }
+
+    private final ConcurrentHashMap<String, Source> children = new ConcurrentHashMap<String, Source>();
+
+    Gauge(String name, String help, String labelName) {
+        super(name, help, labelName);
+    }
+
+    /**
+     * @param source source of the unlabeled value
+     * @return this gauge
+     */
+    public Gauge source(Source source) {
+        return source(NO_LABEL, source);
+    }
+
+    /**
+     * @param label label value of child
+     * @param source source of the child's value
+     * @return this gauge
+     */
+    public Gauge source(String label, Source source) {
+        this.children.put(key(label), source);
+        return this;
+    }
+
+    /**
+     * @param value new unlabeled value
+     */
+    public void set(double value) {
+        set(NO_LABEL, value);
+    }
+
+    /**
+     * @param label label value of child to set
+     * @param value new value
+     */
+    public void set(String label, double value) {
+        String key = key(label);
+        Source child = this.children.get(key);
+        if (!(child instanceof Value)) {
+            child = new Value();
+            this.children.put(key, child);
+        }
+        ((Value) child).value = value;
+    }
+
+    /**
+     * @param label label value of child to stop reporting
+     */
+    public void remove(String label) {
+        this.children.remove(key(label));
+    }
+
+    @Override
+    String getType() {
+        return "gauge";
+    }
+
+    @Override
+    void writeSamples(StringBuilder output) {
+        for (Map.Entry<String, Source> child : this.children.entrySet()) {
+            writeSample(output, "", child.getKey(), null, format(child.getValue().get()));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package portwatch.core.metrics;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of observed values in fixed buckets, with count and sum. Backed by striped adders.
+ */
+public class Histogram extends Metric {
+
+    /** Default bucket upper bounds, in seconds */
+    public static final double[] DURATION_BUCKETS = {
+            0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600, 1800, 3600
+    };
+
+    private class Child {
+        private final LongAdder[] buckets; //non-cumulative counts, last bucket is +Inf
+        private final DoubleAdder sum = new DoubleAdder();
+
+        Child() {
+            this.buckets = new LongAdder[bounds.length + 1];
+            for (int i = 0; i < this.buckets.length; i++) {
+                this.buckets[i] = new LongAdder();
+            }
+        }
+
+        void observe(double value) {
+            int bucket = 0;
+            while (bucket < bounds.length && value > bounds[bucket]) {
+                bucket++;
+            }
+            this.buckets[bucket].increment();
+            this.sum.add(value);
+        }
+    }
+
+    private final double[] bounds; //ascending bucket upper bounds
+    private final ConcurrentHashMap<String, Child> children = new ConcurrentHashMap<String, Child>();
+
+    Histogram(String name, String help, String labelName, double[] bounds) {
+        super(name, help, labelName);
+        this.bounds = bounds;
+    }
+
+    private Child child(String label) {
+        String key = key(label);
+        Child child = this.children.get(key);
+        if (child == null) {
+            Child created = new Child();
+            child = this.children.putIfAbsent(key, created);
+            if (child == null) {
+                child = created;
+            }
+        }
+        return child;
+    }
+
+    /**
+     * @param value value to observe
+     */
+    public void observe(double value) {
+        child(NO_LABEL).observe(value);
+    }
+
+    /**
+     * @param label label value of child
+     * @param value value to observe
+     */
+    public void observe(String label, double value) {
+        child(label).observe(value);
+    }
+
+    /**
+     * @param nanos duration in nanoseconds, observed in seconds
+     */
+    public void observeNanos(long nanos) {
+        observeNanos(NO_LABEL, nanos);
+    }
+
+    /**
+     * @param label label value of child
+     * @param nanos duration in nanoseconds, observed in seconds
+     */
+    public void observeNanos(String label, long nanos) {
+        child(label).observe(nanos / (double) TimeUnit.SECONDS.toNanos(1));
+    }
+
+    /**
+     * @param label label value of child to stop reporting
+     */
+    public void remove(String label) {
+        this.children.remove(key(label));
+    }
+
+    @Override
+    String getType() {
+        return "histogram";
+    }
+
+    @Override
+    void writeSamples(StringBuilder output) {
+        for (Map.Entry<String, Child> entry : this.children.entrySet()) {
+            Child child = entry.getValue();
+            long cumulative = 0;
+            for (int i = 0; i < child.buckets.length; i++) {
+                cumulative += child.buckets[i].sum();
+                String bound = i < this.bounds.length ? format(this.bounds[i]) : "+Inf";
+                writeSample(output, "_bucket", entry.getKey(), "le=\"" + bound + "\"", Long.toString(cumulative));
+            }
+            writeSample(output, "_sum", entry.getKey(), null, format(child.sum.sum()));
+            writeSample(output, "_count", entry.getKey(), null, Long.toString(cumulative));
+        }
+    }
+}
@@ -0,0 +1,114 @@
+package portwatch.core.metrics;
+
+/**
+ * A named metric, optionally split into children by the value of a single label.
+ */
+public abstract class Metric {
+
+    static final String NO_LABEL = ""; //child key of unlabeled metrics
+
+    private String name;
+    private String help;
+    private String labelName; //null if unlabeled
+
+    /**
+     * @param name metric name
+     * @param help metric description
+     * @param labelName name of label distinguishing children, null if unlabeled
+     */
+    Metric(String name, String help, String labelName) {
+        this.name = name;
+        this.help = help;
+        this.labelName = labelName;
+    }
+
+    /**
+     * @return Prometheus metric type
+     */
+    abstract String getType();
+
+    /**
+     * Append this metric's samples in Prometheus text format
+     * @param output output to append to
+     */
+    abstract void writeSamples(StringBuilder output);
+
+    /**
+     * Append this metric in Prometheus text format, including HELP and TYPE lines
+     * @param output output to append to
+     */
+    void write(StringBuilder output) {
+        output.append("# HELP ").append(this.name).append(' ').append(this.help).append('\n');
+        output.append("# TYPE ").append(this.name).append(' ').append(getType()).append('\n');
+        writeSamples(output);
+    }
+
+    /**
+     * Append a single sample line
+     * @param output output to append to
+     * @param suffix metric name suffix, e.g. "_count"
+     * @param label value of the metric's label, ignored if unlabeled
+     * @param extraLabel additional label name and value, e.g. le="0.5", null if none
+     * @param value sample value
+     */
+    void writeSample(StringBuilder output, String suffix, String label, String extraLabel, String value) {
+        output.append(this.name).append(suffix);
+        boolean labeled = this.labelName != null;
+        if (labeled || extraLabel != null) {
+            output.append('{');
+            if (labeled) {
+                output.append(this.labelName).append("=\"");
+                escape(output, label);
+                output.append('"');
+            }
+            if (extraLabel != null) {
+                if (labeled) {
+                    output.append(',');
+                }
+                output.append(extraLabel);
+            }
+            output.append('}');
+        }
+        output.append(' ').append(value).append('\n');
+    }
+
+    private static void escape(StringBuilder output, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                output.append('\\').append(c);
+            } else if (c == '\n') {
+                output.append("\\n");
+            } else {
+                output.append(c);
+            }
+        }
+    }
+
+    /**
+     * @param value sample value
+     * @return value in Prometheus text format
+     */
+    static String format(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        } else if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return Long.toString((long) value);
+        }
+        return Double.toString(value);
+    }
+
+    /**
+     * @param label label value given by caller
+     * @return child key for label
+     */
+    String key(String label) {
+        return this.labelName != null ? label : NO_LABEL;
+    }
+
+    public String getName() {
+        return this.name;
+    }
+}
@@ -0,0 +1,73 @@
+package portwatch.core.metrics;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Process-wide metrics registry. Metrics are registered once, typically as static fields of the class they measure,
+ * and are exported in Prometheus text format.
+ */
+public class Metrics {
+
+    private static final LinkedHashMap<String, Metric> metrics = new LinkedHashMap<String, Metric>();
+
+    /**
+     * Register a metric, or return the already registered metric of the same name
+     * @param metric metric to register
+     * @return registered metric
+     */
+    private static synchronized Metric register(Metric metric) {
+        Metric registered = metrics.get(metric.getName());
+        if (registered == null) {
+            metrics.put(metric.getName(), metric);
+            registered = metric;
+        }
+        return registered;
+    }
+
+    /**
+     * @param name metric name
+     * @param help metric description
+     * @param labelName name of label distinguishing children, null if unlabeled
+     * @return registered counter
+     */
+    public static Counter counter(String name, String help, String labelName) {
+        return (Counter) register(new Counter(name, help, labelName));
+    }
+
+    /**
+     * @param name metric name
+     * @param help metric description
+     * @param labelName name of label distinguishing children, null if unlabeled
+     * @return registered gauge
+     */
+    public static Gauge gauge(String name, String help, String labelName) {
+        return (Gauge) register(new Gauge(name, help, labelName));
+    }
+
+    /**
+     * @param name metric name
+     * @param help metric description
+     * @param labelName name of label distinguishing children, null if unlabeled
+     * @param bounds ascending bucket upper bounds
+     * @return registered histogram
+     */
+    public static Histogram histogram(String name, String help, String labelName, double[] bounds) {
+        return (Histogram) register(new Histogram(name, help, labelName, bounds));
+    }
+
+    /**
+     * @return all registered metrics in Prometheus text format
+     */
+    public static String scrape() {
+        ArrayList<Metric> registered;
+        synchronized (Metrics.class) {
+            registered = new ArrayList<Metric>(metrics.values());
+        }
+        StringBuilder output = new StringBuilder(4096);
+        for (Metric metric : registered) {
+            metric.write(output);
+        }
+        return output.toString();
+    }
+}
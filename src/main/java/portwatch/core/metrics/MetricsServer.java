@@ -0,0 +1,72 @@
+package portwatch.core.metrics;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import portwatch.core.logging.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * Embedded HTTP server exposing the metrics registry at /metrics.
+ */
+public class MetricsServer implements HttpHandler {
+
+    private InetSocketAddress address;
+    private HttpServer server;
+
+    /**
+     * @param address address to listen on
+     */
+    public MetricsServer(InetSocketAddress address) {
+        this.address = address;
+    }
+
+    /**
+     * Start serving metrics on a single daemon thread
+     * @throws IOException if the address can't be bound
+     */
+    public void start() throws IOException {
+        this.server = HttpServer.create(this.address, 0);
+        this.server.createContext("/metrics", this);
+        this.server.setExecutor(Executors.newSingleThreadExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "metrics-server");
+                thread.setDaemon(true);
+                return thread;
+            }
+        }));
+        this.server.start();
+        Logger.logDebug("Serving metrics at http://" + this.address.getHostString() + ":" + this.address.getPort() + "/metrics");
+    }
+
+    public void stop() {
+        if (this.server != null) {
+            this.server.stop(0);
+        }
+    }
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                exchange.sendResponseHeaders(405, -1);
+                return;
+            }
+            byte[] body = Metrics.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream output = exchange.getResponseBody()) {
+                output.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,57 @@
+package portwatch.core.util;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket rate limiter. Tokens refill continuously up to a burst capacity;
+ * each permit taken consumes one token.
+ */
+public class TokenBucket {
+
+    private final double capacity; //maximum tokens, i.e. burst size
+    private final double refillPerNano;
+
+    private double tokens;
+    private long lastRefill; //System.nanoTime of last refill
+
+    /**
+     * @param ratePerSecond tokens added per second
+     * @param capacity maximum tokens held, bucket starts full
+     */
+    public TokenBucket(double ratePerSecond, double capacity) {
+        this.capacity = capacity;
+        this.refillPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Take a token, waiting until one is available
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public void acquire() throws InterruptedException {
+        long waitNanos;
+        while ((waitNanos = tryAcquire()) > 0) {
+            TimeUnit.NANOSECONDS.sleep(waitNanos);
+        }
+    }
+
+    /**
+     * Take a token if one is available
+     * @return 0 if a token was taken, otherwise nanoseconds until one will be available
+     */
+    public synchronized long tryAcquire() {
+        refill();
+        if (this.tokens >= 1) {
+            this.tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - this.tokens) / this.refillPerNano);
+    }
+
+    private void refill() {
+        long now = System.nanoTime();
+        this.tokens = Math.min(this.capacity, this.tokens + (now - this.lastRefill) * this.refillPerNano);
+        this.lastRefill = now;
+    }
+}
@@ -1,19 +1,32 @@
 package portwatch.core.watch;
 
-import org.nmap4j.data.NMapRun;
-import org.nmap4j.data.host.ports.Port;
-
+import portwatch.core.config.AppConfig;
+import portwatch.core.config.HostProfileDiff;
 import portwatch.core.config.ScanConfig;
 import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.config.profile.port.PortSet;
 import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Counter;
+import portwatch.core.metrics.Gauge;
+import portwatch.core.metrics.Metrics;
+import portwatch.core.watch.history.HostHistory;
+import portwatch.core.watch.history.ScanHistory;
+import portwatch.core.watch.history.StateStore;
+import portwatch.core.watch.model.HostSnapshot;
 import portwatch.core.watch.model.HostUpdate;
+import portwatch.core.watch.model.PortSnapshot;
 import portwatch.core.watch.model.PortStatus;
 import portwatch.core.watch.model.PortUpdate;
+import portwatch.core.watch.model.ServiceTable;
 import portwatch.core.watch.threading.ScanThread;
 import portwatch.core.watch.threading.ScanThreadManager;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Observable;
 import java.util.Observer;
 
@@ -22,26 +35,45 @@ import java.util.Observer;
  */
 public class PortWatcher extends Observable implements Observer, Runnable {
 
+    private static final Counter updatesSent = Metrics.counter("portwatch_updates_total",
+            "Host updates emitted, by update type", "type");
+
     private ScanConfig config;
 
-    private HashMap<String, ArrayList<NMapRun>> scanHistory;
+    private ScanHistory scanHistory;
+    private StateStore stateStore; //null if state isn't persisted
+    private HashSet<String> failingHosts = new HashSet<String>(); //hosts whose last scan failed, reported once per failure streak
 
     private ScanThreadManager threadManager;
     private Thread threadManagerThread;
 
     /**
      * @param config scanning configuration
+     * @throws IOException if the scan engine can't be started
      */
-    public PortWatcher(ScanConfig config) {
+    public PortWatcher(ScanConfig config) throws IOException {
         this.config = config;
 
-        this.scanHistory = new HashMap<String, ArrayList<NMapRun>>();
-        for (HostProfile hostProfile : config.getHostProfiles()) {
-            this.scanHistory.put(hostProfile.getHost(), new ArrayList<NMapRun>());
+        this.scanHistory = new ScanHistory(config.getHistoryDepth()); //hosts are tracked from their first result
+        if (config.getStateFile() != null) {
+            loadState(new File(config.getStateFile()));
         }
 
-        this.threadManager = new ScanThreadManager(this.config);
+        this.threadManager = new ScanThreadManager(this.config, this.scanHistory);
         this.threadManager.addObserver(this);
+
+        Metrics.gauge("portwatch_history_bytes", "Estimated memory used by scan history", null).source(new Gauge.Source() {
+            @Override
+            public double get() {
+                return scanHistory.estimateMemoryUsage();
+            }
+        });
+        Metrics.gauge("portwatch_history_hosts", "Hosts tracked by scan history", null).source(new Gauge.Source() {
+            @Override
+            public double get() {
+                return scanHistory.getHostCount();
+            }
+        });
     }
 
     /**
@@ -60,84 +92,121 @@ public class PortWatcher extends Observable implements Observer, Runnable {
         Logger.logDebug("Stoppiong port watching");
         threadManager.stop();
         threadManagerThread.interrupt();
+        if (this.stateStore != null) {
+            this.stateStore.close();
+        }
     }
 
     /**
-     * Convert Port objects to PortStatus object data structure
-     * @param ports Port objects to convert
-     * @return map of port numbers to PortStatus objects
+     * Load persisted state, seeding each configured host's history with its last known snapshot
+     * so the first scan is compared against it rather than reported as initial
+     * @param stateFile state file to load
      */
-    private HashMap<Integer, PortStatus> convertPorts(ArrayList<Port> ports) {
-        HashMap<Integer, PortStatus> newPorts = new HashMap<Integer, PortStatus>();
-        for (Port port : ports) {
-            PortStatus portStatus = new PortStatus(port);
-            newPorts.put((int) port.getPortId(), portStatus);
+    private void loadState(File stateFile) {
+        long start = System.nanoTime();
+        this.stateStore = new StateStore(stateFile);
+        try {
+            HashMap<String, HostSnapshot> snapshots = this.stateStore.load();
+            int restored = 0;
+            for (Map.Entry<String, HostSnapshot> entry : snapshots.entrySet()) {
+                if (this.config.getHostProfiles().contains(entry.getKey())) {
+                    this.scanHistory.record(entry.getKey(), entry.getValue());
+                    restored++;
+                } else {
+                    this.stateStore.remove(entry.getKey()); //no longer configured
+                }
+            }
+            Logger.logDebug(String.format("Restored state of %d hosts in %d ms", restored, (System.nanoTime() - start) / 1000000));
+        } catch (IOException e) {
+            Logger.logError("Could not open state file: " + e.getMessage(), getClass());
+            this.stateStore = null;
         }
-        return newPorts;
     }
 
     /**
-     * Create update with host profile's initial statuses
-     * @param hostProfile host profile to create update for
-     * @param initialStatuses initial scan result
+     * Persist a host's latest snapshot if state is persisted
+     * @param host host the snapshot was taken of
+     * @param snapshot snapshot to persist
      */
-    private void createInitialStatus(HostProfile hostProfile, HashMap<Integer, PortStatus> initialStatuses) {
-        ArrayList<PortUpdate> updates = new ArrayList<PortUpdate>();
-
-        for (int port : initialStatuses.keySet()) {
-            updates.add(new PortUpdate(port, null, initialStatuses.get(port)));
+    private void saveState(String host, HostSnapshot snapshot) {
+        if (this.stateStore == null) {
+            return;
         }
+        try {
+            this.stateStore.save(host, snapshot);
+        } catch (IOException e) {
+            Logger.logError("Could not save state: " + e.getMessage(), getClass());
+        }
+    }
+
+    /**
+     * Collect port updates for ports that differ between two snapshots
+     * @param oldPorts old port states
+     * @param newPorts new port states
+     * @param initial true if updates are initial reports, which have no old status
+     * @return port updates, one per changed port
+     */
+    static ArrayList<PortUpdate> collectUpdates(PortSnapshot oldPorts, PortSnapshot newPorts, boolean initial) {
+        return collectUpdates(oldPorts, newPorts, null, initial);
+    }
 
+    /**
+     * Collect port updates for ports within mask that differ between two snapshots
+     * @param oldPorts old port states
+     * @param newPorts new port states
+     * @param mask ports to report, null for all
+     * @param initial true if updates are initial reports, which have no old status
+     * @return port updates, one per changed port
+     */
+    static ArrayList<PortUpdate> collectUpdates(PortSnapshot oldPorts, PortSnapshot newPorts, PortSet mask, final boolean initial) {
+        final ArrayList<PortUpdate> updates = new ArrayList<PortUpdate>();
+        PortSnapshot.diff(oldPorts, newPorts, mask, new PortSnapshot.ChangeVisitor() {
+            @Override
+            public void portChanged(int port, int oldState, int oldService, int newState, int newService) {
+                PortStatus oldStatus = initial ? null : new PortStatus(PortSnapshot.stateName(oldState), ServiceTable.nameOf(oldService));
+                PortStatus newStatus = new PortStatus(PortSnapshot.stateName(newState), ServiceTable.nameOf(newService));
+                updates.add(new PortUpdate(port, oldStatus, newStatus));
+            }
+        });
+        return updates;
+    }
+
+    /**
+     * Create update with host profile's initial statuses
+     * @param hostProfile host profile to create update for
+     * @param initialPorts initial scan result
+     */
+    private void createInitialStatus(HostProfile hostProfile, PortSnapshot initialPorts) {
+        ArrayList<PortUpdate> updates = collectUpdates(PortSnapshot.EMPTY, initialPorts, hostProfile.getPortProfile().getPortSet(), true);
         sendUpdate(new HostUpdate(HostUpdate.UpdateType.INITIAL, hostProfile.getHost(), updates));
     }
 
     /**
      * Create update with host profile's initial status for this uptime period
      * @param hostProfile host profile to create update for
-     * @param initialStatuses initial uptime scan result
+     * @param initialPorts initial uptime scan result
      */
-    private void createUpStatus(HostProfile hostProfile, HashMap<Integer, PortStatus> initialStatuses) {
-        ArrayList<PortUpdate> updates = new ArrayList<PortUpdate>();
-
-        for (int port : initialStatuses.keySet()) {
-            updates.add(new PortUpdate(port, null, initialStatuses.get(port)));
-        }
-
+    private void createUpStatus(HostProfile hostProfile, PortSnapshot initialPorts) {
+        ArrayList<PortUpdate> updates = collectUpdates(PortSnapshot.EMPTY, initialPorts, hostProfile.getPortProfile().getPortSet(), true);
         sendUpdate(new HostUpdate(HostUpdate.UpdateType.UP, hostProfile.getHost(), updates));
     }
 
     /**
      * Compare scan results, determine if any port statuses have changed
      * @param hostProfile host profile being checked
-     * @param oldStatuses old scan result for host profile
-     * @param newStatuses new scan result for host profile
+     * @param oldPorts old scan result for host profile
+     * @param newPorts new scan result for host profile
+     * @return true if any port status changed
      */
-    private void compareStatuses(HostProfile hostProfile, HashMap<Integer, PortStatus> oldStatuses, HashMap<Integer, PortStatus> newStatuses) {
-        ArrayList<PortUpdate> updates = new ArrayList<PortUpdate>();
-
-        //check port statuses returned by old scan
-        for (int port : oldStatuses.keySet()) {
-            if (newStatuses.containsKey(port)) {
-                if (!oldStatuses.get(port).equals(newStatuses.get(port))) {
-                    updates.add(new PortUpdate(port, oldStatuses.get(port), newStatuses.get(port)));
-                }
-            } else {
-                //port closed
-                updates.add(new PortUpdate(port, oldStatuses.get(port), new PortStatus("closed", null)));
-            }
-        }
-        //check port statuses returned by new scan
-        for (int port : newStatuses.keySet()) {
-            if (!oldStatuses.keySet().contains(port)) {
-                //port opened
-                updates.add(new PortUpdate(port, new PortStatus("closed", null), newStatuses.get(port)));
-            }
-        }
+    private boolean compareStatuses(HostProfile hostProfile, PortSnapshot oldPorts, PortSnapshot newPorts) {
+        ArrayList<PortUpdate> updates = collectUpdates(oldPorts, newPorts, hostProfile.getPortProfile().getPortSet(), false);
 
         if (updates.size() > 0) {
             HostUpdate hostUpdate = new HostUpdate(HostUpdate.UpdateType.UPDATE, hostProfile.getHost(), updates);
             sendUpdate(hostUpdate);
+            return true;
         }
+        return false;
     }
 
     /**
@@ -145,45 +214,110 @@ public class PortWatcher extends Observable implements Observer, Runnable {
      * @param update update to notify with
      */
     public void sendUpdate(HostUpdate update) {
+        updatesSent.inc(update.getType().toString().toLowerCase());
         this.setChanged();
         this.notifyObservers(update);
     }
 
+    /**
+     * Record a host profile's scan result, detect and send updates
+     * @param hostProfile host profile that was scanned
+     * @param snapshot scan result for host profile
+     * @return true if the host changed since its previous scan
+     */
+    private boolean handleResult(HostProfile hostProfile, HostSnapshot snapshot) {
+        //add compact result to host profile's bounded scan history
+        HostHistory history = this.scanHistory.record(hostProfile.getHost(), snapshot);
+        HostSnapshot latest = history.getLatest();
+        HostSnapshot previous = history.getPrevious();
+
+        boolean changed = false;
+        if (previous != null) { //another result for this host profile exists to compare this one to
+            if (!latest.isUp()) {
+                if (previous.isUp()) {
+                    //only create host down update if one hasn't been issued already for this downtime period
+                    sendUpdate(new HostUpdate(HostUpdate.UpdateType.DOWN, hostProfile.getHost()));
+                    changed = true;
+                }
+            } else {
+                if (!previous.isUp()) {
+                    //host previously down, results are initial status for this uptime period
+                    createUpStatus(hostProfile, latest.getPorts());
+                    changed = true;
+                } else {
+                    changed = compareStatuses(hostProfile, previous.getPorts(), latest.getPorts());
+                }
+            }
+        } else { //first result for this host profile
+            if (!latest.isUp()) {
+                sendUpdate(new HostUpdate(HostUpdate.UpdateType.DOWN, hostProfile.getHost()));
+            } else {
+                createInitialStatus(hostProfile, latest.getPorts());
+            }
+        }
+
+        //only persist when the known state differs from what is already stored
+        if (previous == null || changed) {
+            saveState(hostProfile.getHost(), latest);
+        }
+        return changed;
+    }
+
     @Override
-    public void update(Observable observed, Object object) {
+    public synchronized void update(Observable observed, Object object) {
         if (object instanceof ScanThread) {
             //thread finished scan
             ScanThread thread = (ScanThread) object;
-
-            //add result to host profile's scan history
-            this.scanHistory.get(thread.getHostProfile().getHost()).add(thread.getResult());
-
-            boolean hostDown = thread.getResult().getHosts().size() == 0;
-
-            ArrayList<NMapRun> hostRuns = this.scanHistory.get(thread.getHostProfile().getHost());
-            if (hostRuns.size() > 1) { //another result for this host profile exists to compare this one to
-                if (hostDown) {
-                    if (hostRuns.get(hostRuns.size() - 2).getHosts().size() > 0) {
-                        //only create host down update if one hasn't been issued already for this downtime period
-                        sendUpdate(new HostUpdate(HostUpdate.UpdateType.DOWN, thread.getHostProfile().getHost()));
-                    }
-                } else {
-                    if (hostRuns.get(hostRuns.size() - 2).getHosts().size() == 0) {
-                        //host previously down, results are initial status for this uptime period
-                        createUpStatus(thread.getHostProfile(), convertPorts(hostRuns.get(hostRuns.size() - 1).getHosts().get(0).getPorts().getPorts()));
-                    } else {
-                        HashMap<Integer, PortStatus> oldStatuses = convertPorts(hostRuns.get(hostRuns.size() - 2).getHosts().get(0).getPorts().getPorts());
-                        HashMap<Integer, PortStatus> newStatuses = convertPorts(hostRuns.get(hostRuns.size() - 1).getHosts().get(0).getPorts().getPorts());
-                        compareStatuses(thread.getHostProfile(), oldStatuses, newStatuses);
-                    }
+            for (HostProfile hostProfile : thread.getHostProfiles()) {
+                if (!this.config.getHostProfiles().contains(hostProfile.getHost())) {
+                    continue; //host removed by a config reload while it was being scanned
                 }
-            } else { //first result for this host profile
-                if (hostDown) {
-                    sendUpdate(new HostUpdate(HostUpdate.UpdateType.DOWN, thread.getHostProfile().getHost()));
-                } else {
-                    createInitialStatus(thread.getHostProfile(), convertPorts(hostRuns.get(hostRuns.size() - 1).getHosts().get(0).getPorts().getPorts()));
+                if (thread.isFailed()) {
+                    //history is left as it was, the next completed scan is compared to the last known state
+                    if (this.failingHosts.add(hostProfile.getHost())) {
+                        sendUpdate(new HostUpdate(HostUpdate.UpdateType.FAILED, hostProfile.getHost(), thread.getError()));
+                    }
+                    continue;
                 }
+                this.failingHosts.remove(hostProfile.getHost());
+                boolean changed = handleResult(hostProfile, thread.getResult(hostProfile));
+                this.threadManager.recordOutcome(hostProfile, changed);
             }
+        } else if (object instanceof AppConfig) {
+            //config file reloaded
+            applyConfig(((AppConfig) object).getScanConfig());
         }
     }
+
+    /**
+     * Apply a reloaded config's host profiles. Added hosts are scanned, removed hosts dropped along
+     * with their history and persisted state; unchanged and modified hosts keep their history and schedule.
+     * Other scan settings only take effect on restart.
+     * @param reloaded reloaded scanning configuration
+     */
+    private void applyConfig(ScanConfig reloaded) {
+        if (reloaded.getScanType() != this.config.getScanType() || reloaded.getEngine() != this.config.getEngine()
+                || reloaded.getScheduling() != this.config.getScheduling() || reloaded.getMaxThreads() != this.config.getMaxThreads()) {
+            Logger.logError("Scan type, engine, scheduling and maxThreads changes require a restart", getClass());
+        }
+
+        HostProfileDiff diff = new HostProfileDiff(this.config.getHostProfiles(), reloaded.getHostProfiles());
+        Logger.logNormal("Config reloaded: " + diff);
+        if (diff.isEmpty()) {
+            return;
+        }
+        for (HostProfile hostProfile : diff.getRemoved()) {
+            this.scanHistory.removeHost(hostProfile.getHost());
+            this.failingHosts.remove(hostProfile.getHost());
+            if (this.stateStore != null) {
+                this.stateStore.remove(hostProfile.getHost());
+            }
+        }
+        this.config.setHostProfiles(reloaded.getHostProfiles());
+        this.threadManager.applyHostChanges(diff);
+    }
+
+    public ScanHistory getScanHistory() {
+        return this.scanHistory;
+    }
 }
\ No newline at end of file
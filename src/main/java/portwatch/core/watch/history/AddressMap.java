@@ -0,0 +1,156 @@
+package portwatch.core.watch.history;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * Open addressing hash map from packed IPv4 addresses to values.
+ * Keys are stored as primitive ints in a flat array, avoiding a String and map entry per host.
+ * Not thread-safe.
+ * @param <V> value type
+ */
+class AddressMap<V> implements Iterable<V> {
+
+    private static final int INITIAL_CAPACITY = 16; //power of two
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private int[] keys;
+    private Object[] values; //null marks an empty slot
+    private int size = 0;
+
+    AddressMap() {
+        this.keys = new int[INITIAL_CAPACITY];
+        this.values = new Object[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param address packed address
+     * @return value of address, null if absent
+     */
+    @SuppressWarnings("unchecked")
+    V get(int address) {
+        int mask = this.keys.length - 1;
+        for (int slot = hash(address) & mask; this.values[slot] != null; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == address) {
+                return (V) this.values[slot];
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @param address packed address
+     * @param value value to map address to, not null
+     */
+    void put(int address, V value) {
+        int mask = this.keys.length - 1;
+        int slot = hash(address) & mask;
+        while (this.values[slot] != null) {
+            if (this.keys[slot] == address) {
+                this.values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = address;
+        this.values[slot] = value;
+        if (++this.size > this.keys.length * LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    /**
+     * @param address packed address to remove
+     */
+    void remove(int address) {
+        int mask = this.keys.length - 1;
+        int slot = hash(address) & mask;
+        while (this.values[slot] != null && this.keys[slot] != address) {
+            slot = (slot + 1) & mask;
+        }
+        if (this.values[slot] == null) {
+            return;
+        }
+        this.values[slot] = null;
+        this.size--;
+
+        //shift following entries of the probe run back so lookups don't stop at the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; this.values[next] != null; next = (next + 1) & mask) {
+            int home = hash(this.keys[next]) & mask;
+            //entry can fill the gap if its home slot isn't cyclically between the gap and itself
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                this.values[next] = null;
+                gap = next;
+            }
+        }
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    /**
+     * @return estimated heap size of the map itself, excluding values
+     */
+    long estimateSize() {
+        return 16 + 4 + 2 * 16 + this.keys.length * (4L + 4L);
+    }
+
+    @SuppressWarnings("unchecked")
+    private void resize() {
+        int[] oldKeys = this.keys;
+        Object[] oldValues = this.values;
+        this.keys = new int[oldKeys.length * 2];
+        this.values = new Object[oldValues.length * 2];
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldValues[i] != null) {
+                put(oldKeys[i], (V) oldValues[i]);
+            }
+        }
+    }
+
+    private static int hash(int address) {
+        //addresses of a range differ in their low bits, spread them over the whole table
+        int h = address * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            private int slot = advance(0);
+
+            private int advance(int from) {
+                while (from < values.length && values[from] == null) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return this.slot < values.length;
+            }
+
+            @Override
+            @SuppressWarnings("unchecked")
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                V value = (V) values[this.slot];
+                this.slot = advance(this.slot + 1);
+                return value;
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
@@ -0,0 +1,69 @@
+package portwatch.core.watch.history;
+
+import portwatch.core.watch.model.HostSnapshot;
+
+/**
+ * Fixed-capacity ring buffer of a single host's most recent snapshots.
+ */
+public class HostHistory {
+
+    private HostSnapshot[] snapshots;
+    private int head = 0; //index the next snapshot will be written to
+    private int size = 0; //number of snapshots currently held
+
+    /**
+     * @param depth maximum number of snapshots to retain
+     */
+    public HostHistory(int depth) {
+        this.snapshots = new HostSnapshot[depth];
+    }
+
+    /**
+     * Add snapshot, evicting the oldest one if the buffer is full
+     * @param snapshot snapshot to add
+     */
+    public void add(HostSnapshot snapshot) {
+        this.snapshots[this.head] = snapshot;
+        this.head = (this.head + 1) % this.snapshots.length;
+        if (this.size < this.snapshots.length) {
+            this.size++;
+        }
+    }
+
+    /**
+     * Retrieve a snapshot by age
+     * @param age 0 for the latest snapshot, 1 for the one before it, etc.
+     * @return snapshot, null if no snapshot of that age is retained
+     */
+    public HostSnapshot get(int age) {
+        if (age < 0 || age >= this.size) {
+            return null;
+        }
+        int index = (this.head - 1 - age + this.snapshots.length) % this.snapshots.length;
+        return this.snapshots[index];
+    }
+
+    public HostSnapshot getLatest() {
+        return get(0);
+    }
+
+    public HostSnapshot getPrevious() {
+        return get(1);
+    }
+
+    public int size() {
+        return this.size;
+    }
+
+    /**
+     * Estimate retained heap size of this history, including retained snapshots
+     * @return estimated size in bytes
+     */
+    public long estimateSize() {
+        long total = 16 + 4 + 4 + 4 + 16 + (long) this.snapshots.length * 4; //object, ring array
+        for (int i = 0; i < this.size; i++) {
+            total += get(i).estimateSize();
+        }
+        return total;
+    }
+}
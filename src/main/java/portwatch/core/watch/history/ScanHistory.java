@@ -0,0 +1,138 @@
+package portwatch.core.watch.history;
+
+import portwatch.core.config.profile.host.Ipv4;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.util.HashMap;
+
+/**
+ * Bounded per-host scan history. Retains a fixed number of compact snapshots for each host.
+ * Histories of IPv4 addresses are keyed by packed address, other hosts by name.
+ */
+public class ScanHistory {
+
+    public static final int DEFAULT_DEPTH = 2;
+    public static final int MIN_DEPTH = 2; //latest and previous are needed for comparison
+
+    private int depth;
+    private HashMap<String, HostHistory> histories; //named hosts
+    private AddressMap<HostHistory> addressHistories; //IPv4 address hosts
+
+    /**
+     * @param depth number of snapshots to retain per host
+     */
+    public ScanHistory(int depth) {
+        this.depth = Math.max(depth, MIN_DEPTH);
+        this.histories = new HashMap<String, HostHistory>();
+        this.addressHistories = new AddressMap<HostHistory>();
+    }
+
+    /**
+     * Start tracking history for a host
+     * @param host host to track
+     */
+    public synchronized void addHost(String host) {
+        if (lookup(host) == null) {
+            store(host, new HostHistory(this.depth));
+        }
+    }
+
+    /**
+     * Stop tracking history for a host, discarding its snapshots
+     * @param host host to stop tracking
+     */
+    public synchronized void removeHost(String host) {
+        long address = Ipv4.parse(host);
+        if (address >= 0) {
+            this.addressHistories.remove((int) address);
+        } else {
+            this.histories.remove(host);
+        }
+    }
+
+    /**
+     * Record a new snapshot for a host
+     * @param host host the snapshot was taken of
+     * @param snapshot snapshot to record
+     * @return the host's history after recording
+     */
+    public synchronized HostHistory record(String host, HostSnapshot snapshot) {
+        HostHistory history = lookup(host);
+        if (history == null) {
+            history = new HostHistory(this.depth);
+            store(host, history);
+        }
+        history.add(snapshot);
+        return history;
+    }
+
+    /**
+     * @param host host to retrieve history for
+     * @return host's history, null if host isn't tracked
+     */
+    public synchronized HostHistory get(String host) {
+        return lookup(host);
+    }
+
+    /**
+     * @param host host to retrieve snapshot for
+     * @return host's most recent up snapshot still retained, null if there is none
+     */
+    public synchronized HostSnapshot getLatestUp(String host) {
+        HostHistory history = lookup(host);
+        if (history != null) {
+            for (int age = 0; age < history.size(); age++) {
+                if (history.get(age).isUp()) {
+                    return history.get(age);
+                }
+            }
+        }
+        return null;
+    }
+
+    public int getDepth() {
+        return this.depth;
+    }
+
+    public synchronized int getHostCount() {
+        return this.histories.size() + this.addressHistories.size();
+    }
+
+    /**
+     * Estimate retained heap size of the whole history
+     * @return estimated size in bytes
+     */
+    public synchronized long estimateMemoryUsage() {
+        long total = 16 + 4 + 48 + (long) this.histories.size() * 48; //object, map, map entries
+        total += this.addressHistories.estimateSize();
+        for (HostHistory history : this.histories.values()) {
+            total += history.estimateSize();
+        }
+        for (HostHistory history : this.addressHistories) {
+            total += history.estimateSize();
+        }
+        return total;
+    }
+
+    /**
+     * @param host host to look up
+     * @return host's history, null if host isn't tracked
+     */
+    private HostHistory lookup(String host) {
+        long address = Ipv4.parse(host);
+        return address >= 0 ? this.addressHistories.get((int) address) : this.histories.get(host);
+    }
+
+    /**
+     * @param host host to store history of
+     * @param history host's history
+     */
+    private void store(String host, HostHistory history) {
+        long address = Ipv4.parse(host);
+        if (address >= 0) {
+            this.addressHistories.put((int) address, history);
+        } else {
+            this.histories.put(host, history);
+        }
+    }
+}
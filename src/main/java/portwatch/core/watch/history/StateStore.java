@@ -0,0 +1,263 @@
+package portwatch.core.watch.history;
+
+import portwatch.core.logging.Logger;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent, memory-mapped store of the last known snapshot of each host, used for warm restarts.
+ *
+ * The file starts with a header (magic, format version) followed by append-only records, each holding
+ * payload length, payload CRC32 and payload (host name and serialized snapshot). A host's latest record wins.
+ * Records are validated on load; loading stops at the first corrupt or incomplete record.
+ * The file is compacted to the latest record per host once most of it is superseded records.
+ */
+public class StateStore {
+
+    private static final int MAGIC = 0x50575353; //"PWSS"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 16; //magic, version, reserved
+    private static final int RECORD_HEADER_SIZE = 8; //payload length, payload crc
+    private static final int MIN_MAPPED_SIZE = 1 << 20;
+    private static final int MIN_COMPACT_SIZE = 4 << 20; //don't bother compacting small files
+
+    private File file;
+    private FileChannel channel;
+    private MappedByteBuffer buffer;
+    private int position; //offset next record will be written at
+
+    private HashMap<String, Integer> latestRecords; //offset of latest record per host
+    private long liveBytes = 0; //bytes used by latest records
+
+    /**
+     * @param file state file, created if it doesn't exist
+     */
+    public StateStore(File file) {
+        this.file = file;
+        this.latestRecords = new HashMap<String, Integer>();
+    }
+
+    /**
+     * Open the state file and load the latest snapshot of every stored host.
+     * A file with an unknown format is moved aside and a new one started.
+     * @return latest snapshot per host
+     * @throws IOException if the state file can't be opened
+     */
+    public synchronized HashMap<String, HostSnapshot> load() throws IOException {
+        HashMap<String, HostSnapshot> snapshots = new HashMap<String, HostSnapshot>();
+        this.channel = FileChannel.open(this.file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        map(Math.max(MIN_MAPPED_SIZE, (int) this.channel.size()));
+
+        if (this.buffer.getInt(0) == 0 && this.buffer.getInt(4) == 0) {
+            writeHeader(); //new file
+            return snapshots;
+        }
+        if (this.buffer.getInt(0) != MAGIC || this.buffer.getInt(4) != VERSION) {
+            Logger.logError(String.format("Unrecognized state file format in %s, starting with empty state", this.file), getClass());
+            reset();
+            return snapshots;
+        }
+
+        this.position = HEADER_SIZE;
+        while (this.position + RECORD_HEADER_SIZE <= this.buffer.capacity()) {
+            int length = this.buffer.getInt(this.position);
+            if (length == 0) {
+                break; //end of records
+            }
+            try {
+                if (length < 0 || this.position + RECORD_HEADER_SIZE + length > this.buffer.capacity()) {
+                    throw new IllegalArgumentException("Invalid record length " + length);
+                }
+                ByteBuffer payload = payload(this.position, length);
+                CRC32 crc = new CRC32();
+                crc.update(payload.duplicate());
+                if ((int) crc.getValue() != this.buffer.getInt(this.position + 4)) {
+                    throw new IllegalArgumentException("Checksum mismatch");
+                }
+
+                String host = readHost(payload);
+                snapshots.put(host, HostSnapshot.readFrom(payload));
+                trackRecord(host, this.position, length);
+            } catch (IllegalArgumentException | BufferUnderflowException e) {
+                Logger.logError(String.format("Corrupt state record at offset %d (%s), discarding remaining records",
+                        this.position, e.getMessage()), getClass());
+                this.buffer.putInt(this.position, 0); //following saves overwrite the corrupt tail
+                break;
+            }
+            this.position += RECORD_HEADER_SIZE + length;
+        }
+        return snapshots;
+    }
+
+    /**
+     * Persist a host's latest snapshot
+     * @param host host the snapshot was taken of
+     * @param snapshot snapshot to persist
+     * @throws IOException if the state file can't be grown
+     */
+    public synchronized void save(String host, HostSnapshot snapshot) throws IOException {
+        byte[] hostBytes = host.getBytes(StandardCharsets.UTF_8);
+        int length = 2 + hostBytes.length + snapshot.serializedSize();
+
+        if (this.position + RECORD_HEADER_SIZE + length + 4 > this.buffer.capacity()) {
+            if (this.position > MIN_COMPACT_SIZE && this.liveBytes < this.position / 2) {
+                compact();
+            }
+            if (this.position + RECORD_HEADER_SIZE + length + 4 > this.buffer.capacity()) {
+                map(Math.max(this.buffer.capacity() * 2, this.position + RECORD_HEADER_SIZE + length + 4));
+            }
+        }
+
+        //write payload and checksum before length, so a partially written record is never seen as valid
+        ByteBuffer payload = payload(this.position, length);
+        payload.putShort((short) hostBytes.length);
+        payload.put(hostBytes);
+        snapshot.writeTo(payload);
+        payload.flip();
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        this.buffer.putInt(this.position + RECORD_HEADER_SIZE + length, 0); //terminator
+        this.buffer.putInt(this.position + 4, (int) crc.getValue());
+        this.buffer.putInt(this.position, length);
+
+        trackRecord(host, this.position, length);
+        this.position += RECORD_HEADER_SIZE + length;
+    }
+
+    /**
+     * Stop tracking a host's record, so it is dropped by the next compaction.
+     * The record stays in the file until then; hosts no longer configured are ignored on load.
+     * @param host host to forget
+     */
+    public synchronized void remove(String host) {
+        Integer offset = this.latestRecords.remove(host);
+        if (offset != null) {
+            this.liveBytes -= RECORD_HEADER_SIZE + this.buffer.getInt(offset);
+        }
+    }
+
+    /**
+     * Flush changes to disk and close the state file
+     */
+    public synchronized void close() {
+        try {
+            if (this.buffer != null) {
+                this.buffer.force();
+            }
+            if (this.channel != null) {
+                this.channel.close();
+            }
+        } catch (IOException e) {
+            Logger.logError(e.getMessage(), getClass());
+        }
+    }
+
+    /**
+     * Rewrite the file in place with only the latest record of each host, moving records towards the start
+     * in file order. The mapping is kept, as a mapped file can't be replaced on every platform.
+     * Records not yet moved when the process dies are lost, their hosts start without state.
+     */
+    private void compact() {
+        ArrayList<Map.Entry<String, Integer>> records = new ArrayList<Map.Entry<String, Integer>>(this.latestRecords.entrySet());
+        Collections.sort(records, new Comparator<Map.Entry<String, Integer>>() {
+            @Override
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return Integer.compare(a.getValue(), b.getValue());
+            }
+        });
+
+        HashMap<String, Integer> compactedRecords = new HashMap<String, Integer>();
+        byte[] record = new byte[0];
+        int target = HEADER_SIZE;
+        for (Map.Entry<String, Integer> entry : records) {
+            int offset = entry.getValue();
+            int recordSize = RECORD_HEADER_SIZE + this.buffer.getInt(offset);
+            if (offset != target) {
+                //copied through an array, overlapping buffer copies aren't guaranteed to be safe
+                if (record.length < recordSize) {
+                    record = new byte[recordSize];
+                }
+                ByteBuffer source = this.buffer.duplicate();
+                source.position(offset);
+                source.get(record, 0, recordSize);
+                ByteBuffer destination = this.buffer.duplicate();
+                destination.position(target);
+                destination.put(record, 0, recordSize);
+            }
+            compactedRecords.put(entry.getKey(), target);
+            target += recordSize;
+        }
+        this.buffer.putInt(target, 0);
+        this.buffer.force();
+
+        this.latestRecords = compactedRecords;
+        this.position = target;
+        Logger.logDebug(String.format("Compacted state file to %d hosts, %d bytes", compactedRecords.size(), this.position));
+    }
+
+    /**
+     * Copy an unreadable file aside and start a new one in its place
+     * @throws IOException if the file can't be copied
+     */
+    private void reset() throws IOException {
+        this.buffer.force();
+        Files.copy(this.file.toPath(), new File(this.file.getPath() + ".bad").toPath(), StandardCopyOption.REPLACE_EXISTING);
+        writeHeader();
+        this.latestRecords.clear();
+        this.liveBytes = 0;
+    }
+
+    private void writeHeader() {
+        this.buffer.putInt(0, MAGIC);
+        this.buffer.putInt(4, VERSION);
+        this.buffer.putLong(8, 0);
+        this.buffer.putInt(HEADER_SIZE, 0);
+        this.position = HEADER_SIZE;
+    }
+
+    /**
+     * Map the file, growing it if needed. Newly grown regions are zero-filled by the file system.
+     * @param size bytes to map
+     * @throws IOException
+     */
+    private void map(int size) throws IOException {
+        this.buffer = this.channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+    }
+
+    private void trackRecord(String host, int offset, int length) {
+        Integer previous = this.latestRecords.put(host, offset);
+        if (previous != null) {
+            this.liveBytes -= RECORD_HEADER_SIZE + this.buffer.getInt(previous);
+        }
+        this.liveBytes += RECORD_HEADER_SIZE + length;
+    }
+
+    private ByteBuffer payload(int offset, int length) {
+        ByteBuffer payload = this.buffer.duplicate();
+        payload.position(offset + RECORD_HEADER_SIZE).limit(offset + RECORD_HEADER_SIZE + length);
+        return payload.slice();
+    }
+
+    private String readHost(ByteBuffer payload) {
+        byte[] host = new byte[payload.getShort() & 0xFFFF];
+        payload.get(host);
+        return new String(host, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,84 @@
+package portwatch.core.watch.model;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Compact snapshot of a single host scan result.
+ * Holds only what is needed for update detection rather than the full nmap output.
+ */
+public class HostSnapshot {
+
+    private long timestamp; //time the snapshot was taken, epoch millis
+    private boolean up; //false if host was unreachable
+    private PortSnapshot ports; //port states, empty if host was unreachable
+
+    /**
+     * @param timestamp time the snapshot was taken, epoch millis
+     * @param up true if host was reachable
+     * @param ports port states
+     */
+    public HostSnapshot(long timestamp, boolean up, PortSnapshot ports) {
+        this.timestamp = timestamp;
+        this.up = up;
+        this.ports = ports;
+    }
+
+    /**
+     * Create snapshot for an unreachable host
+     * @param timestamp time the snapshot was taken, epoch millis
+     * @return snapshot with no ports
+     */
+    public static HostSnapshot down(long timestamp) {
+        return new HostSnapshot(timestamp, false, PortSnapshot.EMPTY);
+    }
+
+    /**
+     * Estimate retained heap size of this snapshot
+     * @return estimated size in bytes
+     */
+    public long estimateSize() {
+        long objectSize = 16 + 8 + 1 + 4; //header, timestamp, up flag, ports reference
+        return objectSize + (this.ports == PortSnapshot.EMPTY ? 0 : this.ports.estimateSize());
+    }
+
+    /**
+     * @return serialized size in bytes
+     */
+    public int serializedSize() {
+        return 8 + 1 + this.ports.serializedSize();
+    }
+
+    /**
+     * Write serialized form: timestamp, up flag, port snapshot
+     * @param buffer buffer to write to, must have serializedSize() bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        buffer.putLong(this.timestamp);
+        buffer.put((byte) (this.up ? 1 : 0));
+        this.ports.writeTo(buffer);
+    }
+
+    /**
+     * Read serialized form written by writeTo
+     * @param buffer buffer to read from
+     * @return deserialized snapshot
+     */
+    public static HostSnapshot readFrom(ByteBuffer buffer) {
+        long timestamp = buffer.getLong();
+        boolean up = buffer.get() != 0;
+        PortSnapshot ports = PortSnapshot.readFrom(buffer);
+        return new HostSnapshot(timestamp, up, ports.getPortCount() == 0 ? PortSnapshot.EMPTY : ports);
+    }
+
+    public long getTimestamp() {
+        return this.timestamp;
+    }
+
+    public boolean isUp() {
+        return this.up;
+    }
+
+    public PortSnapshot getPorts() {
+        return this.ports;
+    }
+}
@@ -3,17 +3,19 @@ package portwatch.core.watch.model;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.LinkedHashMap;
 
 /**
  * Host update, contains all new port updates that have occurred for the host.
  */
 public class HostUpdate {
 
-    public enum UpdateType { INITIAL, UPDATE, DOWN, UP }
+    public enum UpdateType { INITIAL, UPDATE, DOWN, UP, FAILED } //journaled by ordinal, only append
 
     private UpdateType type;
     private String host;
     private ArrayList<PortUpdate> portUpdates;
+    private String reason; //reason the host's scan failed, null unless FAILED
 
     /**
      * @param type update type
@@ -43,6 +45,55 @@ public class HostUpdate {
         this(type, host, new ArrayList<PortUpdate>());
     }
 
+    /**
+     * Initialize update with a reason and no port updates.
+     * Used for creating FAILED updates.
+     * @param type update type
+     * @param host host whose scan failed
+     * @param reason reason the scan failed
+     */
+    public HostUpdate(UpdateType type, String host, String reason) {
+        this(type, host);
+        this.reason = reason;
+    }
+
+    /**
+     * Combine two consecutive updates for the same host into one.
+     * A port update following an initial, up or port update is merged into it, keeping the earlier type.
+     * A failure carries no new state, so it only supersedes an earlier failure; any other update supersedes
+     * the earlier one.
+     * @param earlier earlier update
+     * @param later later update for the same host
+     * @return combined update
+     */
+    public static HostUpdate coalesce(HostUpdate earlier, HostUpdate later) {
+        if (later.type == UpdateType.FAILED && earlier.type != UpdateType.FAILED) {
+            return earlier; //keep the changes detected before the failed scan
+        }
+        if (later.type != UpdateType.UPDATE || earlier.type == UpdateType.DOWN || earlier.type == UpdateType.FAILED) {
+            return later;
+        }
+
+        LinkedHashMap<Integer, PortUpdate> merged = new LinkedHashMap<Integer, PortUpdate>();
+        for (PortUpdate portUpdate : earlier.portUpdates) {
+            merged.put(portUpdate.getPort(), portUpdate);
+        }
+        for (PortUpdate portUpdate : later.portUpdates) {
+            PortUpdate previous = merged.get(portUpdate.getPort());
+            //keep the earliest old status and the latest new status
+            PortStatus oldStatus = previous != null ? previous.getOldStatus() : portUpdate.getOldStatus();
+            PortStatus newStatus = portUpdate.getNewStatus();
+            if (earlier.type != UpdateType.UPDATE && newStatus.getState().equals("closed")) {
+                merged.remove(portUpdate.getPort()); //report only lists ports that aren't closed
+            } else if (oldStatus != null && oldStatus.equals(newStatus)) {
+                merged.remove(portUpdate.getPort()); //changed back
+            } else {
+                merged.put(portUpdate.getPort(), new PortUpdate(portUpdate.getPort(), oldStatus, newStatus));
+            }
+        }
+        return new HostUpdate(earlier.type, earlier.host, new ArrayList<PortUpdate>(merged.values()));
+    }
+
     public UpdateType getType() {
         return this.type;
     }
@@ -55,6 +106,13 @@ public class HostUpdate {
         return this.portUpdates;
     }
 
+    /**
+     * @return reason the host's scan failed, null unless the update is FAILED
+     */
+    public String getReason() {
+        return this.reason;
+    }
+
     @Override
     public String toString() {
         String result = "";
@@ -67,11 +125,17 @@ public class HostUpdate {
                 result = String.format("%s initial: no ports open\n", this.host);
             }
         } else if (this.type == UpdateType.UPDATE) {
-            for (PortUpdate portUpdate : portUpdates) {
-                result += String.format("%s update: %s\n", this.host, portUpdate.toString());
+            if (portUpdates.size() > 0) {
+                for (PortUpdate portUpdate : portUpdates) {
+                    result += String.format("%s update: %s\n", this.host, portUpdate.toString());
+                }
+            } else {
+                result = String.format("%s update: no port changes\n", this.host);
             }
         } else if (this.type == UpdateType.DOWN) {
             result = String.format("%s: host down\n", this.host);
+        } else if (this.type == UpdateType.FAILED) {
+            result = String.format("%s: scan failed (%s)\n", this.host, this.reason);
         } else if (this.type == UpdateType.UP) {
             if (portUpdates.size() > 0) {
                 for (PortUpdate portUpdate : portUpdates) {
@@ -0,0 +1,481 @@
+package portwatch.core.watch.model;
+
+import portwatch.core.config.profile.port.PortSet;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Primitive snapshot of a host's port states.
+ * Open and filtered states are held in sparse bitsets: only 64-port words with a present port are stored,
+ * alongside their word indexes. Closed ports are not stored.
+ * Service ids are stored in ascending port order for every port present in either bitset.
+ */
+public class PortSnapshot {
+
+    //state codes, bit 0 = open, bit 1 = filtered
+    public static final int CLOSED = 0;
+    public static final int OPEN = 1;
+    public static final int FILTERED = 2;
+    public static final int OPEN_FILTERED = OPEN | FILTERED;
+
+    public static final int MAX_PORT = 65535;
+    private static final int WORDS = (MAX_PORT >>> 6) + 1;
+
+    public static final PortSnapshot EMPTY = new PortSnapshot(new short[0], new long[0], new long[0], new int[0]);
+
+    private final short[] wordIndexes; //index of each stored word, ascending
+    private final long[] open; //open bits of stored words
+    private final long[] filtered; //filtered bits of stored words
+    private final int[] serviceIds; //one per present port, ascending port order
+
+    /**
+     * Visitor receiving ports whose state or service differ between two snapshots
+     */
+    public interface ChangeVisitor {
+        /**
+         * @param port port number
+         * @param oldState old state code
+         * @param oldService old service id
+         * @param newState new state code
+         * @param newService new service id
+         */
+        void portChanged(int port, int oldState, int oldService, int newState, int newService);
+    }
+
+    private PortSnapshot(short[] wordIndexes, long[] open, long[] filtered, int[] serviceIds) {
+        this.wordIndexes = wordIndexes;
+        this.open = open;
+        this.filtered = filtered;
+        this.serviceIds = serviceIds;
+    }
+
+    /**
+     * @param open dense open bitset
+     * @param filtered dense filtered bitset, same length as open
+     * @param serviceIds service ids of present ports
+     * @return snapshot storing only words with a present port
+     */
+    private static PortSnapshot compact(long[] open, long[] filtered, int[] serviceIds) {
+        int stored = 0;
+        for (int w = 0; w < open.length; w++) {
+            if ((open[w] | filtered[w]) != 0) {
+                stored++;
+            }
+        }
+        short[] wordIndexes = new short[stored];
+        long[] storedOpen = new long[stored];
+        long[] storedFiltered = new long[stored];
+        int i = 0;
+        for (int w = 0; w < open.length; w++) {
+            if ((open[w] | filtered[w]) != 0) {
+                wordIndexes[i] = (short) w;
+                storedOpen[i] = open[w];
+                storedFiltered[i++] = filtered[w];
+            }
+        }
+        return new PortSnapshot(wordIndexes, storedOpen, storedFiltered, serviceIds);
+    }
+
+    /**
+     * Parse nmap state string into state code
+     * @param state nmap port state
+     * @return state code
+     */
+    public static int parseState(String state) {
+        if (state == null) {
+            return CLOSED;
+        }
+        switch (state) {
+            case "open":
+                return OPEN;
+            case "filtered":
+            case "closed|filtered":
+                return FILTERED;
+            case "open|filtered":
+                return OPEN_FILTERED;
+            default: //closed, unfiltered
+                return CLOSED;
+        }
+    }
+
+    /**
+     * @param state state code
+     * @return nmap state string for code
+     */
+    public static String stateName(int state) {
+        switch (state) {
+            case OPEN:
+                return "open";
+            case FILTERED:
+                return "filtered";
+            case OPEN_FILTERED:
+                return "open|filtered";
+            default:
+                return "closed";
+        }
+    }
+
+    /**
+     * Compare two snapshots, visiting every port whose state or service changed.
+     * Unchanged 64-port words are skipped with a single XOR; no objects are allocated.
+     * @param oldSnapshot old snapshot
+     * @param newSnapshot new snapshot
+     * @param visitor visitor to notify of changed ports
+     * @return number of changed ports
+     */
+    public static int diff(PortSnapshot oldSnapshot, PortSnapshot newSnapshot, ChangeVisitor visitor) {
+        return diff(oldSnapshot, newSnapshot, null, visitor);
+    }
+
+    /**
+     * Compare two snapshots, visiting every port within mask whose state or service changed.
+     * @param oldSnapshot old snapshot
+     * @param newSnapshot new snapshot
+     * @param mask ports to compare, null for all
+     * @param visitor visitor to notify of changed ports
+     * @return number of changed ports
+     */
+    public static int diff(PortSnapshot oldSnapshot, PortSnapshot newSnapshot, PortSet mask, ChangeVisitor visitor) {
+        int oldWords = oldSnapshot.wordIndexes.length;
+        int newWords = newSnapshot.wordIndexes.length;
+        int oldWord = 0; //index into old stored words
+        int newWord = 0; //index into new stored words
+        int oldRank = 0; //index into old service ids
+        int newRank = 0; //index into new service ids
+        int changes = 0;
+
+        //merge the stored word indexes of both snapshots, words stored in neither are empty in both
+        while (oldWord < oldWords || newWord < newWords) {
+            int oldIndex = oldWord < oldWords ? oldSnapshot.wordIndexes[oldWord] : WORDS;
+            int newIndex = newWord < newWords ? newSnapshot.wordIndexes[newWord] : WORDS;
+            int w = Math.min(oldIndex, newIndex);
+            long oldOpen = 0;
+            long oldFiltered = 0;
+            long newOpen = 0;
+            long newFiltered = 0;
+            if (oldIndex == w) {
+                oldOpen = oldSnapshot.open[oldWord];
+                oldFiltered = oldSnapshot.filtered[oldWord++];
+            }
+            if (newIndex == w) {
+                newOpen = newSnapshot.open[newWord];
+                newFiltered = newSnapshot.filtered[newWord++];
+            }
+
+            long oldPresent = oldOpen | oldFiltered;
+            long newPresent = newOpen | newFiltered;
+            long inMask = mask == null ? -1L : mask.word(w);
+            long changed = ((oldOpen ^ newOpen) | (oldFiltered ^ newFiltered)) & inMask;
+
+            if (((oldPresent | newPresent) & inMask) == 0) {
+                //ports outside mask still hold service ids
+                oldRank += Long.bitCount(oldPresent);
+                newRank += Long.bitCount(newPresent);
+                continue;
+            }
+            if (changed == 0 && oldPresent == newPresent) {
+                //same ports in same states, only services can differ; ports outside mask must match too for ranks to align
+                int count = Long.bitCount(oldPresent);
+                if (rangeEquals(oldSnapshot.serviceIds, oldRank, newSnapshot.serviceIds, newRank, count)) {
+                    oldRank += count;
+                    newRank += count;
+                    continue;
+                }
+            }
+
+            long union = oldPresent | newPresent;
+            while (union != 0) {
+                long bit = union & -union;
+                union ^= bit;
+                if ((bit & inMask) == 0) {
+                    oldRank += (oldPresent & bit) != 0 ? 1 : 0;
+                    newRank += (newPresent & bit) != 0 ? 1 : 0;
+                    continue;
+                }
+
+                int oldState = ((oldOpen & bit) != 0 ? OPEN : 0) | ((oldFiltered & bit) != 0 ? FILTERED : 0);
+                int newState = ((newOpen & bit) != 0 ? OPEN : 0) | ((newFiltered & bit) != 0 ? FILTERED : 0);
+                int oldService = (oldPresent & bit) != 0 ? oldSnapshot.serviceIds[oldRank++] : ServiceTable.UNKNOWN;
+                int newService = (newPresent & bit) != 0 ? newSnapshot.serviceIds[newRank++] : ServiceTable.UNKNOWN;
+
+                if (oldState != newState || oldService != newService) {
+                    visitor.portChanged((w << 6) + Long.numberOfTrailingZeros(bit), oldState, oldService, newState, newService);
+                    changes++;
+                }
+            }
+        }
+        return changes;
+    }
+
+    private static boolean rangeEquals(int[] a, int aFrom, int[] b, int bFrom, int count) {
+        for (int i = 0; i < count; i++) {
+            if (a[aFrom + i] != b[bFrom + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param w word index
+     * @return position of word in stored words, negative if not stored
+     */
+    private int findWord(int w) {
+        return Arrays.binarySearch(this.wordIndexes, (short) w);
+    }
+
+    private long openWord(int w) {
+        int i = findWord(w);
+        return i >= 0 ? this.open[i] : 0L;
+    }
+
+    private long filteredWord(int w) {
+        int i = findWord(w);
+        return i >= 0 ? this.filtered[i] : 0L;
+    }
+
+    /**
+     * @param port port number
+     * @return state code of port
+     */
+    public int getState(int port) {
+        int w = port >>> 6;
+        long bit = 1L << port;
+        return ((openWord(w) & bit) != 0 ? OPEN : 0) | ((filteredWord(w) & bit) != 0 ? FILTERED : 0);
+    }
+
+    /**
+     * @param port port number
+     * @return service id of port, unknown if port is closed
+     */
+    public int getServiceId(int port) {
+        int i = findWord(port >>> 6);
+        long bit = 1L << port;
+        if (i < 0 || ((this.open[i] | this.filtered[i]) & bit) == 0) {
+            return ServiceTable.UNKNOWN;
+        }
+        int rank = Long.bitCount((this.open[i] | this.filtered[i]) & (bit - 1));
+        for (int previous = 0; previous < i; previous++) {
+            rank += Long.bitCount(this.open[previous] | this.filtered[previous]);
+        }
+        return this.serviceIds[rank];
+    }
+
+    /**
+     * Visit every open or filtered port, as changes from an empty snapshot
+     * @param visitor visitor to notify of each port
+     */
+    public void forEachPort(ChangeVisitor visitor) {
+        diff(EMPTY, this, visitor);
+    }
+
+    /**
+     * @return number of open or filtered ports
+     */
+    public int getPortCount() {
+        return this.serviceIds.length;
+    }
+
+    /**
+     * Estimate retained heap size of this snapshot
+     * @return estimated size in bytes
+     */
+    public long estimateSize() {
+        return 16 + 4 * 4 //header, array references
+                + 16 + (long) this.wordIndexes.length * 2
+                + 2 * (16 + (long) this.open.length * 8)
+                + 16 + (long) this.serviceIds.length * 4;
+    }
+
+    /**
+     * @return number of words up to the highest stored word, as serialized
+     */
+    private int denseWords() {
+        return this.wordIndexes.length > 0 ? this.wordIndexes[this.wordIndexes.length - 1] + 1 : 0;
+    }
+
+    /**
+     * Serialized form: dense word count, open words, filtered words, then a local service string table
+     * and one table index per present port. Service ids are process-local, so services are stored as strings.
+     * @return serialized size in bytes
+     */
+    public int serializedSize() {
+        int size = 4 + denseWords() * 16 + 4;
+        int[] distinct = distinctServiceIds();
+        for (int serviceId : distinct) {
+            size += 2 + ServiceTable.nameOf(serviceId).getBytes(StandardCharsets.UTF_8).length;
+        }
+        return size + 4 + this.serviceIds.length * 2;
+    }
+
+    /**
+     * Write serialized form
+     * @param buffer buffer to write to, must have serializedSize() bytes remaining
+     */
+    public void writeTo(ByteBuffer buffer) {
+        int words = denseWords();
+        buffer.putInt(words);
+        for (int w = 0; w < words; w++) {
+            buffer.putLong(openWord(w));
+        }
+        for (int w = 0; w < words; w++) {
+            buffer.putLong(filteredWord(w));
+        }
+
+        int[] distinct = distinctServiceIds();
+        HashMap<Integer, Integer> tableIndexes = new HashMap<Integer, Integer>();
+        buffer.putInt(distinct.length);
+        for (int i = 0; i < distinct.length; i++) {
+            byte[] name = ServiceTable.nameOf(distinct[i]).getBytes(StandardCharsets.UTF_8);
+            buffer.putShort((short) name.length);
+            buffer.put(name);
+            tableIndexes.put(distinct[i], i);
+        }
+        buffer.putInt(this.serviceIds.length);
+        for (int serviceId : this.serviceIds) {
+            buffer.putShort((short) (int) tableIndexes.get(serviceId));
+        }
+    }
+
+    /**
+     * Read serialized form written by writeTo
+     * @param buffer buffer to read from
+     * @return deserialized snapshot
+     * @throws IllegalArgumentException if the serialized form is inconsistent
+     */
+    public static PortSnapshot readFrom(ByteBuffer buffer) {
+        int words = buffer.getInt();
+        if (words < 0 || words > WORDS) {
+            throw new IllegalArgumentException("Invalid word count: " + words);
+        }
+        long[] open = new long[words];
+        long[] filtered = new long[words];
+        int present = 0;
+        for (int w = 0; w < words; w++) {
+            open[w] = buffer.getLong();
+        }
+        for (int w = 0; w < words; w++) {
+            filtered[w] = buffer.getLong();
+            present += Long.bitCount(open[w] | filtered[w]);
+        }
+
+        int tableSize = buffer.getInt();
+        if (tableSize < 0 || tableSize > present + 1) {
+            throw new IllegalArgumentException("Invalid service table size: " + tableSize);
+        }
+        int[] table = new int[tableSize];
+        for (int i = 0; i < tableSize; i++) {
+            byte[] name = new byte[buffer.getShort() & 0xFFFF];
+            buffer.get(name);
+            table[i] = ServiceTable.idOf(new String(name, StandardCharsets.UTF_8));
+        }
+        int count = buffer.getInt();
+        if (count != present) {
+            throw new IllegalArgumentException(String.format("Service count %d does not match %d ports", count, present));
+        }
+        int[] serviceIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            serviceIds[i] = table[buffer.getShort() & 0xFFFF];
+        }
+        return compact(open, filtered, serviceIds);
+    }
+
+    /**
+     * @return distinct service ids of present ports, ascending
+     */
+    private int[] distinctServiceIds() {
+        int[] sorted = Arrays.copyOf(this.serviceIds, this.serviceIds.length);
+        Arrays.sort(sorted);
+        int distinct = 0;
+        for (int i = 0; i < sorted.length; i++) {
+            if (i == 0 || sorted[i] != sorted[i - 1]) {
+                sorted[distinct++] = sorted[i];
+            }
+        }
+        return Arrays.copyOf(sorted, distinct);
+    }
+
+    /**
+     * Accumulates port states, then builds an immutable snapshot.
+     * Ports may be added in any order.
+     */
+    public static class Builder {
+
+        private long[] open = new long[WORDS];
+        private long[] filtered = new long[WORDS];
+        private long[] entries = new long[16]; //port << 32 | service id
+        private int size = 0;
+        private boolean sorted = true;
+
+        /**
+         * @param port port number
+         * @param state nmap state string
+         * @param service service string
+         * @return this builder
+         */
+        public Builder add(int port, String state, String service) {
+            return add(port, parseState(state), ServiceTable.idOf(service));
+        }
+
+        /**
+         * @param port port number
+         * @param state state code
+         * @param serviceId service id
+         * @return this builder
+         */
+        public Builder add(int port, int state, int serviceId) {
+            if (state == CLOSED || port < 0 || port > MAX_PORT) {
+                return this;
+            }
+            long bit = 1L << port;
+            if (((this.open[port >>> 6] | this.filtered[port >>> 6]) & bit) != 0) {
+                return this; //duplicate port, keep first
+            }
+            if ((state & OPEN) != 0) {
+                this.open[port >>> 6] |= bit;
+            }
+            if ((state & FILTERED) != 0) {
+                this.filtered[port >>> 6] |= bit;
+            }
+            if (this.size == this.entries.length) {
+                this.entries = Arrays.copyOf(this.entries, this.size * 2);
+            }
+            long entry = ((long) port << 32) | (serviceId & 0xFFFFFFFFL);
+            if (this.size > 0 && this.entries[this.size - 1] > entry) {
+                this.sorted = false;
+            }
+            this.entries[this.size++] = entry;
+            return this;
+        }
+
+        /**
+         * Clear all added ports so the builder can be reused
+         * @return this builder
+         */
+        public Builder reset() {
+            Arrays.fill(this.open, 0L);
+            Arrays.fill(this.filtered, 0L);
+            this.size = 0;
+            this.sorted = true;
+            return this;
+        }
+
+        /**
+         * @return snapshot of added ports, storing only words with a present port
+         */
+        public PortSnapshot build() {
+            if (!this.sorted) {
+                Arrays.sort(this.entries, 0, this.size);
+            }
+            int[] serviceIds = new int[this.size];
+            for (int i = 0; i < this.size; i++) {
+                serviceIds[i] = (int) this.entries[i];
+            }
+
+            return compact(this.open, this.filtered, serviceIds);
+        }
+    }
+}
@@ -31,7 +31,7 @@ public class PortUpdate {
     public String getService() {
         if (!this.newStatus.getService().equals("?")) {
             return this.newStatus.getService();
-        } else if (!this.oldStatus.getService().equals("?")) {
+        } else if (this.oldStatus != null && !this.oldStatus.getService().equals("?")) {
             return this.oldStatus.getService();
         } else {
             return "?";
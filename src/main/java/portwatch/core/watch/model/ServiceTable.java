@@ -0,0 +1,61 @@
+package portwatch.core.watch.model;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Global table of service strings. Assigns each distinct service string a small integer id
+ * so snapshots can store and compare services as primitives.
+ */
+public class ServiceTable {
+
+    public static final int UNKNOWN = 0; //id of the "?" service
+
+    private static final ConcurrentHashMap<String, Integer> ids = new ConcurrentHashMap<String, Integer>();
+    private static volatile String[] names = new String[] { "?" };
+
+    static {
+        ids.put("?", UNKNOWN);
+    }
+
+    /**
+     * Retrieve id for a service string, assigning a new one if needed
+     * @param service service string, null is treated as "?"
+     * @return service id
+     */
+    public static int idOf(String service) {
+        if (service == null) {
+            return UNKNOWN;
+        }
+        Integer id = ids.get(service);
+        if (id != null) {
+            return id;
+        }
+        synchronized (ServiceTable.class) {
+            id = ids.get(service);
+            if (id == null) {
+                id = names.length;
+                String[] grown = Arrays.copyOf(names, id + 1);
+                grown[id] = service;
+                names = grown; //publish name before id so readers never see an unknown id
+                ids.put(service, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * @param id service id
+     * @return service string for id
+     */
+    public static String nameOf(int id) {
+        return names[id];
+    }
+
+    /**
+     * @return number of distinct services seen
+     */
+    public static int size() {
+        return names.length;
+    }
+}
@@ -0,0 +1,64 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.config.ScanConfig;
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.logging.Logger;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Scans a batch of host profiles with the in-process connect scanner.
+ */
+public class ConnectScanEngine implements ScanEngine {
+
+    private ScanConfig config;
+
+    /**
+     * @param config scanning configuration
+     */
+    public ConnectScanEngine(ScanConfig config) {
+        this.config = config;
+    }
+
+    /**
+     * Host profiles whose host can't be resolved are given a down snapshot.
+     */
+    @Override
+    public HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        ArrayList<HostProfile> resolved = new ArrayList<HostProfile>();
+        ArrayList<InetAddress> addresses = new ArrayList<InetAddress>();
+        HashMap<String, HostSnapshot> hostResults = new HashMap<String, HostSnapshot>();
+        for (HostProfile hostProfile : hostProfiles) {
+            try {
+                addresses.add(InetAddress.getByName(hostProfile.getHost()));
+                resolved.add(hostProfile);
+            } catch (UnknownHostException e) {
+                Logger.logDebug("Could not resolve " + hostProfile.getHost());
+                hostResults.put(hostProfile.getHost(), HostSnapshot.down(System.currentTimeMillis()));
+            }
+        }
+
+        ConnectScanner scanner = new ConnectScanner(this.config.getConnectTimeoutMillis(), this.config.getConnectConcurrency());
+        int[] ports = hostProfiles.get(0).getPortProfile().getPorts();
+        HostSnapshot[] snapshots;
+        try {
+            snapshots = scanner.scan(addresses.toArray(new InetAddress[addresses.size()]), ports);
+        } catch (IOException e) {
+            throw new ScanException("Connect scan failed: " + e.getMessage(), e);
+        }
+        for (int i = 0; i < snapshots.length; i++) {
+            hostResults.put(resolved.get(i).getHost(), snapshots[i]);
+        }
+        return hostResults;
+    }
+
+    @Override
+    public String getName() {
+        return "connect";
+    }
+}
@@ -0,0 +1,279 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+import portwatch.core.watch.model.ServiceTable;
+
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-process TCP connect scanner.
+ * Keeps many non-blocking connection attempts in flight on a single selector, so no external process or
+ * elevated privileges are needed. A port is open if the connection is accepted, closed if it is refused and
+ * filtered if the attempt times out. A host is up if any port answered.
+ *
+ * Like nmap, timed-out ports are only reported individually when few of them exist; a host that silently drops
+ * most ports would otherwise report every one of them as filtered.
+ */
+public class ConnectScanner {
+
+    public static final int DEFAULT_TIMEOUT_MILLIS = 1000;
+    public static final int DEFAULT_CONCURRENCY = 1000;
+
+    private static final int MAX_REPORTED_FILTERED = 25; //filtered ports reported per host, more are omitted
+
+    private static final byte PENDING = 0;
+    private static final byte OPEN = 1;
+    private static final byte CLOSED = 2;
+    private static final byte FILTERED = 3;
+
+    private long timeoutNanos;
+    private int concurrency;
+    private int open; //attempts with an open channel, completed attempts may still be queued for expiry
+
+    /**
+     * In-flight connection attempt
+     */
+    private static class Attempt {
+        private final int host; //index of address
+        private final int port; //index of port
+        private final long deadline; //nanoTime the attempt times out
+        private SocketChannel channel;
+
+        Attempt(int host, int port, long deadline) {
+            this.host = host;
+            this.port = port;
+            this.deadline = deadline;
+        }
+    }
+
+    /**
+     * @param timeoutMillis milliseconds to wait for a connection to be accepted or refused
+     * @param concurrency maximum number of connection attempts in flight
+     */
+    public ConnectScanner(int timeoutMillis, int concurrency) {
+        this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+        this.concurrency = concurrency;
+    }
+
+    /**
+     * Scan the same ports on each address
+     * @param addresses addresses to scan
+     * @param ports ports to scan on each address
+     * @return scan result for each address, in the same order
+     * @throws IOException if the selector can't be opened or no connection attempt can be started
+     * @throws InterruptedException if interrupted while scanning
+     */
+    public HostSnapshot[] scan(InetAddress[] addresses, int[] ports) throws IOException, InterruptedException {
+        byte[][] states = new byte[addresses.length][ports.length];
+        ArrayDeque<Attempt> inFlight = new ArrayDeque<Attempt>(); //ordered by deadline, as all share one timeout
+        this.open = 0;
+        int nextHost = 0;
+        int nextPort = 0;
+
+        Selector selector = Selector.open();
+        try {
+            while (nextHost < addresses.length || !inFlight.isEmpty()) {
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+
+                //start attempts up to the concurrency cap, host-major so each host's ports are spread over time
+                while (this.open < this.concurrency && nextHost < addresses.length) {
+                    Attempt attempt = new Attempt(nextHost, nextPort, System.nanoTime() + this.timeoutNanos);
+                    if (!start(selector, addresses[nextHost], ports[nextPort], attempt, states)) {
+                        if (this.open == 0) {
+                            throw new IOException("Unable to open any connection");
+                        }
+                        break; //out of sockets, retry once some attempts complete
+                    }
+                    if (attempt.channel != null) {
+                        inFlight.addLast(attempt);
+                        this.open++;
+                    }
+                    if (++nextPort == ports.length) {
+                        nextPort = 0;
+                        nextHost++;
+                    }
+                }
+
+                //wait until the earliest deadline for attempts to complete
+                Attempt earliest = inFlight.peekFirst();
+                if (earliest != null) {
+                    long waitMillis = TimeUnit.NANOSECONDS.toMillis(earliest.deadline - System.nanoTime());
+                    if (waitMillis > 0) {
+                        selector.select(waitMillis);
+                    } else {
+                        selector.selectNow();
+                    }
+                }
+                Iterator<SelectionKey> selected = selector.selectedKeys().iterator();
+                while (selected.hasNext()) {
+                    SelectionKey key = selected.next();
+                    selected.remove();
+                    Attempt attempt = (Attempt) key.attachment();
+                    byte state = finish(attempt.channel);
+                    if (state != PENDING) {
+                        states[attempt.host][attempt.port] = state;
+                        close(attempt);
+                    }
+                }
+
+                //expire timed out attempts, completed attempts are discarded as they reach the front
+                long now = System.nanoTime();
+                while (!inFlight.isEmpty()) {
+                    Attempt attempt = inFlight.peekFirst();
+                    if (attempt.channel != null && attempt.deadline - now > 0) {
+                        break;
+                    }
+                    inFlight.removeFirst();
+                    if (attempt.channel != null) {
+                        states[attempt.host][attempt.port] = FILTERED;
+                        close(attempt);
+                    }
+                }
+            }
+        } finally {
+            for (Attempt attempt : inFlight) {
+                close(attempt);
+            }
+            selector.close();
+        }
+
+        HostSnapshot[] snapshots = new HostSnapshot[addresses.length];
+        PortSnapshot.Builder builder = new PortSnapshot.Builder();
+        long timestamp = System.currentTimeMillis();
+        for (int host = 0; host < addresses.length; host++) {
+            snapshots[host] = createSnapshot(states[host], ports, builder, timestamp);
+        }
+        return snapshots;
+    }
+
+    /**
+     * Start a connection attempt
+     * @param selector selector to register pending attempt with
+     * @param address address to connect to
+     * @param port port to connect to
+     * @param attempt attempt, given the channel if the attempt is pending
+     * @param states port states, set if the attempt completes immediately
+     * @return false if no socket could be opened
+     */
+    private boolean start(Selector selector, InetAddress address, int port, Attempt attempt, byte[][] states) {
+        SocketChannel channel;
+        try {
+            channel = SocketChannel.open();
+        } catch (IOException e) {
+            return false;
+        }
+        try {
+            channel.configureBlocking(false);
+            if (channel.connect(new InetSocketAddress(address, port))) {
+                states[attempt.host][attempt.port] = OPEN;
+                reset(channel);
+            } else {
+                attempt.channel = channel;
+                channel.register(selector, SelectionKey.OP_CONNECT, attempt);
+            }
+        } catch (ConnectException e) {
+            states[attempt.host][attempt.port] = CLOSED;
+            closeQuietly(channel);
+        } catch (IOException e) {
+            states[attempt.host][attempt.port] = FILTERED; //unreachable
+            closeQuietly(channel);
+        }
+        return true;
+    }
+
+    /**
+     * @param channel channel selected for connect
+     * @return state of the attempted port
+     */
+    private byte finish(SocketChannel channel) {
+        try {
+            return channel.finishConnect() ? OPEN : PENDING;
+        } catch (ConnectException e) {
+            return CLOSED; //refused, host is up
+        } catch (IOException e) {
+            return FILTERED; //unreachable
+        }
+    }
+
+    /**
+     * Close an attempt's channel, marking the attempt completed
+     * @param attempt attempt to close
+     */
+    private void close(Attempt attempt) {
+        if (attempt.channel != null) {
+            reset(attempt.channel);
+            attempt.channel = null;
+            this.open--;
+        }
+    }
+
+    /**
+     * Close a channel with a reset rather than an orderly shutdown, so no connection lingers in TIME_WAIT
+     * @param channel channel to close
+     */
+    private void reset(SocketChannel channel) {
+        try {
+            if (channel.isConnected()) {
+                channel.setOption(StandardSocketOptions.SO_LINGER, 0);
+            }
+        } catch (IOException e) {
+            //closed regardless
+        }
+        closeQuietly(channel);
+    }
+
+    private void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            //nothing left to release
+        }
+    }
+
+    /**
+     * @param states state of each scanned port
+     * @param ports scanned ports
+     * @param builder builder to reuse
+     * @param timestamp scan time
+     * @return snapshot of host, down if no port answered
+     */
+    private HostSnapshot createSnapshot(byte[] states, int[] ports, PortSnapshot.Builder builder, long timestamp) {
+        int answered = 0;
+        int filtered = 0;
+        for (byte state : states) {
+            if (state == OPEN || state == CLOSED) {
+                answered++;
+            } else if (state == FILTERED) {
+                filtered++;
+            }
+        }
+        if (answered == 0) {
+            return HostSnapshot.down(timestamp);
+        }
+
+        builder.reset();
+        boolean reportFiltered = filtered <= MAX_REPORTED_FILTERED;
+        for (int i = 0; i < ports.length; i++) {
+            if (states[i] == OPEN) {
+                builder.add(ports[i], PortSnapshot.OPEN, ServiceTable.UNKNOWN);
+            } else if (states[i] == FILTERED && reportFiltered) {
+                builder.add(ports[i], PortSnapshot.FILTERED, ServiceTable.UNKNOWN);
+            }
+        }
+        return new HostSnapshot(timestamp, true, builder.build());
+    }
+}
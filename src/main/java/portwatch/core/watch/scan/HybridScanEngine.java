@@ -0,0 +1,190 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.config.ScanConfig;
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.config.profile.port.PortSet;
+import portwatch.core.logging.Logger;
+import portwatch.core.watch.history.ScanHistory;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Two-phase nmap scanning. A fast SYN sweep establishes port states, then version detection only runs on ports
+ * that are newly open or changed state. Services of unchanged ports are carried over from the host's last
+ * up snapshot. Every host is fully fingerprinted on its first scan and then every configured number of scans.
+ */
+public class HybridScanEngine implements ScanEngine, LivenessProber {
+
+    private NmapScanEngine nmap;
+    private ScanHistory scanHistory;
+    private int fingerprintEvery; //scans between full fingerprints of a host
+
+    private ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>> scansSinceFingerprint; //per host, then port spec of each shard
+
+    /**
+     * @param config scanning configuration
+     * @param scanHistory history to carry services over from
+     * @param rateBudget packets per second shared by concurrent nmap runs, null if runs aren't rate limited
+     */
+    public HybridScanEngine(ScanConfig config, ScanHistory scanHistory, RateBudget rateBudget) {
+        this.nmap = new NmapScanEngine(config, rateBudget);
+        this.scanHistory = scanHistory;
+        this.fingerprintEvery = config.getFingerprintEvery();
+        this.scansSinceFingerprint = new ConcurrentHashMap<String, ConcurrentHashMap<String, Integer>>();
+    }
+
+    @Override
+    public HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        String portSpec = hostProfiles.get(0).getPortProfile().toString();
+        HashMap<String, HostSnapshot> sweep = this.nmap.scan(hostProfiles, "-sS -p" + portSpec);
+
+        //determine ports needing version detection per host
+        HashMap<String, HostSnapshot> previous = new HashMap<String, HostSnapshot>();
+        HashMap<String, Integer> sinceFingerprint = new HashMap<String, Integer>(); //recorded once version detection completes
+        HashMap<String, PortSet> fingerprintPorts = new HashMap<String, PortSet>();
+        ArrayList<HostProfile> fingerprintHosts = new ArrayList<HostProfile>();
+        PortSet allPorts = new PortSet();
+        for (HostProfile hostProfile : hostProfiles) {
+            String host = hostProfile.getHost();
+            HostSnapshot swept = sweep.get(host);
+            if (!swept.isUp()) {
+                continue;
+            }
+            HostSnapshot last = this.scanHistory.getLatestUp(host);
+            ConcurrentHashMap<String, Integer> hostCounts = this.scansSinceFingerprint.get(host);
+            Integer sinceFull = hostCounts != null ? hostCounts.get(portSpec) : null;
+            boolean full = last == null || sinceFull == null || sinceFull + 1 >= this.fingerprintEvery;
+
+            PortSet ports = full ? presentPorts(swept.getPorts()) : changedPorts(last.getPorts(), swept.getPorts());
+            sinceFingerprint.put(host, full ? 0 : sinceFull + 1);
+            previous.put(host, full ? null : last);
+            if (ports.size() > 0) {
+                fingerprintPorts.put(host, ports);
+                fingerprintHosts.add(hostProfile);
+                allPorts.addAll(ports);
+            }
+        }
+
+        //one version scan of the union of ports, probing ports closed on some hosts is cheap
+        HashMap<String, HostSnapshot> fingerprinted = new HashMap<String, HostSnapshot>();
+        if (!fingerprintHosts.isEmpty()) {
+            Logger.logDebug(String.format("Version detection on %d ports of %d hosts", allPorts.size(), fingerprintHosts.size()));
+            fingerprinted = this.nmap.scan(fingerprintHosts, "-sV -p" + allPorts.toSpec());
+        }
+        for (Map.Entry<String, Integer> entry : sinceFingerprint.entrySet()) {
+            HostSnapshot result = fingerprinted.get(entry.getKey());
+            if (fingerprintPorts.containsKey(entry.getKey()) && (result == null || !result.isUp())) {
+                continue; //not version scanned after all, keep its schedule
+            }
+            ConcurrentHashMap<String, Integer> hostCounts = this.scansSinceFingerprint.get(entry.getKey());
+            if (hostCounts == null) {
+                ConcurrentHashMap<String, Integer> created = new ConcurrentHashMap<String, Integer>();
+                hostCounts = this.scansSinceFingerprint.putIfAbsent(entry.getKey(), created);
+                if (hostCounts == null) {
+                    hostCounts = created;
+                }
+            }
+            hostCounts.put(portSpec, entry.getValue());
+        }
+
+        HashMap<String, HostSnapshot> results = new HashMap<String, HostSnapshot>();
+        PortSnapshot.Builder builder = new PortSnapshot.Builder();
+        for (HostProfile hostProfile : hostProfiles) {
+            String host = hostProfile.getHost();
+            HostSnapshot swept = sweep.get(host);
+            if (!swept.isUp()) {
+                results.put(host, swept);
+            } else {
+                results.put(host, merge(swept, previous.get(host), fingerprinted.get(host), fingerprintPorts.get(host), builder));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * Forget a host's fingerprint schedule, its next scan is fully fingerprinted
+     * @param host host removed or whose port profile changed
+     */
+    public void removeHost(String host) {
+        this.scansSinceFingerprint.remove(host);
+    }
+
+    @Override
+    public HashMap<String, HostSnapshot> probeLiveness(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        return this.nmap.probeLiveness(hostProfiles);
+    }
+
+    /**
+     * Combine a sweep with fingerprinted and previously known services
+     * @param swept sweep result
+     * @param last last up snapshot whose services are carried over, null if none are
+     * @param fingerprinted version scan result, null if host wasn't version scanned
+     * @param fingerprintPorts ports that were version scanned for the host, null if none
+     * @param builder builder to reuse
+     * @return merged result
+     */
+    private HostSnapshot merge(HostSnapshot swept, final HostSnapshot last, final HostSnapshot fingerprinted,
+                               final PortSet fingerprintPorts, final PortSnapshot.Builder builder) {
+        builder.reset();
+        swept.getPorts().forEachPort(new PortSnapshot.ChangeVisitor() {
+            @Override
+            public void portChanged(int port, int oldState, int oldService, int state, int service) {
+                if (fingerprintPorts != null && fingerprintPorts.contains(port) && fingerprinted != null && fingerprinted.isUp()) {
+                    //version scan is more recent and more detailed
+                    builder.add(port, fingerprinted.getPorts().getState(port), fingerprinted.getPorts().getServiceId(port));
+                } else if (last != null && last.getPorts().getState(port) == state) {
+                    builder.add(port, state, last.getPorts().getServiceId(port));
+                } else {
+                    builder.add(port, state, service);
+                }
+            }
+        });
+        return new HostSnapshot(swept.getTimestamp(), true, builder.build());
+    }
+
+    /**
+     * @param ports snapshot
+     * @return every open port of snapshot
+     */
+    private PortSet presentPorts(PortSnapshot ports) {
+        final PortSet present = new PortSet();
+        ports.forEachPort(new PortSnapshot.ChangeVisitor() {
+            @Override
+            public void portChanged(int port, int oldState, int oldService, int state, int service) {
+                if ((state & PortSnapshot.OPEN) != 0) {
+                    present.add(port);
+                }
+            }
+        });
+        return present;
+    }
+
+    /**
+     * @param last last known port states
+     * @param swept swept port states
+     * @return ports that are open and changed state since last known states
+     */
+    private PortSet changedPorts(PortSnapshot last, PortSnapshot swept) {
+        final PortSet changed = new PortSet();
+        PortSnapshot.diff(last, swept, new PortSnapshot.ChangeVisitor() {
+            @Override
+            public void portChanged(int port, int oldState, int oldService, int newState, int newService) {
+                //services always differ as sweeps only report service names, compare states only
+                if (oldState != newState && (newState & PortSnapshot.OPEN) != 0) {
+                    changed.add(port);
+                }
+            }
+        });
+        return changed;
+    }
+
+    @Override
+    public String getName() {
+        return "hybrid";
+    }
+}
@@ -0,0 +1,22 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Implemented by scan engines that can cheaply determine which hosts are up without scanning their ports.
+ */
+public interface LivenessProber {
+
+    /**
+     * Determine which host profiles are up
+     * @param hostProfiles host profiles to probe, with any port profiles
+     * @return portless snapshots mapped by host profile host, down for hosts that didn't respond
+     * @throws ScanException if the probe failed
+     * @throws InterruptedException if interrupted while probing
+     */
+    HashMap<String, HostSnapshot> probeLiveness(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException;
+}
@@ -0,0 +1,84 @@
+package portwatch.core.watch.scan;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Builds nmap command lines. XML output is always written to stdout.
+ */
+public class NmapCommand {
+
+    private String nmapPath;
+    private ArrayList<String> flags;
+    private ArrayList<String> hosts;
+
+    /**
+     * @param nmapPath path of directory containing nmap binary
+     */
+    public NmapCommand(String nmapPath) {
+        this.nmapPath = nmapPath;
+        this.flags = new ArrayList<String>();
+        this.hosts = new ArrayList<String>();
+    }
+
+    /**
+     * @param flags flags to add, whitespace-separated
+     * @return this command
+     */
+    public NmapCommand addFlags(String flags) {
+        Collections.addAll(this.flags, flags.trim().split("\\s+"));
+        return this;
+    }
+
+    /**
+     * @param host host to scan
+     * @return this command
+     */
+    public NmapCommand addHost(String host) {
+        this.hosts.add(host);
+        return this;
+    }
+
+    /**
+     * Resolve nmap binary location.
+     * Accepts either a directory containing the binary or an install prefix with bin and share/nmap directories.
+     * @return command arguments up to and including data directory
+     */
+    private List<String> resolveBinary() {
+        ArrayList<String> binary = new ArrayList<String>();
+        boolean windows = System.getProperty("os.name").toLowerCase().contains("windows");
+        String binaryName = windows ? "nmap.exe" : "nmap";
+
+        File prefixBinary = new File(this.nmapPath + File.separator + "bin", binaryName);
+        if (!windows && prefixBinary.isFile()) {
+            binary.add(prefixBinary.getPath());
+            File dataDir = new File(this.nmapPath + File.separator + "share", "nmap");
+            if (dataDir.isDirectory()) {
+                binary.add("--datadir");
+                binary.add(dataDir.getPath());
+            }
+        } else {
+            binary.add(new File(this.nmapPath, binaryName).getPath());
+        }
+        return binary;
+    }
+
+    /**
+     * @return full command line
+     */
+    public List<String> toArguments() {
+        ArrayList<String> arguments = new ArrayList<String>(resolveBinary());
+        arguments.addAll(this.flags);
+        arguments.add("-oX");
+        arguments.add("-");
+        arguments.addAll(this.hosts);
+        return arguments;
+    }
+
+    @Override
+    public String toString() {
+        return String.join(" ", toArguments());
+    }
+}
@@ -0,0 +1,14 @@
+package portwatch.core.watch.scan;
+
+/**
+ * Exception to be thrown when an nmap process can't be run or its output can't be read.
+ */
+public class NmapExecutionException extends ScanException {
+    public NmapExecutionException(String message) {
+        super(message);
+    }
+
+    public NmapExecutionException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
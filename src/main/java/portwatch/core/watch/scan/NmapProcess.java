@@ -0,0 +1,171 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.metrics.Histogram;
+import portwatch.core.metrics.Metrics;
+
+import javax.xml.stream.XMLStreamException;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayDeque;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs an nmap process, streaming its XML output through the parser as it is produced.
+ */
+public class NmapProcess {
+
+    private static final int ERROR_LINES = 5; //stderr lines retained for error messages
+    private static final long WATCH_MILLIS = 250; //interval at which running processes' threads are checked for interrupts
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+    private static final Histogram execTime = Metrics.histogram("portwatch_nmap_exec_seconds",
+            "Wall time of nmap runs, from process start to exit", null, Histogram.DURATION_BUCKETS);
+    private static final Histogram parseTime = Metrics.histogram("portwatch_nmap_parse_cpu_seconds",
+            "CPU time spent parsing nmap output per run", null, Histogram.DURATION_BUCKETS);
+
+    //output is read with blocking reads that ignore interrupts, so an interrupted run's process is destroyed to end them
+    private static final ScheduledThreadPoolExecutor watchdog = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "nmap-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        watchdog.setRemoveOnCancelPolicy(true);
+    }
+
+    private NmapCommand command;
+
+    /**
+     * @param command command to run
+     */
+    public NmapProcess(NmapCommand command) {
+        this.command = command;
+    }
+
+    /**
+     * Run nmap and parse its output
+     * @param listener listener to notify of each parsed host
+     * @throws NmapExecutionException if nmap could not be run or its output could not be parsed
+     * @throws InterruptedException if interrupted while nmap runs, nmap is destroyed
+     */
+    public void run(NmapXmlParser.HostListener listener) throws NmapExecutionException, InterruptedException {
+        long startNanos = System.nanoTime();
+        Process process;
+        try {
+            process = new ProcessBuilder(this.command.toArguments()).start();
+        } catch (IOException e) {
+            throw new NmapExecutionException("Could not start nmap: " + e.getMessage(), e);
+        }
+
+        ErrorDrain errorDrain = new ErrorDrain(process.getErrorStream());
+        errorDrain.start();
+        ScheduledFuture<?> watch = watchProcess(process, Thread.currentThread());
+        try {
+            process.getOutputStream().close();
+            //output is parsed while nmap runs, so parse cost is measured as this thread's CPU time rather than wall time
+            long parseStartCpu = currentThreadCpuTime();
+            new NmapXmlParser().parse(process.getInputStream(), listener);
+            if (parseStartCpu >= 0) {
+                parseTime.observeNanos(currentThreadCpuTime() - parseStartCpu);
+            }
+
+            int exitCode = process.waitFor();
+            execTime.observeNanos(System.nanoTime() - startNanos);
+            errorDrain.join();
+            if (exitCode != 0) {
+                checkInterrupted(); //exited because it was destroyed
+                throw new NmapExecutionException(String.format("nmap exited with code %d: %s", exitCode, errorDrain.getLastLines()));
+            }
+        } catch (XMLStreamException e) {
+            checkInterrupted(); //output was cut off by destroying nmap
+            throw new NmapExecutionException("Could not parse nmap output: " + e.getMessage() + " " + errorDrain.getLastLines(), e);
+        } catch (IOException e) {
+            checkInterrupted();
+            throw new NmapExecutionException(e.getMessage(), e);
+        } finally {
+            watch.cancel(false);
+            process.destroy(); //no-op if nmap already exited
+        }
+    }
+
+    /**
+     * Destroy a process once the thread waiting on it is interrupted
+     * @param process running nmap process
+     * @param thread thread reading the process's output
+     * @return watch to cancel once the process has exited
+     */
+    private static ScheduledFuture<?> watchProcess(final Process process, final Thread thread) {
+        return watchdog.scheduleWithFixedDelay(new Runnable() {
+            @Override
+            public void run() {
+                if (thread.isInterrupted() && process.isAlive()) {
+                    process.destroyForcibly();
+                }
+            }
+        }, WATCH_MILLIS, WATCH_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @throws InterruptedException if the current thread was interrupted, clearing its interrupt
+     */
+    private static void checkInterrupted() throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException("nmap destroyed");
+        }
+    }
+
+    /**
+     * @return CPU time of current thread in nanoseconds, -1 if not supported
+     */
+    private static long currentThreadCpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : -1;
+    }
+
+    /**
+     * Consumes a process's stderr so it can't block on a full pipe, retaining the last few lines
+     */
+    private static class ErrorDrain extends Thread {
+
+        private InputStream errorStream;
+        private final ArrayDeque<String> lastLines = new ArrayDeque<String>();
+
+        ErrorDrain(InputStream errorStream) {
+            this.errorStream = errorStream;
+            setDaemon(true);
+        }
+
+        @Override
+        public void run() {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(this.errorStream))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    synchronized (this.lastLines) {
+                        if (this.lastLines.size() == ERROR_LINES) {
+                            this.lastLines.removeFirst();
+                        }
+                        this.lastLines.addLast(line);
+                    }
+                }
+            } catch (IOException e) {
+                //process ended
+            }
+        }
+
+        String getLastLines() {
+            synchronized (this.lastLines) {
+                return String.join(" ", this.lastLines);
+            }
+        }
+    }
+}
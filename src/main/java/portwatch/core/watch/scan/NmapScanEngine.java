@@ -0,0 +1,161 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.config.ScanConfig;
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.logging.Logger;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Scans a batch of host profiles in a single nmap run.
+ */
+public class NmapScanEngine implements ScanEngine, LivenessProber {
+
+    public static final int DEFAULT_MIN_RATE = 10000; //packets per second of port scans without a rate budget
+
+    private ScanConfig config;
+    private RateBudget rateBudget; //null if runs aren't rate limited
+
+    /**
+     * @param config scanning configuration
+     * @param rateBudget packets per second shared by concurrent runs, null if runs aren't rate limited
+     */
+    public NmapScanEngine(ScanConfig config, RateBudget rateBudget) {
+        this.config = config;
+        this.rateBudget = rateBudget;
+    }
+
+    /**
+     * @param config scanning configuration
+     */
+    public NmapScanEngine(ScanConfig config) {
+        this(config, null);
+    }
+
+    @Override
+    public HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        //add flags based on configuration, port profile is shared by the whole batch
+        String portSpec = hostProfiles.get(0).getPortProfile().toString();
+        String scanFlag = this.config.getScanType() == ScanConfig.ScanType.VERSION ? "-sV" : "-sS";
+        return scan(hostProfiles, String.format("%s -p%s", scanFlag, portSpec));
+    }
+
+    /**
+     * Scan a batch of host profiles with the given nmap flags, at a leased rate or the default minimum rate
+     * @param hostProfiles host profiles to scan
+     * @param flags nmap flags, including scan type and ports, excluding rate
+     * @return single-host results mapped by host profile host, a host profile that wasn't found up is given a down snapshot
+     * @throws ScanException if nmap failed
+     * @throws InterruptedException if interrupted while scanning
+     */
+    public HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles, String flags) throws ScanException, InterruptedException {
+        return scan(hostProfiles, flags, "--min-rate " + DEFAULT_MIN_RATE);
+    }
+
+    /**
+     * @param hostProfiles host profiles to scan
+     * @param flags nmap flags, excluding rate
+     * @param defaultRateFlags rate flags used without a rate budget, may be empty
+     * @return single-host results mapped by host profile host
+     * @throws ScanException if nmap failed
+     * @throws InterruptedException if interrupted while scanning or waiting for rate
+     */
+    private HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles, String flags, String defaultRateFlags)
+            throws ScanException, InterruptedException {
+        if (this.rateBudget == null) {
+            return run(hostProfiles, defaultRateFlags.isEmpty() ? flags : flags + " " + defaultRateFlags);
+        }
+        RateBudget.Lease lease = this.rateBudget.acquire();
+        try {
+            return run(hostProfiles, flags + " " + lease.toFlags());
+        } finally {
+            lease.release();
+        }
+    }
+
+    private HashMap<String, HostSnapshot> run(ArrayList<HostProfile> hostProfiles, String flags) throws ScanException, InterruptedException {
+        NmapCommand command = new NmapCommand(this.config.getNmapPath());
+        for (HostProfile hostProfile : hostProfiles) {
+            command.addHost(hostProfile.getHost());
+        }
+        command.addFlags(flags);
+
+        //hosts are parsed from nmap's output as it is produced
+        final ArrayList<ScannedHost> scannedHosts = new ArrayList<ScannedHost>();
+        new NmapProcess(command).run(new NmapXmlParser.HostListener() {
+            @Override
+            public void hostParsed(ScannedHost host) {
+                scannedHosts.add(host);
+            }
+        });
+        return matchResults(hostProfiles, scannedHosts);
+    }
+
+    /**
+     * Ping sweep host profiles (-sn), host discovery only
+     */
+    @Override
+    public HashMap<String, HostSnapshot> probeLiveness(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        return scan(hostProfiles, "-sn", ""); //unbudgeted sweeps keep nmap's default timing
+    }
+
+    /**
+     * Match scanned hosts to the batch's host profiles.
+     * Host profiles with no matching up host are given a down snapshot.
+     * @param hostProfiles host profiles that were scanned
+     * @param scannedHosts hosts parsed from nmap output
+     * @return single-host results mapped by host profile host
+     */
+    private HashMap<String, HostSnapshot> matchResults(ArrayList<HostProfile> hostProfiles, ArrayList<ScannedHost> scannedHosts) {
+        //index up hosts by every name they can be referred to by
+        HashMap<String, ScannedHost> upHosts = new HashMap<String, ScannedHost>();
+        for (ScannedHost host : scannedHosts) {
+            if (host.getSnapshot().isUp()) {
+                for (String name : host.getNames()) {
+                    upHosts.put(name, host);
+                }
+            }
+        }
+
+        HashMap<String, HostSnapshot> hostResults = new HashMap<String, HostSnapshot>();
+        for (HostProfile hostProfile : hostProfiles) {
+            ScannedHost host;
+            if (hostProfiles.size() == 1) {
+                //unbatched, any up host in the output belongs to this profile
+                host = upHosts.isEmpty() ? null : upHosts.values().iterator().next();
+            } else {
+                host = findHost(upHosts, hostProfile.getHost());
+            }
+            hostResults.put(hostProfile.getHost(), host != null ? host.getSnapshot() : HostSnapshot.down(System.currentTimeMillis()));
+        }
+        return hostResults;
+    }
+
+    /**
+     * Find the scanned host matching a host profile's host
+     * @param upHosts up hosts mapped by address and hostname
+     * @param hostName host profile host
+     * @return matching host, null if host was not found up
+     */
+    private ScannedHost findHost(HashMap<String, ScannedHost> upHosts, String hostName) {
+        ScannedHost host = upHosts.get(hostName.toLowerCase());
+        if (host == null) {
+            //nmap may only report the resolved address or reverse DNS name, compare by address
+            try {
+                host = upHosts.get(InetAddress.getByName(hostName).getHostAddress());
+            } catch (UnknownHostException e) {
+                Logger.logDebug("Could not resolve " + hostName);
+            }
+        }
+        return host;
+    }
+
+    @Override
+    public String getName() {
+        return "nmap";
+    }
+}
@@ -0,0 +1,142 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.InputStream;
+import java.util.ArrayList;
+
+/**
+ * Incremental parser for nmap XML output (-oX).
+ * Reads the output as a stream and emits a compact result as each host element closes,
+ * so memory use does not grow with the size of the output.
+ */
+public class NmapXmlParser {
+
+    /**
+     * Receives hosts as they are parsed
+     */
+    public interface HostListener {
+        /**
+         * @param host parsed host
+         */
+        void hostParsed(ScannedHost host);
+    }
+
+    private static final XMLInputFactory factory = createFactory();
+
+    private PortSnapshot.Builder portBuilder = new PortSnapshot.Builder(); //reused for every host
+
+    private static XMLInputFactory createFactory() {
+        XMLInputFactory factory = XMLInputFactory.newInstance();
+        //nmap output references a DTD and stylesheet, neither is needed
+        factory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        factory.setProperty(XMLInputFactory.IS_COALESCING, false);
+        return factory;
+    }
+
+    /**
+     * Parse nmap XML output
+     * @param input stream of nmap XML output
+     * @param listener listener to notify of each parsed host
+     * @return number of hosts parsed
+     * @throws XMLStreamException if output is not well-formed
+     */
+    public int parse(InputStream input, HostListener listener) throws XMLStreamException {
+        XMLStreamReader reader = factory.createXMLStreamReader(input);
+        int hosts = 0;
+        try {
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("host")) {
+                    listener.hostParsed(parseHost(reader));
+                    hosts++;
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return hosts;
+    }
+
+    /**
+     * Parse a host element, reader positioned at its start
+     * @param reader reader to parse from
+     * @return parsed host, reader positioned at the host's end element
+     * @throws XMLStreamException
+     */
+    private ScannedHost parseHost(XMLStreamReader reader) throws XMLStreamException {
+        ArrayList<String> names = new ArrayList<String>(2);
+        boolean up = true;
+        this.portBuilder.reset();
+
+        //current port being parsed
+        int portId = -1;
+        String portState = null;
+        String portService = null;
+
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                String element = reader.getLocalName();
+                if (element.equals("status")) {
+                    up = !"down".equals(reader.getAttributeValue(null, "state"));
+                } else if (element.equals("address")) {
+                    addName(names, reader.getAttributeValue(null, "addr"));
+                } else if (element.equals("hostname")) {
+                    addName(names, reader.getAttributeValue(null, "name"));
+                } else if (element.equals("port")) {
+                    portId = Integer.parseInt(reader.getAttributeValue(null, "portid"));
+                    portState = null;
+                    portService = "?";
+                } else if (element.equals("state") && portId >= 0) {
+                    portState = reader.getAttributeValue(null, "state");
+                } else if (element.equals("service") && portId >= 0) {
+                    portService = formatService(reader);
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                String element = reader.getLocalName();
+                if (element.equals("port")) {
+                    this.portBuilder.add(portId, portState, portService);
+                    portId = -1;
+                } else if (element.equals("host")) {
+                    break;
+                }
+            }
+        }
+
+        long timestamp = System.currentTimeMillis();
+        HostSnapshot snapshot = up ? new HostSnapshot(timestamp, true, this.portBuilder.build()) : HostSnapshot.down(timestamp);
+        return new ScannedHost(names, snapshot);
+    }
+
+    /**
+     * Format service information from a service element's attributes
+     * @param reader reader positioned at a service element
+     * @return formatted service string
+     */
+    private String formatService(XMLStreamReader reader) {
+        StringBuilder service = new StringBuilder();
+        String[] attributes = { "name", "product", "version" };
+        for (String attribute : attributes) {
+            String value = reader.getAttributeValue(null, attribute);
+            if (value != null) {
+                if (service.length() > 0) {
+                    service.append(' ');
+                }
+                service.append(value);
+            }
+        }
+        return service.toString();
+    }
+
+    private void addName(ArrayList<String> names, String name) {
+        if (name != null && !names.contains(name.toLowerCase())) {
+            names.add(name.toLowerCase());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Counter;
+import portwatch.core.metrics.Gauge;
+import portwatch.core.metrics.Metrics;
+
+/**
+ * Global packets per second budget shared by concurrent nmap runs.
+ * nmap's rate can't change once it is running, so each run leases a share of the budget when it starts
+ * and returns it when it finishes. A share is the unleased rate split over the scans expected to run
+ * alongside it: scans running plus scans waiting for a thread, up to the thread count. Released rate
+ * goes to the scans that start next. The sum of leases never exceeds the budget; a scan waits when
+ * less than one thread's fair share is left, which only happens after fewer scans than expected ran at once.
+ */
+public class RateBudget {
+
+    private static final Gauge budgetGauge = Metrics.gauge("portwatch_rate_budget_pps",
+            "Packets per second shared by all nmap runs", null);
+    private static final Gauge leasedGauge = Metrics.gauge("portwatch_rate_leased_pps",
+            "Packets per second leased to running nmap runs", null);
+    private static final Counter waits = Metrics.counter("portwatch_rate_waits_total",
+            "nmap runs that waited for rate to be released", null);
+
+    /**
+     * Source of the number of scans running or waiting for a thread
+     */
+    public interface Demand {
+        int get();
+    }
+
+    /**
+     * Share of the budget held by one nmap run
+     */
+    public class Lease {
+        private final int rate;
+        private boolean released = false;
+
+        private Lease(int rate) {
+            this.rate = rate;
+        }
+
+        /**
+         * @return leased packets per second
+         */
+        public int getRate() {
+            return this.rate;
+        }
+
+        /**
+         * @return nmap flags holding the run to its leased rate
+         */
+        public String toFlags() {
+            return "--min-rate " + this.rate + " --max-rate " + this.rate;
+        }
+
+        /**
+         * Return the leased rate to the budget, once the run has finished
+         */
+        public void release() {
+            RateBudget.this.release(this);
+        }
+    }
+
+    private final int packetsPerSecond;
+    private final int slots; //maximum concurrent nmap runs
+    private final int fairShare; //rate every slot is guaranteed once earlier leases are released
+    private final Demand demand;
+
+    private int leased = 0; //guarded by this
+    private int active = 0; //leases held, guarded by this
+    private double leasedIntegral = 0; //leased pps times nanos since the last report, guarded by this
+    private long integralStart = System.nanoTime();
+    private long lastChange = this.integralStart;
+
+    /**
+     * @param packetsPerSecond total rate shared by all runs
+     * @param slots maximum concurrent nmap runs, i.e. scanning threads
+     * @param demand source of the number of scans running or waiting for a thread
+     */
+    public RateBudget(int packetsPerSecond, int slots, Demand demand) {
+        this.packetsPerSecond = packetsPerSecond;
+        this.slots = Math.max(1, slots);
+        this.fairShare = Math.max(1, packetsPerSecond / this.slots);
+        this.demand = demand;
+        budgetGauge.set(packetsPerSecond);
+        leasedGauge.set(0);
+    }
+
+    /**
+     * Lease a share of the budget for one nmap run, waiting while less than a fair share is unleased
+     * @return lease to release when the run finishes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized Lease acquire() throws InterruptedException {
+        if (this.packetsPerSecond - this.leased < this.fairShare) {
+            waits.inc();
+            long start = System.nanoTime();
+            while (this.packetsPerSecond - this.leased < this.fairShare) {
+                wait();
+            }
+            Logger.logDebug(String.format("Waited %d ms for scan rate", (System.nanoTime() - start) / 1000000));
+        }
+
+        //split what is left over the scans expected to be running alongside this one
+        int remaining = this.packetsPerSecond - this.leased;
+        int expected = Math.max(this.active + 1, Math.min(this.slots, this.demand.get()));
+        int rate = Math.max(this.fairShare, remaining / (expected - this.active));
+
+        accumulate();
+        this.leased += rate;
+        this.active++;
+        leasedGauge.set(this.leased);
+        Logger.logDebug(String.format("Leased %d pps to scan, %d of %d pps leased by %d scans",
+                rate, this.leased, this.packetsPerSecond, this.active));
+        return new Lease(rate);
+    }
+
+    private synchronized void release(Lease lease) {
+        if (lease.released) {
+            return;
+        }
+        lease.released = true;
+        accumulate();
+        this.leased -= lease.rate;
+        this.active--;
+        leasedGauge.set(this.leased);
+        notifyAll();
+    }
+
+    private void accumulate() {
+        long now = System.nanoTime();
+        this.leasedIntegral += (double) this.leased * (now - this.lastChange);
+        this.lastChange = now;
+    }
+
+    /**
+     * Average leased rate since the previous call, then start a new period
+     * @return average packets per second leased
+     */
+    public synchronized double takeAverageLeased() {
+        accumulate();
+        long elapsed = this.lastChange - this.integralStart;
+        double average = elapsed > 0 ? this.leasedIntegral / elapsed : this.leased;
+        this.leasedIntegral = 0;
+        this.integralStart = this.lastChange;
+        return average;
+    }
+
+    public int getPacketsPerSecond() {
+        return this.packetsPerSecond;
+    }
+
+    /**
+     * @return packets per second currently leased
+     */
+    public synchronized int getLeased() {
+        return this.leased;
+    }
+}
@@ -0,0 +1,28 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Performs the scanning step for a batch of host profiles sharing a port profile.
+ * Engines are shared by all scan threads and must be thread-safe.
+ */
+public interface ScanEngine {
+
+    /**
+     * Scan a batch of host profiles
+     * @param hostProfiles host profiles to scan, all sharing the same port profile
+     * @return single-host results mapped by host profile host, a host profile that wasn't found up is given a down snapshot
+     * @throws ScanException if the batch could not be scanned
+     * @throws InterruptedException if interrupted while scanning
+     */
+    HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException;
+
+    /**
+     * @return engine name, for logging
+     */
+    String getName();
+}
@@ -0,0 +1,14 @@
+package portwatch.core.watch.scan;
+
+/**
+ * Exception to be thrown when a scan engine fails to scan a batch of hosts.
+ */
+public class ScanException extends Exception {
+    public ScanException(String message) {
+        super(message);
+    }
+
+    public ScanException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
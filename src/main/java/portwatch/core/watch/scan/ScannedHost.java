@@ -0,0 +1,31 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.util.ArrayList;
+
+/**
+ * A single host parsed from nmap output: the names it was reported under and its compact scan result.
+ */
+public class ScannedHost {
+
+    private ArrayList<String> names; //addresses and hostnames, lower case
+    private HostSnapshot snapshot;
+
+    /**
+     * @param names addresses and hostnames the host was reported under
+     * @param snapshot host's scan result
+     */
+    public ScannedHost(ArrayList<String> names, HostSnapshot snapshot) {
+        this.names = names;
+        this.snapshot = snapshot;
+    }
+
+    public ArrayList<String> getNames() {
+        return this.names;
+    }
+
+    public HostSnapshot getSnapshot() {
+        return this.snapshot;
+    }
+}
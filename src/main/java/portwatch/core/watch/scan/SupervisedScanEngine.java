@@ -0,0 +1,199 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.config.ScanConfig;
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Counter;
+import portwatch.core.metrics.Metrics;
+import portwatch.core.watch.model.HostSnapshot;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Supervises another engine's scans. Each attempt is given a deadline, after which the scanning thread is
+ * interrupted, which engines answer by stopping the scan and nmap runs by destroying the nmap process.
+ * Failed and timed out attempts are retried with exponential backoff before the scan is reported as failed.
+ */
+public class SupervisedScanEngine implements ScanEngine {
+
+    private static final int MAX_BACKOFF_SECONDS = 3600;
+
+    private static final Counter timeouts = Metrics.counter("portwatch_scan_timeouts_total",
+            "Scan attempts stopped at their deadline", null);
+    private static final Counter retries = Metrics.counter("portwatch_scan_retries_total",
+            "Failed or timed out scan attempts that were retried", null);
+
+    private static final ScheduledThreadPoolExecutor deadlines = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "scan-supervisor");
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    static {
+        deadlines.setRemoveOnCancelPolicy(true); //most scans finish well before their deadline
+    }
+
+    /**
+     * Deadline of one scan attempt, interrupts the scanning thread if it expires first
+     */
+    private static class Deadline implements Runnable {
+
+        private final Thread thread;
+        private boolean expired = false; //guarded by this
+        private boolean finished = false; //guarded by this
+        private ScheduledFuture<?> future;
+
+        Deadline(Thread thread) {
+            this.thread = thread;
+        }
+
+        @Override
+        public synchronized void run() {
+            if (!this.finished) {
+                this.expired = true;
+                this.thread.interrupt();
+            }
+        }
+
+        /**
+         * End the attempt, clearing an interrupt made by the deadline so it can't reach the thread's next task
+         * @return true if the deadline expired
+         */
+        synchronized boolean finish() {
+            this.finished = true;
+            this.future.cancel(false);
+            if (this.expired) {
+                Thread.interrupted();
+            }
+            return this.expired;
+        }
+    }
+
+    /**
+     * A scan attempt to supervise
+     */
+    private interface Attempt {
+        HashMap<String, HostSnapshot> run() throws ScanException, InterruptedException;
+    }
+
+    private ScanEngine engine;
+    private int timeoutSeconds; //0 if attempts have no deadline
+    private int retryCount;
+    private int backoffSeconds;
+
+    /**
+     * @param engine engine to supervise
+     * @param config scanning configuration, its scan timeout, retries and retry backoff are used
+     */
+    public SupervisedScanEngine(ScanEngine engine, ScanConfig config) {
+        this.engine = engine;
+        this.timeoutSeconds = config.getScanTimeoutSeconds();
+        this.retryCount = config.getScanRetries();
+        this.backoffSeconds = config.getRetryBackoffSeconds();
+    }
+
+    @Override
+    public HashMap<String, HostSnapshot> scan(final ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        Attempt attempt = new Attempt() {
+            @Override
+            public HashMap<String, HostSnapshot> run() throws ScanException, InterruptedException {
+                return engine.scan(hostProfiles);
+            }
+        };
+
+        for (int retry = 0; ; retry++) {
+            try {
+                return supervise(attempt);
+            } catch (ScanException e) {
+                if (retry == this.retryCount) {
+                    if (retry == 0) {
+                        throw e;
+                    }
+                    throw new ScanException(String.format("%s (after %d attempts)", e.getMessage(), retry + 1), e);
+                }
+                long delaySeconds = Math.min(MAX_BACKOFF_SECONDS, (long) this.backoffSeconds << Math.min(retry, 20));
+                retries.inc();
+                Logger.logDebug(String.format("Scan failed: %s, retrying in %d s", e.getMessage(), delaySeconds));
+                Thread.sleep(delaySeconds * 1000);
+            }
+        }
+    }
+
+    /**
+     * Probe liveness with the supervised engine under the scan deadline.
+     * Sweeps aren't retried, a failed sweep only means every host is port scanned.
+     * @param hostProfiles host profiles to probe
+     * @return portless snapshots mapped by host profile host
+     * @throws ScanException if the probe failed or timed out
+     * @throws InterruptedException if interrupted while probing
+     */
+    public HashMap<String, HostSnapshot> probeLiveness(final ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        final LivenessProber prober = (LivenessProber) this.engine;
+        return supervise(new Attempt() {
+            @Override
+            public HashMap<String, HostSnapshot> run() throws ScanException, InterruptedException {
+                return prober.probeLiveness(hostProfiles);
+            }
+        });
+    }
+
+    /**
+     * Run an attempt on the calling thread, interrupting it at the deadline
+     * @param attempt attempt to run
+     * @return attempt's results
+     * @throws ScanException if the attempt failed or timed out
+     * @throws InterruptedException if interrupted other than by the deadline
+     */
+    private HashMap<String, HostSnapshot> supervise(Attempt attempt) throws ScanException, InterruptedException {
+        if (this.timeoutSeconds == 0) {
+            return attempt.run();
+        }
+
+        Deadline deadline = new Deadline(Thread.currentThread());
+        synchronized (deadline) { //the deadline can't fire before its future is set
+            deadline.future = deadlines.schedule(deadline, this.timeoutSeconds, TimeUnit.SECONDS);
+        }
+        HashMap<String, HostSnapshot> results;
+        try {
+            results = attempt.run();
+        } catch (InterruptedException e) {
+            if (deadline.finish()) {
+                timeouts.inc();
+                throw new ScanException(String.format("Scan timed out after %d s", this.timeoutSeconds));
+            }
+            throw e;
+        } catch (ScanException e) {
+            if (deadline.finish()) {
+                //the engine reported the stopped scan as a failure
+                timeouts.inc();
+                throw new ScanException(String.format("Scan timed out after %d s", this.timeoutSeconds), e);
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            deadline.finish();
+            throw e;
+        }
+        deadline.finish(); //results that arrived just as the deadline expired are still good
+        return results;
+    }
+
+    /**
+     * @return supervised engine
+     */
+    public ScanEngine getEngine() {
+        return this.engine;
+    }
+
+    @Override
+    public String getName() {
+        return this.engine.getName();
+    }
+}
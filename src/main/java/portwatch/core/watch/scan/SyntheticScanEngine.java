@@ -0,0 +1,155 @@
+package portwatch.core.watch.scan;
+
+import portwatch.core.config.SyntheticConfig;
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+import portwatch.core.watch.model.ServiceTable;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Fabricates scan results without touching the network, for load testing scheduling, change detection and
+ * integrations with many hosts. Each host starts with a random set of open ports and changes or goes down with
+ * the configured probabilities. Results only depend on the seed and how many times each host was scanned, so
+ * runs are reproducible. Scans take a log-normally distributed time.
+ */
+public class SyntheticScanEngine implements ScanEngine {
+
+    private static final String[] SERVICES = {
+            "ssh OpenSSH 7.4", "http nginx 1.14.0", "https Apache httpd 2.4.29", "mysql MySQL 5.7.23", "smtp Postfix smtpd"
+    };
+
+    /**
+     * Fabricated state of a single host
+     */
+    private static class HostState {
+        private int scans = 0;
+        private TreeMap<Integer, Integer> openPorts; //service id by open port, null until first scan
+    }
+
+    private SyntheticConfig config;
+    private int[] serviceIds;
+    private ConcurrentHashMap<String, HostState> hosts;
+
+    /**
+     * @param config synthetic engine configuration
+     */
+    public SyntheticScanEngine(SyntheticConfig config) {
+        this.config = config;
+        this.serviceIds = new int[SERVICES.length];
+        for (int i = 0; i < SERVICES.length; i++) {
+            this.serviceIds[i] = ServiceTable.idOf(SERVICES[i]);
+        }
+        this.hosts = new ConcurrentHashMap<String, HostState>();
+    }
+
+    /**
+     * The batch takes as long as its slowest host.
+     */
+    @Override
+    public HashMap<String, HostSnapshot> scan(ArrayList<HostProfile> hostProfiles) throws ScanException, InterruptedException {
+        int[] ports = hostProfiles.get(0).getPortProfile().getPorts();
+        HashMap<String, HostSnapshot> hostResults = new HashMap<String, HostSnapshot>();
+        PortSnapshot.Builder builder = new PortSnapshot.Builder();
+        long latencyMillis = 0;
+
+        for (HostProfile hostProfile : hostProfiles) {
+            HostState state = getState(hostProfile.getHost());
+            synchronized (state) {
+                Random random = new Random(mix(this.config.getSeed(), hostProfile.getHost(), state.scans++));
+                latencyMillis = Math.max(latencyMillis, sampleLatency(random));
+
+                if (state.openPorts == null) {
+                    state.openPorts = new TreeMap<Integer, Integer>();
+                    for (int i = 0; i < Math.min(this.config.getOpenPorts(), ports.length); i++) {
+                        togglePort(state, ports, random, true);
+                    }
+                } else if (ports.length > 0 && random.nextDouble() < this.config.getChangeRate()) {
+                    int changes = 1 + random.nextInt(3);
+                    for (int i = 0; i < changes; i++) {
+                        togglePort(state, ports, random, false);
+                    }
+                }
+
+                long timestamp = System.currentTimeMillis();
+                if (random.nextDouble() < this.config.getDownRate()) {
+                    hostResults.put(hostProfile.getHost(), HostSnapshot.down(timestamp));
+                } else {
+                    builder.reset();
+                    for (Map.Entry<Integer, Integer> port : state.openPorts.entrySet()) {
+                        builder.add(port.getKey(), PortSnapshot.OPEN, port.getValue());
+                    }
+                    hostResults.put(hostProfile.getHost(), new HostSnapshot(timestamp, true, builder.build()));
+                }
+            }
+        }
+
+        Thread.sleep(latencyMillis);
+        return hostResults;
+    }
+
+    private HostState getState(String host) {
+        HostState state = this.hosts.get(host);
+        if (state == null) {
+            HostState created = new HostState();
+            state = this.hosts.putIfAbsent(host, created);
+            if (state == null) {
+                state = created;
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Open a random port, or close it if it is open
+     * @param state host state to change
+     * @param ports ports in the host's profile
+     * @param random source of randomness
+     * @param openOnly true to only open ports, picking another port if the chosen one is already open
+     */
+    private void togglePort(HostState state, int[] ports, Random random, boolean openOnly) {
+        int port = ports[random.nextInt(ports.length)];
+        while (openOnly && state.openPorts.containsKey(port)) {
+            port = ports[random.nextInt(ports.length)];
+        }
+        if (state.openPorts.remove(port) == null) {
+            state.openPorts.put(port, this.serviceIds[random.nextInt(this.serviceIds.length)]);
+        }
+    }
+
+    /**
+     * @param random source of randomness
+     * @return log-normally distributed scan duration with the configured mean and standard deviation, millis
+     */
+    private long sampleLatency(Random random) {
+        double mean = this.config.getLatencyMillis();
+        double stddev = this.config.getLatencyStddevMillis();
+        if (mean <= 0 || stddev <= 0) {
+            return (long) mean;
+        }
+        double sigmaSquared = Math.log(1 + (stddev * stddev) / (mean * mean));
+        double mu = Math.log(mean) - sigmaSquared / 2;
+        return (long) Math.exp(mu + Math.sqrt(sigmaSquared) * random.nextGaussian());
+    }
+
+    /**
+     * @return seed of a host's nth scan
+     */
+    private static long mix(long seed, String host, int scan) {
+        long mixed = (seed * 31 + host.hashCode()) * 0x9E3779B97F4A7C15L + scan;
+        mixed ^= mixed >>> 33;
+        mixed *= 0xFF51AFD7ED558CCDL;
+        return mixed ^ (mixed >>> 33);
+    }
+
+    @Override
+    public String getName() {
+        return "synthetic";
+    }
+}
@@ -0,0 +1,111 @@
+package portwatch.core.watch.threading;
+
+import portwatch.core.config.profile.host.Ipv4;
+import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Gauge;
+import portwatch.core.metrics.Metrics;
+
+import java.util.HashMap;
+
+/**
+ * Adaptive per-host scan intervals.
+ * A host that changed is rescanned at the minimum interval, a host that stayed stable backs off exponentially
+ * up to the maximum interval. Intervals of address hosts are kept by packed address, so hosts of large ranges
+ * cost a map slot rather than a String and map entry each.
+ */
+public class AdaptiveInterval {
+
+    private static final Gauge intervalGauge = Metrics.gauge("portwatch_adaptive_interval_seconds",
+            "Current adaptive scan interval per host, hosts of address ranges aren't exported", "host");
+
+    private long minMillis;
+    private long maxMillis;
+    private double backoff; //interval multiplier applied after each stable scan
+
+    private LongMap addressIntervals = new LongMap(); //current interval per address host, millis, guarded by this
+    private HashMap<String, Long> namedIntervals = new HashMap<String, Long>(); //current interval per named host, guarded by this
+
+    /**
+     * @param minSeconds interval used after a change
+     * @param maxSeconds ceiling for backed-off intervals
+     * @param backoff interval multiplier applied after each stable scan
+     */
+    public AdaptiveInterval(int minSeconds, int maxSeconds, double backoff) {
+        this.minMillis = minSeconds * 1000L;
+        this.maxMillis = maxSeconds * 1000L;
+        this.backoff = backoff;
+    }
+
+    /**
+     * Adjust a host's interval based on its latest scan outcome
+     * @param host host that was scanned
+     * @param baseMillis host's configured interval, used as the starting point
+     * @param changed true if the scan detected a change
+     * @param exported true to export the host's interval as a metric, hosts of address ranges are only logged
+     * @return host's new interval, millis
+     */
+    public synchronized long record(String host, long baseMillis, boolean changed, boolean exported) {
+        long current = get(host);
+        long interval;
+        if (changed) {
+            interval = this.minMillis;
+        } else if (current < 0) {
+            interval = clamp(baseMillis);
+        } else {
+            interval = clamp((long) (current * this.backoff));
+        }
+        long address = Ipv4.parseCanonical(host);
+        if (address >= 0) {
+            this.addressIntervals.put(address, interval);
+        } else {
+            this.namedIntervals.put(host, interval);
+        }
+        if (exported) {
+            intervalGauge.set(host, interval / 1000.0);
+        }
+
+        Logger.logDebug(String.format("%s %s, next scan in %d s", host, changed ? "changed" : "stable", interval / 1000));
+        return interval;
+    }
+
+    /**
+     * @param host host to get interval for
+     * @param baseMillis host's configured interval, returned if the host has no recorded outcome yet
+     * @return host's current interval, millis
+     */
+    public synchronized long getIntervalMillis(String host, long baseMillis) {
+        long current = get(host);
+        return current >= 0 ? current : clamp(baseMillis);
+    }
+
+    /**
+     * Forget a host's interval
+     * @param host host no longer scanned
+     */
+    public synchronized void remove(String host) {
+        long address = Ipv4.parseCanonical(host);
+        if (address >= 0) {
+            this.addressIntervals.remove(address);
+        } else {
+            this.namedIntervals.remove(host);
+        }
+        intervalGauge.remove(host);
+    }
+
+    /**
+     * @param host host to get interval for
+     * @return host's current interval, millis, -1 if the host has no recorded outcome yet
+     */
+    private long get(String host) {
+        long address = Ipv4.parseCanonical(host);
+        if (address >= 0) {
+            return this.addressIntervals.get(address, -1);
+        }
+        Long current = this.namedIntervals.get(host);
+        return current != null ? current : -1;
+    }
+
+    private long clamp(long millis) {
+        return Math.max(this.minMillis, Math.min(this.maxMillis, millis));
+    }
+}
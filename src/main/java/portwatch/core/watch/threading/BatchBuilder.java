@@ -0,0 +1,52 @@
+package portwatch.core.watch.threading;
+
+import portwatch.core.config.profile.host.HostProfile;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+
+/**
+ * Groups a stream of host profiles into batches that can share a single scan.
+ * Profiles with equal batch keys are batched together, a batch is handed out as soon as it is full.
+ */
+class BatchBuilder {
+
+    private int batchSize;
+    private LinkedHashMap<String, ArrayList<HostProfile>> openBatches; //batches still being filled, by key
+
+    /**
+     * @param batchSize maximum host profiles per batch
+     */
+    BatchBuilder(int batchSize) {
+        this.batchSize = batchSize;
+        this.openBatches = new LinkedHashMap<String, ArrayList<HostProfile>>();
+    }
+
+    /**
+     * @param key batch key of host profile
+     * @param hostProfile host profile to batch
+     * @return batch filled by host profile, null if its batch isn't full yet
+     */
+    ArrayList<HostProfile> add(String key, HostProfile hostProfile) {
+        ArrayList<HostProfile> batch = this.openBatches.get(key);
+        if (batch == null) {
+            batch = new ArrayList<HostProfile>();
+            this.openBatches.put(key, batch);
+        }
+        batch.add(hostProfile);
+        if (batch.size() >= this.batchSize) {
+            this.openBatches.remove(key); //batch full, start a new one for this key
+            return batch;
+        }
+        return null;
+    }
+
+    /**
+     * @return batches not yet full, in order of their first host profile
+     */
+    ArrayList<ArrayList<HostProfile>> flush() {
+        ArrayList<ArrayList<HostProfile>> batches = new ArrayList<ArrayList<HostProfile>>(this.openBatches.values());
+        this.openBatches.clear();
+        return batches;
+    }
+}
@@ -0,0 +1,150 @@
+package portwatch.core.watch.threading;
+
+import java.util.Arrays;
+
+/**
+ * Independently scheduled hosts ordered by due time.
+ * A binary min-heap over parallel arrays of due times and host keys, indexed by key so a host can be
+ * found, rescheduled or removed without a scan. Hosts of address ranges are keyed by packed address, so
+ * scheduling a range costs a few primitives per address rather than a profile and queue entry per host.
+ * Not thread-safe.
+ */
+class HostSchedule {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private long[] dueMillis = new long[INITIAL_CAPACITY]; //heap ordered, epoch millis
+    private long[] keys = new long[INITIAL_CAPACITY]; //host key of each heap slot
+    private int size = 0;
+    private LongMap positions = new LongMap(); //heap slot per host key
+
+    /**
+     * Schedule a host, replacing its due time if it is already scheduled
+     * @param key host key
+     * @param dueMillis time the host is due to be scanned, epoch millis
+     */
+    void add(long key, long dueMillis) {
+        int position = (int) this.positions.get(key, -1);
+        if (position >= 0) {
+            long previous = this.dueMillis[position];
+            this.dueMillis[position] = dueMillis;
+            if (dueMillis < previous) {
+                siftUp(position);
+            } else {
+                siftDown(position);
+            }
+            return;
+        }
+        if (this.size == this.keys.length) {
+            this.dueMillis = Arrays.copyOf(this.dueMillis, this.size * 2);
+            this.keys = Arrays.copyOf(this.keys, this.size * 2);
+        }
+        this.dueMillis[this.size] = dueMillis;
+        this.keys[this.size] = key;
+        this.positions.put(key, this.size);
+        siftUp(this.size++);
+    }
+
+    /**
+     * @param key host key
+     * @return true if the host is scheduled
+     */
+    boolean contains(long key) {
+        return this.positions.containsKey(key);
+    }
+
+    /**
+     * @param key host key to unschedule
+     * @return true if the host was scheduled
+     */
+    boolean remove(long key) {
+        int position = (int) this.positions.get(key, -1);
+        if (position < 0) {
+            return false;
+        }
+        removeAt(position);
+        return true;
+    }
+
+    /**
+     * @return due time of the earliest host, epoch millis, Long.MAX_VALUE if no host is scheduled
+     */
+    long peekDueMillis() {
+        return this.size > 0 ? this.dueMillis[0] : Long.MAX_VALUE;
+    }
+
+    /**
+     * Unschedule the earliest host
+     * @return key of the earliest host, must be called with a host scheduled
+     */
+    long poll() {
+        long key = this.keys[0];
+        removeAt(0);
+        return key;
+    }
+
+    boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    private void removeAt(int position) {
+        this.positions.remove(this.keys[position]);
+        int last = --this.size;
+        if (position == last) {
+            return;
+        }
+        long previous = this.dueMillis[position];
+        move(last, position);
+        if (this.dueMillis[position] < previous) {
+            siftUp(position);
+        } else {
+            siftDown(position);
+        }
+    }
+
+    private void siftUp(int position) {
+        long due = this.dueMillis[position];
+        long key = this.keys[position];
+        while (position > 0) {
+            int parent = (position - 1) >>> 1;
+            if (this.dueMillis[parent] <= due) {
+                break;
+            }
+            move(parent, position);
+            position = parent;
+        }
+        place(position, due, key);
+    }
+
+    private void siftDown(int position) {
+        long due = this.dueMillis[position];
+        long key = this.keys[position];
+        int half = this.size >>> 1;
+        while (position < half) {
+            int child = 2 * position + 1;
+            if (child + 1 < this.size && this.dueMillis[child + 1] < this.dueMillis[child]) {
+                child++;
+            }
+            if (due <= this.dueMillis[child]) {
+                break;
+            }
+            move(child, position);
+            position = child;
+        }
+        place(position, due, key);
+    }
+
+    private void move(int from, int to) {
+        place(to, this.dueMillis[from], this.keys[from]);
+    }
+
+    private void place(int position, long due, long key) {
+        this.dueMillis[position] = due;
+        this.keys[position] = key;
+        this.positions.put(key, position);
+    }
+}
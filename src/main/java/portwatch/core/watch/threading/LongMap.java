@@ -0,0 +1,135 @@
+package portwatch.core.watch.threading;
+
+import java.util.Arrays;
+
+/**
+ * Open addressing hash map from long keys to long values.
+ * Holds per-host scheduling state keyed by packed address in flat primitive arrays, avoiding a String,
+ * map entry and boxed value per host of an address range. Long.MIN_VALUE can't be used as a key.
+ * Not thread-safe.
+ */
+class LongMap {
+
+    private static final int INITIAL_CAPACITY = 16; //power of two
+    private static final float LOAD_FACTOR = 0.6f;
+    private static final long EMPTY = Long.MIN_VALUE; //key of an empty slot
+
+    private long[] keys;
+    private long[] values;
+    private int size = 0;
+
+    LongMap() {
+        this.keys = newKeys(INITIAL_CAPACITY);
+        this.values = new long[INITIAL_CAPACITY];
+    }
+
+    /**
+     * @param key key
+     * @param absent value returned if key is absent
+     * @return value of key, absent if key is absent
+     */
+    long get(long key, long absent) {
+        int mask = this.keys.length - 1;
+        for (int slot = hash(key) & mask; this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return this.values[slot];
+            }
+        }
+        return absent;
+    }
+
+    /**
+     * @param key key
+     * @return true if key is present
+     */
+    boolean containsKey(long key) {
+        int mask = this.keys.length - 1;
+        for (int slot = hash(key) & mask; this.keys[slot] != EMPTY; slot = (slot + 1) & mask) {
+            if (this.keys[slot] == key) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @param key key, not Long.MIN_VALUE
+     * @param value value to map key to
+     */
+    void put(long key, long value) {
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while (this.keys[slot] != EMPTY) {
+            if (this.keys[slot] == key) {
+                this.values[slot] = value;
+                return;
+            }
+            slot = (slot + 1) & mask;
+        }
+        this.keys[slot] = key;
+        this.values[slot] = value;
+        if (++this.size > this.keys.length * LOAD_FACTOR) {
+            resize();
+        }
+    }
+
+    /**
+     * @param key key to remove
+     * @return true if key was present
+     */
+    boolean remove(long key) {
+        int mask = this.keys.length - 1;
+        int slot = hash(key) & mask;
+        while (this.keys[slot] != EMPTY && this.keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        if (this.keys[slot] == EMPTY) {
+            return false;
+        }
+        this.keys[slot] = EMPTY;
+        this.size--;
+
+        //shift following entries of the probe run back so lookups don't stop at the gap
+        int gap = slot;
+        for (int next = (gap + 1) & mask; this.keys[next] != EMPTY; next = (next + 1) & mask) {
+            int home = hash(this.keys[next]) & mask;
+            //entry can fill the gap if its home slot isn't cyclically between the gap and itself
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                this.keys[gap] = this.keys[next];
+                this.values[gap] = this.values[next];
+                this.keys[next] = EMPTY;
+                gap = next;
+            }
+        }
+        return true;
+    }
+
+    int size() {
+        return this.size;
+    }
+
+    private void resize() {
+        long[] oldKeys = this.keys;
+        long[] oldValues = this.values;
+        this.keys = newKeys(oldKeys.length * 2);
+        this.values = new long[oldValues.length * 2];
+        this.size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY) {
+                put(oldKeys[i], oldValues[i]);
+            }
+        }
+    }
+
+    private static long[] newKeys(int capacity) {
+        long[] keys = new long[capacity];
+        Arrays.fill(keys, EMPTY);
+        return keys;
+    }
+
+    private static int hash(long key) {
+        //addresses of a range differ in their low bits, spread them over the whole table
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
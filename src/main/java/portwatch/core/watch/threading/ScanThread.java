@@ -1,90 +1,188 @@
 package portwatch.core.watch.threading;
 
-import org.nmap4j.Nmap4j;
-import org.nmap4j.core.nmap.NMapExecutionException;
-import org.nmap4j.core.nmap.NMapInitializationException;
-import org.nmap4j.data.NMapRun;
-
-import org.nmap4j.parser.NMapXmlHandler;
-import org.nmap4j.parser.OnePassParser;
-import portwatch.core.config.ScanConfig;
 import portwatch.core.config.profile.host.HostProfile;
 import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Counter;
+import portwatch.core.metrics.Histogram;
+import portwatch.core.metrics.Metrics;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.scan.ScanEngine;
+import portwatch.core.watch.scan.ScanException;
 
-import java.util.Observable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
 
 /**
- * Thread for scanning a single host profile
+ * Task for scanning a batch of host profiles sharing a port profile with a scan engine.
+ * Executed by ScanThreadManager's worker pool.
  */
-public class ScanThread extends Observable implements Runnable {
+public class ScanThread implements Runnable {
+
+    private static final Histogram scanDuration = Metrics.histogram("portwatch_scan_duration_seconds",
+            "Duration of completed scans per host, or per address range for its hosts; hosts scanned in one batch share its duration",
+            "host", Histogram.DURATION_BUCKETS);
+    private static final Counter scanFailures = Metrics.counter("portwatch_scan_failures_total",
+            "Scans that failed to complete", null);
 
     private int id;
-    private HostProfile hostProfile;
-    private ScanConfig config;
+    private ArrayList<HostProfile> hostProfiles;
+    private ScanEngine engine;
 
-    private NMapRun result; //scan result
+    private HashMap<String, HostSnapshot> results; //single-host scan results, mapped by host profile host, null if scan failed
+    private String error; //reason the scan failed, null if it completed or was interrupted
+    private long durationNanos = 0; //time taken by completed scan
 
     /**
-     * @param id index in thread pool
-     * @param hostProfile host profile to scan
-     * @param config scanning configuration
+     * @param id batch index within scan cycle
+     * @param hostProfiles host profiles to scan, all sharing the same port profile
+     * @param engine engine to scan with
      */
-    public ScanThread(int id, HostProfile hostProfile, ScanConfig config) {
+    public ScanThread(int id, ArrayList<HostProfile> hostProfiles, ScanEngine engine) {
         this.id = id;
-        this.hostProfile = hostProfile;
-        this.config = config;
+        this.hostProfiles = hostProfiles;
+        this.engine = engine;
     }
 
     /**
-     * Run host profile scan
+     * Create an already completed scan from results obtained elsewhere
+     * @param id batch index within scan cycle
+     * @param hostProfiles host profiles the results are for
+     * @param results single-host results mapped by host profile host
+     * @return completed scan
      */
-    public void run() {
-        Logger.logDebug(String.format("[%d] Scanning %s", this.id, this.hostProfile.getHost()));
+    static ScanThread completed(int id, ArrayList<HostProfile> hostProfiles, HashMap<String, HostSnapshot> results) {
+        return completed(id, hostProfiles, results, 0);
+    }
 
-        //initialize nmap with scan settings
-        Nmap4j nmap = new Nmap4j(this.config.getNmapPath());
-        nmap.includeHosts(this.hostProfile.getHost());
+    /**
+     * Create an already completed scan from results obtained elsewhere
+     * @param id batch index within scan cycle
+     * @param hostProfiles host profiles the results are for
+     * @param results single-host results mapped by host profile host
+     * @param durationNanos time taken to obtain results
+     * @return completed scan
+     */
+    static ScanThread completed(int id, ArrayList<HostProfile> hostProfiles, HashMap<String, HostSnapshot> results,
+                                long durationNanos) {
+        ScanThread scanThread = new ScanThread(id, hostProfiles, null);
+        scanThread.results = results;
+        scanThread.durationNanos = durationNanos;
+        return scanThread;
+    }
 
-        //add flags based on configuration
-        if (this.config.getScanType() == ScanConfig.ScanType.VERSION) {
-            nmap.addFlags(String.format("-sV -p%s --min-rate 10000", this.hostProfile.getPortProfile().toString()));
-        } else if (this.config.getScanType() == ScanConfig.ScanType.STEALTH) {
-            nmap.addFlags(String.format("-sS -p%s --min-rate 10000", this.hostProfile.getPortProfile().toString()));
+    /**
+     * Create an already failed scan
+     * @param id batch index within scan cycle
+     * @param hostProfiles host profiles that couldn't be scanned
+     * @param error reason the scan failed
+     * @return failed scan
+     */
+    static ScanThread failed(int id, ArrayList<HostProfile> hostProfiles, String error) {
+        ScanThread scanThread = new ScanThread(id, hostProfiles, null);
+        scanThread.error = error;
+        return scanThread;
+    }
+
+    /**
+     * Drop a host's scan duration metrics
+     * @param hostProfile host profile no longer scanned
+     */
+    static void removeHost(HostProfile hostProfile) {
+        if (hostProfile.hasOwnMetrics()) { //an address range's metrics are kept, bounded by the entries ever configured
+            scanDuration.remove(hostProfile.getHost());
         }
+    }
+
+    /**
+     * Run host profile batch scan
+     */
+    public void run() {
+        Logger.logDebug(String.format("[%d] Scanning %s", this.id, getHostsString()));
 
-        //attempt execution of scan and retrieval of results
+        long startNanos = System.nanoTime();
         try {
-            nmap.execute();
-            if (nmap.getResult() != null) {
-                this.result = nmap.getResult();
-            } else {
-                /*
-                Occasionally nmap4j will return a null result when one of the hosts being scanned is down (bug).
-                When this happens, the raw output can be retrieved and fed through nmap4j's parser to retrieve the result.
-                 */
-                OnePassParser parser = new OnePassParser();
-                this.result = parser.parse(nmap.getExecutionResults().getOutput(), OnePassParser.STRING_INPUT);
+            this.results = this.engine.scan(this.hostProfiles);
+            this.durationNanos = System.nanoTime() - startNanos;
+            for (HostProfile hostProfile : this.hostProfiles) {
+                scanDuration.observeNanos(hostProfile.getMetricLabel(), this.durationNanos);
             }
 
-            Logger.logDebug(String.format("[%d] Scan of %s completed", this.id, this.hostProfile.getHost()));
+            Logger.logDebug(String.format("[%d] Scan of %s completed in %d ms", this.id, getHostsString(),
+                    TimeUnit.NANOSECONDS.toMillis(this.durationNanos)));
+        } catch (ScanException e) {
+            fail(e.getMessage());
+        } catch (RuntimeException e) {
+            fail(e.toString()); //an engine bug fails the scan rather than the cycle
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @param error reason the scan failed
+     */
+    private void fail(String error) {
+        this.error = error;
+        scanFailures.inc();
+        Logger.logError(String.format("[%d] %s", this.id, error), getClass());
+    }
 
-            //scan completed, notify thread manager
-            this.setChanged();
-            this.notifyObservers();
-        } catch (NMapExecutionException | NMapInitializationException e) {
-            Logger.logError(e.getMessage(), getClass());
+    /**
+     * @return space-separated list of the batch's hosts
+     */
+    private String getHostsString() {
+        StringBuilder hosts = new StringBuilder();
+        for (HostProfile hostProfile : this.hostProfiles) {
+            if (hosts.length() > 0) {
+                hosts.append(' ');
+            }
+            hosts.append(hostProfile.getHost());
         }
+        return hosts.toString();
+    }
+
+    /**
+     * @return true if scan completed and results are available
+     */
+    public boolean isCompleted() {
+        return this.results != null;
+    }
+
+    /**
+     * @return true if scan failed, as opposed to completing or being interrupted
+     */
+    public boolean isFailed() {
+        return this.error != null;
+    }
+
+    /**
+     * @return reason the scan failed, null if it didn't
+     */
+    public String getError() {
+        return this.error;
+    }
+
+    /**
+     * @return time taken by completed scan, nanoseconds
+     */
+    public long getDurationNanos() {
+        return this.durationNanos;
     }
 
     public int getId() {
         return this.id;
     }
 
-    public HostProfile getHostProfile() {
-        return this.hostProfile;
+    public ArrayList<HostProfile> getHostProfiles() {
+        return this.hostProfiles;
     }
 
-    public NMapRun getResult() {
-        return this.result;
+    /**
+     * @param hostProfile host profile in this batch
+     * @return single-host scan result for host profile
+     */
+    public HostSnapshot getResult(HostProfile hostProfile) {
+        return this.results.get(hostProfile.getHost());
     }
 }
@@ -1,44 +1,191 @@
 package portwatch.core.watch.threading;
 
+import portwatch.core.cluster.ClusterScanEngine;
+import portwatch.core.config.HostProfileDiff;
 import portwatch.core.config.ScanConfig;
+import portwatch.core.config.profile.host.AddressRanges;
+import portwatch.core.config.profile.host.HostGroup;
 import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.config.profile.host.Ipv4;
 import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Counter;
+import portwatch.core.metrics.Gauge;
+import portwatch.core.metrics.Histogram;
+import portwatch.core.metrics.Metrics;
+import portwatch.core.watch.history.ScanHistory;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.scan.ConnectScanEngine;
+import portwatch.core.watch.scan.HybridScanEngine;
+import portwatch.core.watch.scan.LivenessProber;
+import portwatch.core.watch.scan.NmapScanEngine;
+import portwatch.core.watch.scan.RateBudget;
+import portwatch.core.watch.scan.ScanEngine;
+import portwatch.core.watch.scan.ScanException;
+import portwatch.core.watch.scan.SupervisedScanEngine;
+import portwatch.core.watch.scan.SyntheticScanEngine;
 
+import java.io.IOException;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
 import java.util.Observable;
-import java.util.Observer;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
- * Manages scan cycles, pool of scanning threads.
+ * Manages scan scheduling, reusable pool of scanning worker threads.
+ * Hosts are either scanned in global cycles or on independent per-host schedules.
  */
-public class ScanThreadManager extends Observable implements Observer, Runnable {
+public class ScanThreadManager extends Observable implements Runnable {
+
+    private static final Histogram cycleDuration = Metrics.histogram("portwatch_cycle_duration_seconds",
+            "Duration of scan cycles, excluding the wait between cycles", null, Histogram.DURATION_BUCKETS);
+    private static final Histogram scheduleLag = Metrics.histogram("portwatch_schedule_lag_seconds",
+            "Delay between an independently scheduled scan falling due and starting", null, Histogram.DURATION_BUCKETS);
+
+    private static final Counter livenessSkipped = Metrics.counter("portwatch_liveness_skipped_total",
+            "Port scans of hosts skipped because the liveness sweep found them down", null);
+    private static final Gauge livenessSaved = Metrics.gauge("portwatch_liveness_saved_seconds",
+            "Estimated scan time saved by the last cycle's liveness sweep", null);
+
+    private static final long THROUGHPUT_REPORT_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final int HOST_CHUNK_SIZE = 4096; //hosts expanded and liveness swept at a time in a cycle
+
+    private final AtomicInteger activeScans = new AtomicInteger();
+    private volatile boolean cycleSubmitting = false; //true until a cycle has submitted all of its batches
 
     private ScanConfig config;
-    private Thread[] threads; //thread pool
+    private SupervisedScanEngine engine; //shared by all scans
+    private ExecutorService workers; //bounded pool of scanning threads, reused across cycles
+    private AdaptiveInterval adaptiveInterval; //null if intervals are fixed
+    private ShardSizer shardSizer; //null if batches aren't sharded
+    private RateBudget rateBudget; //null if nmap runs aren't rate limited
 
-    private ArrayList<HostProfile> hostPool; //pool of host profiles for a single scan cycle
-    private int threadsCompleted = 0; //threads completed for a single scan cycle
+    //independent scheduling state, guarded by schedule
+    private final HostSchedule schedule = new HostSchedule(); //queued hosts by key, profiles are looked up once due
+    private final HashSet<String> inFlightHosts = new HashSet<String>(); //hosts being scanned, rescheduled on completion
+    private final HashMap<String, Long> namedKeys = new HashMap<String, Long>(); //keys of hosts that aren't addresses
+    private final HashMap<Long, String> namedHosts = new HashMap<Long, String>(); //hosts that aren't addresses by key
+    private long nextNamedKey = -1; //named hosts are keyed below 0, addresses by their packed address
 
     /**
      * @param config scanning configuration to handle
+     * @param scanHistory history of scan results, used by engines that reuse earlier results
+     * @throws IOException if the scan engine can't be started
      */
-    public ScanThreadManager(ScanConfig config) {
+    public ScanThreadManager(ScanConfig config, ScanHistory scanHistory) throws IOException {
         this.config = config;
-        this.threads = new Thread[this.config.getMaxThreads()];
+        this.workers = Executors.newFixedThreadPool(this.config.getMaxThreads(), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "scan-worker-" + this.count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.rateBudget = createRateBudget();
+        this.engine = new SupervisedScanEngine(createEngine(config, scanHistory, this.rateBudget), config);
+        if (this.config.getShardSize() > 0) {
+            this.shardSizer = new ShardSizer(this.config.getShardSize(), this.config.getShardTargetSeconds());
+        }
+        if (this.config.isAdaptive()) {
+            this.adaptiveInterval = new AdaptiveInterval(this.config.getAdaptiveMinSeconds(),
+                    this.config.getAdaptiveMaxSeconds(), this.config.getAdaptiveBackoff());
+        }
+
+        Metrics.gauge("portwatch_active_scans", "Scans currently running", null).source(new Gauge.Source() {
+            @Override
+            public double get() {
+                return activeScans.get();
+            }
+        });
+        Metrics.gauge("portwatch_scan_workers", "Maximum number of concurrent scans", null)
+                .set(this.config.getMaxThreads());
     }
 
     /**
-     * Run scan cycles
+     * @return budget shared by this manager's nmap runs, null if the config sets no maxRate
      */
-    public void run() {
-        Logger.logDebug("Beginning scan cycles");
-        while (!Thread.interrupted()) {
+    private RateBudget createRateBudget() {
+        if (this.config.getMaxRate() == 0) {
+            return null;
+        }
+        final ThreadPoolExecutor pool = (ThreadPoolExecutor) this.workers; //fixed thread pools are ThreadPoolExecutors
+        return new RateBudget(this.config.getMaxRate(), this.config.getMaxThreads(), new RateBudget.Demand() {
+            @Override
+            public int get() {
+                //a cycle still submitting batches will fill every thread
+                return cycleSubmitting ? config.getMaxThreads() : pool.getActiveCount() + pool.getQueue().size();
+            }
+        });
+    }
+
+    /**
+     * @param config scanning configuration
+     * @param scanHistory history of scan results
+     * @param rateBudget packets per second shared by the engine's nmap runs, null if runs aren't rate limited
+     * @return configured scan engine
+     * @throws IOException if the cluster engine can't accept workers
+     */
+    public static ScanEngine createEngine(ScanConfig config, ScanHistory scanHistory, RateBudget rateBudget) throws IOException {
+        if (config.getEngine() == ScanConfig.Engine.CLUSTER) {
+            ClusterScanEngine clusterEngine = new ClusterScanEngine(config.getClusterConfig());
             try {
-                runScans();
+                clusterEngine.start();
+            } catch (IOException e) {
+                throw new IOException("Unable to accept workers: " + e.getMessage(), e);
+            }
+            return clusterEngine;
+        } else if (config.getEngine() == ScanConfig.Engine.SYNTHETIC) {
+            return new SyntheticScanEngine(config.getSyntheticConfig());
+        } else if (config.getEngine() == ScanConfig.Engine.CONNECT) {
+            return new ConnectScanEngine(config);
+        } else if (config.getScanType() == ScanConfig.ScanType.HYBRID) {
+            return new HybridScanEngine(config, scanHistory, rateBudget);
+        }
+        return new NmapScanEngine(config, rateBudget);
+    }
 
-                Thread.sleep(this.config.getWaitSeconds() * 1000);
+    /**
+     * Run scans according to the configured scheduling mode
+     */
+    public void run() {
+        if (this.config.getScheduling() == ScanConfig.Scheduling.INDEPENDENT) {
+            Logger.logDebug("Beginning independent host scheduling");
+            try {
+                runIndependent();
             } catch (InterruptedException e) {
-                break;
+                return;
+            }
+        } else {
+            Logger.logDebug("Beginning scan cycles");
+            while (!Thread.interrupted()) {
+                try {
+                    try {
+                        runScans();
+                    } catch (RuntimeException e) {
+                        //the next cycle starts over with the current host list
+                        this.cycleSubmitting = false;
+                        Logger.logError("Scan cycle failed: " + e, getClass());
+                    }
+
+                    Thread.sleep(this.config.getWaitSeconds() * 1000L);
+                } catch (InterruptedException e) {
+                    break;
+                }
             }
         }
     }
@@ -48,79 +195,507 @@ public class ScanThreadManager extends Observable implements Observer, Runnable
      */
     public void stop() {
         Logger.logDebug("Stopping scan cycles");
-        for (int i = 0; i < this.threads.length; i++) {
-            if (this.threads[i] != null) {
-                this.threads[i].interrupt();
-            }
-        }
+        this.workers.shutdownNow();
         Logger.logDebug("Scan cycles stopped");
     }
 
     /**
-     * Run a single scan cycle - scan each host profile once
+     * Run a single scan cycle - scan each host profile once.
+     * Hosts are expanded, optionally liveness swept, and batched a chunk at a time, with a bounded number of
+     * scans queued ahead of the workers. Blocks until every batch has completed, results are handed to observers
+     * as each batch completes.
      * @throws InterruptedException
      */
     private void runScans() throws InterruptedException {
         Logger.logDebug("Beginning scan cycle");
-        //reset single-cycle variables
-        this.threadsCompleted = 0;
-        this.hostPool = new ArrayList<HostProfile>(this.config.getHostProfiles());
-
-        //fill thread pool
-        for (int i = 0; i < this.threads.length; i++) {
-            if (!this.hostPool.isEmpty()) {
-                createThread(i);
+        long cycleStart = System.nanoTime();
+
+        ScanCycle cycle = new ScanCycle();
+        if (this.rateBudget != null) {
+            this.rateBudget.takeAverageLeased(); //measure budget use from the start of the cycle
+        }
+        this.cycleSubmitting = true;
+        BatchBuilder batchBuilder = new BatchBuilder(this.config.getBatchSize());
+        boolean sweep = this.config.isLivenessSweep() && this.engine.getEngine() instanceof LivenessProber;
+        long sweepNanos = 0;
+        int downHosts = 0;
+        long hosts = 0;
+
+        Iterator<HostProfile> hostProfiles = this.config.getHostProfiles().iterator();
+        while (hostProfiles.hasNext()) {
+            ArrayList<HostProfile> chunk = new ArrayList<HostProfile>();
+            while (hostProfiles.hasNext() && chunk.size() < HOST_CHUNK_SIZE) {
+                chunk.add(hostProfiles.next());
+            }
+            hosts += chunk.size();
+
+            //optionally skip port scans of hosts that don't respond to a ping sweep
+            if (sweep) {
+                long sweepStart = System.nanoTime();
+                ArrayList<HostProfile> down = new ArrayList<HostProfile>();
+                chunk = sweepLiveness(chunk, down);
+                downHosts += down.size();
+                sweepNanos += System.nanoTime() - sweepStart;
+            }
+
+            for (HostProfile hostProfile : chunk) {
+                ArrayList<HostProfile> batch = batchBuilder.add(getBatchKey(hostProfile), hostProfile);
+                if (batch != null) {
+                    cycle.submit(batch);
+                }
+            }
+        }
+        for (ArrayList<HostProfile> batch : batchBuilder.flush()) {
+            cycle.submit(batch);
+        }
+        this.cycleSubmitting = false;
+        cycle.awaitAll();
+
+        long cycleNanos = System.nanoTime() - cycleStart;
+        cycleDuration.observeNanos(cycleNanos);
+        long cycleMillis = TimeUnit.NANOSECONDS.toMillis(cycleNanos);
+        Logger.logDebug(String.format("Scan cycle of %d hosts (%s engine) completed in %d ms, %.1f hosts/s", hosts,
+                this.engine.getName(), cycleMillis, hosts * 1000.0 / Math.max(1, cycleMillis)));
+        logRateBudgetUse();
+
+        if (sweep) {
+            //down hosts would have taken at least as long as the average live batch, usually longer due to timeouts
+            int batchSize = this.config.getBatchSize();
+            long skippedBatches = (downHosts + batchSize - 1) / batchSize;
+            long savedNanos = cycle.completed > 0 ? skippedBatches * (cycle.scanNanos / cycle.completed) - sweepNanos : -sweepNanos;
+            livenessSaved.set(savedNanos / 1e9);
+            Logger.logDebug(String.format("Liveness sweep took %d ms, skipped %d down hosts, saved ~%d ms of scan time",
+                    TimeUnit.NANOSECONDS.toMillis(sweepNanos), downHosts, TimeUnit.NANOSECONDS.toMillis(savedNanos)));
+        }
+    }
+
+    /**
+     * Log the average rate leased since the last report, if nmap runs are rate limited
+     */
+    private void logRateBudgetUse() {
+        if (this.rateBudget != null) {
+            Logger.logDebug(String.format("Rate budget use: %.0f of %d pps on average", this.rateBudget.takeAverageLeased(),
+                    this.rateBudget.getPacketsPerSecond()));
+        }
+    }
+
+    /**
+     * Scans of a single cycle. Submits batches, sharding them if configured, and delivers results in completion order.
+     */
+    private class ScanCycle {
+
+        private CompletionService<ScanThread> completion = new ExecutorCompletionService<ScanThread>(workers);
+        private HashMap<ScanThread, ShardedBatch> shardedBatches = new HashMap<ScanThread, ShardedBatch>();
+        private int maxQueued = config.getMaxThreads() * 2; //scans submitted ahead of completion
+        private int queued = 0; //submitted scans not yet taken
+        private int nextId = 0;
+
+        private long scanNanos = 0; //worker time of completed scans
+        private int completed = 0; //completed batches
+
+        /**
+         * Submit a batch for scanning, first waiting for earlier scans if too many are queued
+         * @param batch host profiles sharing a port profile
+         * @throws InterruptedException
+         */
+        void submit(ArrayList<HostProfile> batch) throws InterruptedException {
+            ArrayList<ScanThread> scans = new ArrayList<ScanThread>();
+            int id = this.nextId++;
+            int shardSize = shardSizer != null ? shardSizer.getShardSize(getBatchKey(batch.get(0))) : 0;
+            if (shardSize > 0 && batch.get(0).getPortProfile().getPortSet().size() > shardSize) {
+                ShardedBatch shardedBatch = new ShardedBatch(id, batch, shardSize, this.nextId, engine);
+                for (ScanThread shard : shardedBatch.getShards()) {
+                    this.shardedBatches.put(shard, shardedBatch);
+                    scans.add(shard);
+                }
+                this.nextId += scans.size();
             } else {
-                break;
+                scans.add(new ScanThread(id, batch, engine));
+            }
+
+            for (final ScanThread scanThread : scans) {
+                while (this.queued >= this.maxQueued) {
+                    awaitOne();
+                }
+                this.completion.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        runScan(scanThread);
+                    }
+                }, scanThread);
+                this.queued++;
+            }
+        }
+
+        /**
+         * Wait for every submitted scan to complete
+         * @throws InterruptedException
+         */
+        void awaitAll() throws InterruptedException {
+            while (this.queued > 0) {
+                awaitOne();
+            }
+        }
+
+        /**
+         * Wait for the next scan to complete and deliver it, or its batch once all the batch's shards are in
+         * @throws InterruptedException
+         */
+        private void awaitOne() throws InterruptedException {
+            Future<ScanThread> future = this.completion.take();
+            this.queued--;
+            try {
+                ScanThread scanThread = future.get();
+                ShardedBatch shardedBatch = this.shardedBatches.remove(scanThread);
+                if (shardedBatch != null) {
+                    if (scanThread.isCompleted()) {
+                        shardSizer.record(getBatchKey(shardedBatch.getHostProfiles().get(0)),
+                                scanThread.getHostProfiles().get(0).getPortProfile().getPortSet().size(),
+                                scanThread.getDurationNanos());
+                    }
+                    if (!shardedBatch.shardFinished()) {
+                        return;
+                    }
+                    scanThread = shardedBatch.merge();
+                }
+                if (scanThread.isCompleted()) {
+                    this.scanNanos += scanThread.getDurationNanos();
+                    this.completed++;
+                }
+                deliver(scanThread);
+            } catch (ExecutionException e) {
+                Logger.logError(String.valueOf(e.getCause()), getClass());
+            }
+        }
+    }
+
+    /**
+     * Ping sweep host profiles, delivering down results for hosts that didn't respond.
+     * If the sweep fails every host profile is treated as live.
+     * @param hostProfiles host profiles to sweep
+     * @param downHosts list to add down host profiles to
+     * @return live host profiles, to be port scanned
+     * @throws InterruptedException
+     */
+    private ArrayList<HostProfile> sweepLiveness(ArrayList<HostProfile> hostProfiles, ArrayList<HostProfile> downHosts)
+            throws InterruptedException {
+        HashMap<String, HostSnapshot> liveness;
+        try {
+            liveness = this.engine.probeLiveness(hostProfiles);
+        } catch (ScanException e) {
+            Logger.logError("Liveness sweep failed, scanning all hosts: " + e.getMessage(), getClass());
+            return hostProfiles;
+        }
+
+        ArrayList<HostProfile> liveHosts = new ArrayList<HostProfile>();
+        HashMap<String, HostSnapshot> downResults = new HashMap<String, HostSnapshot>();
+        for (HostProfile hostProfile : hostProfiles) {
+            HostSnapshot snapshot = liveness.get(hostProfile.getHost());
+            if (snapshot != null && !snapshot.isUp()) {
+                downHosts.add(hostProfile);
+                downResults.put(hostProfile.getHost(), snapshot);
+            } else {
+                liveHosts.add(hostProfile);
+            }
+        }
+
+        //down transitions are reported straight from the sweep, up transitions by the live host's port scan
+        if (!downHosts.isEmpty()) {
+            livenessSkipped.add(downHosts.size());
+            deliver(ScanThread.completed(-1, downHosts, downResults));
+        }
+        return liveHosts;
+    }
+
+    /**
+     * Scan each host profile on its own schedule, with no global cycle barrier.
+     * Hosts are held in a schedule ordered by next due time and scanned as soon as they are due and a worker is free.
+     * Address hosts are scheduled by packed address, a host's profile is only created once it is due.
+     * @throws InterruptedException
+     */
+    private void runIndependent() throws InterruptedException {
+        final Semaphore freeWorkers = new Semaphore(this.config.getMaxThreads());
+
+        //spread initial scans over the jitter window
+        synchronized (this.schedule) {
+            long now = System.currentTimeMillis();
+            for (HostGroup group : this.config.getHostProfiles().getGroups()) {
+                if (group.isAddressRange()) {
+                    AddressRanges addresses = group.getAddresses();
+                    for (long i = 0; i < addresses.size(); i++) {
+                        this.schedule.add(addresses.get(i), now + randomJitterMillis());
+                    }
+                } else {
+                    enqueue(group.toString(), now + randomJitterMillis());
+                }
             }
         }
 
-        //wait until this cycle is completed to begin next
-        while (this.threadsCompleted != this.config.getHostProfiles().size()) {
-            Thread.sleep(500);
+        int scanCount = 0;
+        final AtomicInteger hostsScanned = new AtomicInteger(); //since last throughput report
+        long reportStart = System.nanoTime();
+        while (!Thread.interrupted()) {
+            //report throughput periodically, there are no cycles to report on
+            long reportNanos = System.nanoTime() - reportStart;
+            if (reportNanos >= THROUGHPUT_REPORT_NANOS) {
+                int hosts = hostsScanned.getAndSet(0);
+                Logger.logDebug(String.format("Scanned %d hosts (%s engine) in the last %d s, %.1f hosts/s", hosts,
+                        this.engine.getName(), TimeUnit.NANOSECONDS.toSeconds(reportNanos),
+                        hosts / (reportNanos / 1e9)));
+                logRateBudgetUse();
+                reportStart = System.nanoTime();
+            }
+
+            freeWorkers.acquire();
+            final long dueMillis;
+            final HostProfile hostProfile;
+            try {
+                synchronized (this.schedule) {
+                    long delayMillis;
+                    while ((delayMillis = this.schedule.peekDueMillis() - System.currentTimeMillis()) > 0) {
+                        this.schedule.wait(this.schedule.isEmpty() ? 0 : delayMillis);
+                    }
+                    dueMillis = this.schedule.peekDueMillis();
+                    String host = getHost(this.schedule.poll());
+                    //scan with the host's current profile, which may have been reloaded since it was scheduled
+                    hostProfile = this.config.getHostProfiles().get(host);
+                    if (hostProfile == null) {
+                        forget(host); //removed by a reload not yet applied
+                    } else {
+                        this.inFlightHosts.add(host);
+                    }
+                }
+            } catch (InterruptedException e) {
+                freeWorkers.release();
+                throw e;
+            }
+            if (hostProfile == null) {
+                freeWorkers.release();
+                continue;
+            }
+
+            ArrayList<HostProfile> batch = new ArrayList<HostProfile>();
+            batch.add(hostProfile);
+            final ScanThread scanThread = new ScanThread(scanCount++, batch, this.engine);
+            this.workers.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        scheduleLag.observe(Math.max(0, System.currentTimeMillis() - dueMillis) / 1000.0);
+                        runScan(scanThread);
+                        deliver(scanThread);
+                        hostsScanned.incrementAndGet();
+                    } finally {
+                        reschedule(hostProfile.getHost());
+                        freeWorkers.release();
+                    }
+                }
+            });
         }
-        Logger.logDebug("Scan cycle completed");
     }
 
     /**
-     * Remove thread from thread pool, stop observing it
-     * @param thread thread to remove and stop observing
+     * Queue a host's next independently scheduled scan. Caller must hold the schedule lock.
+     * @param host host to scan
+     * @param dueMillis time the host is due to be scanned, epoch millis
      */
-    private void removeThread(ScanThread thread) {
-        this.threads[thread.getId()] = null;
-        thread.deleteObservers();
+    private void enqueue(String host, long dueMillis) {
+        this.schedule.add(getKey(host), dueMillis);
+        this.schedule.notifyAll(); //the host may be due before the one being waited for
     }
 
     /**
-     * Create and start new thread with next host profile in host pool
-     * Removes selected host profile from host pool
-     * @param id index in thread pool to insert new thread
+     * Schedule a host's next scan relative to the completion of its last one, unless it was removed meanwhile
+     * @param host host that finished scanning
      */
-    private synchronized void createThread(int id) {
-        ScanThread scanThread = new ScanThread(id, this.hostPool.remove(0), this.config);
-        scanThread.addObserver(this);
-        this.threads[id] = new Thread(scanThread);
-        this.threads[id].start();
+    private void reschedule(String host) {
+        synchronized (this.schedule) {
+            this.inFlightHosts.remove(host);
+            HostProfile hostProfile = this.config.getHostProfiles().get(host);
+            if (hostProfile != null) {
+                long delayMillis = getIntervalMillis(hostProfile) + randomJitterMillis();
+                enqueue(host, System.currentTimeMillis() + delayMillis);
+            }
+        }
     }
 
+    /**
+     * Get a host's schedule key, assigning one to a named host. Caller must hold the schedule lock.
+     * @param host host to get key for
+     * @return packed address of an address host, a negative key otherwise
+     */
+    private long getKey(String host) {
+        long address = Ipv4.parseCanonical(host);
+        if (address >= 0) {
+            return address;
+        }
+        Long key = this.namedKeys.get(host);
+        if (key == null) {
+            key = this.nextNamedKey--;
+            this.namedKeys.put(host, key);
+            this.namedHosts.put(key, host);
+        }
+        return key;
+    }
 
-    @Override
-    public synchronized void update(Observable observed, Object object) {
-        if (observed instanceof ScanThread) {
-            //thread completed scan
-            ScanThread thread = (ScanThread) observed;
+    /**
+     * Caller must hold the schedule lock.
+     * @param key schedule key
+     * @return host of key
+     */
+    private String getHost(long key) {
+        return key >= 0 ? Ipv4.format(key) : this.namedHosts.get(key);
+    }
+
+    /**
+     * Unschedule a host and release its key. Caller must hold the schedule lock.
+     * @param host host no longer configured
+     */
+    private void forget(String host) {
+        long address = Ipv4.parseCanonical(host);
+        if (address >= 0) {
+            this.schedule.remove(address);
+            return;
+        }
+        Long key = this.namedKeys.remove(host);
+        if (key != null) {
+            this.namedHosts.remove(key);
+            this.schedule.remove(key);
+        }
+    }
 
-            //remove from pool, replace if any host profiles remain
-            removeThread(thread);
-            if (!this.hostPool.isEmpty()) {
-                createThread(thread.getId());
+    /**
+     * Apply reloaded host profiles to the scheduler.
+     * Cycle scheduling picks up the config's new host list at the start of the next cycle; with independent
+     * scheduling added hosts are queued and removed hosts dequeued, modified hosts keep their due time and are
+     * scanned with their new profile.
+     * @param diff changes from the running host profiles, already replaced in the config
+     */
+    public void applyHostChanges(HostProfileDiff diff) {
+        for (HostProfile hostProfile : diff.getRemoved()) {
+            if (this.adaptiveInterval != null) {
+                this.adaptiveInterval.remove(hostProfile.getHost());
             }
+            ScanThread.removeHost(hostProfile);
+            removeFingerprints(hostProfile);
+        }
+        for (HostProfile hostProfile : diff.getModified()) {
+            removeFingerprints(hostProfile); //counts of a replaced port profile are never read again
+        }
+        if (this.config.getScheduling() != ScanConfig.Scheduling.INDEPENDENT) {
+            return;
+        }
+
+        synchronized (this.schedule) {
+            for (HostProfile hostProfile : diff.getRemoved()) {
+                forget(hostProfile.getHost());
+            }
+            long now = System.currentTimeMillis();
+            for (HostProfile hostProfile : diff.getAdded()) {
+                //a host removed and re-added mid-scan is rescheduled once that scan completes
+                String host = hostProfile.getHost();
+                if (!this.inFlightHosts.contains(host) && !this.schedule.contains(getKey(host))) {
+                    enqueue(host, now + randomJitterMillis());
+                }
+            }
+        }
+    }
 
-            this.threadsCompleted++;
+    /**
+     * Drop a host's fingerprint schedule if hybrid scans keep one
+     * @param hostProfile host profile removed or modified
+     */
+    private void removeFingerprints(HostProfile hostProfile) {
+        if (this.engine.getEngine() instanceof HybridScanEngine) {
+            ((HybridScanEngine) this.engine.getEngine()).removeHost(hostProfile.getHost());
+        }
+    }
+
+    /**
+     * Run a scan on the calling worker thread, counting it as active while it runs
+     * @param scanThread scan to run
+     */
+    private void runScan(ScanThread scanThread) {
+        this.activeScans.incrementAndGet();
+        try {
+            scanThread.run();
+        } finally {
+            this.activeScans.decrementAndGet();
+        }
+    }
+
+    /**
+     * @param hostProfile host profile to get scan interval for
+     * @return milliseconds between the host profile's scans
+     */
+    private long getIntervalMillis(HostProfile hostProfile) {
+        if (this.adaptiveInterval != null) {
+            return this.adaptiveInterval.getIntervalMillis(hostProfile.getHost(), getBaseIntervalMillis(hostProfile));
+        }
+        return getBaseIntervalMillis(hostProfile);
+    }
+
+    /**
+     * @param hostProfile host profile to get configured scan interval for
+     * @return milliseconds between the host profile's scans as configured
+     */
+    private long getBaseIntervalMillis(HostProfile hostProfile) {
+        int intervalSeconds = hostProfile.getIntervalSeconds() > 0 ? hostProfile.getIntervalSeconds() : this.config.getWaitSeconds();
+        return intervalSeconds * 1000L;
+    }
 
-            //notify PortWatcher of scan completion
-            this.setChanged();
-            this.notifyObservers(thread);
+    /**
+     * Record the outcome of a host profile's scan, adjusting its interval if intervals are adaptive.
+     * Called by observers while a scan is delivered, before the host is rescheduled.
+     * @param hostProfile host profile that was scanned
+     * @param changed true if the scan detected a change
+     */
+    public void recordOutcome(HostProfile hostProfile, boolean changed) {
+        if (this.adaptiveInterval != null) {
+            this.adaptiveInterval.record(hostProfile.getHost(), getBaseIntervalMillis(hostProfile), changed,
+                    hostProfile.hasOwnMetrics());
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * @return adaptive intervals, null if intervals are fixed
+     */
+    public AdaptiveInterval getAdaptiveInterval() {
+        return this.adaptiveInterval;
+    }
+
+    /**
+     * @return random delay within the configured jitter window, in milliseconds
+     */
+    private long randomJitterMillis() {
+        long jitterMillis = this.config.getJitterSeconds() * 1000L;
+        return jitterMillis > 0 ? ThreadLocalRandom.current().nextLong(jitterMillis + 1) : 0;
+    }
+
+    /**
+     * Hand a finished scan's results, or its failure, to observers. Scans interrupted by stopping aren't delivered.
+     * Synchronized as independently scheduled scans complete on worker threads.
+     * @param thread finished scan
+     */
+    private synchronized void deliver(ScanThread thread) {
+        if (thread.isCompleted() || thread.isFailed()) {
+            try {
+                //notify PortWatcher of scan completion
+                this.setChanged();
+                this.notifyObservers(thread);
+            } catch (RuntimeException e) {
+                //never let a failure handling one batch's results stop scanning
+                Logger.logError(e.toString(), getClass());
+            }
+        }
+    }
+
+    /**
+     * @param hostProfile host profile to get key for
+     * @return key shared by host profiles that can be scanned together
+     */
+    private String getBatchKey(HostProfile hostProfile) {
+        //scan type is currently global, but is part of what makes two profiles batchable
+        return this.config.getScanType() + " " + hostProfile.getPortProfile().toString();
+    }
+}
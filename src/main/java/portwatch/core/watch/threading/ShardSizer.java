@@ -0,0 +1,73 @@
+package portwatch.core.watch.threading;
+
+import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Gauge;
+import portwatch.core.metrics.Metrics;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shard sizes for splitting a batch's ports into concurrently scanned shards.
+ * Sizes are either fixed, or tuned per batch key so each shard takes about a target duration,
+ * estimated from the scan time per port of earlier shards.
+ */
+public class ShardSizer {
+
+    public static final int MIN_SHARD_SIZE = 128;
+    private static final double SMOOTHING = 0.3; //weight of the latest observation in the moving average
+
+    private static final Gauge shardSizeGauge = Metrics.gauge("portwatch_shard_size_ports",
+            "Current shard size per batch scan type and port spec", "batch");
+
+    private int shardSize; //configured shard size, used until a batch key has been observed
+    private long targetNanos; //target shard duration, 0 if shard size is fixed
+
+    private ConcurrentHashMap<String, Double> nanosPerPort; //moving average of scan time per port, per batch key
+
+    /**
+     * @param shardSize configured ports per shard
+     * @param targetSeconds target shard scan duration, 0 for fixed shard sizes
+     */
+    public ShardSizer(int shardSize, int targetSeconds) {
+        this.shardSize = shardSize;
+        this.targetNanos = targetSeconds * 1000000000L;
+        this.nanosPerPort = new ConcurrentHashMap<String, Double>();
+    }
+
+    /**
+     * @param key batch key, batches with equal keys scan alike
+     * @return ports per shard for batches with key
+     */
+    public int getShardSize(String key) {
+        Double estimate = this.nanosPerPort.get(key);
+        if (this.targetNanos == 0 || estimate == null) {
+            return this.shardSize;
+        }
+        //round down to a power of two so shard boundaries only move on large changes in scan speed
+        long size = (long) Math.min(Integer.MAX_VALUE, this.targetNanos / Math.max(1, estimate));
+        return Math.max(MIN_SHARD_SIZE, Integer.highestOneBit((int) Math.max(1, size)));
+    }
+
+    /**
+     * Record a completed shard's scan duration
+     * @param key batch key of shard
+     * @param ports number of ports in shard
+     * @param durationNanos shard scan duration
+     */
+    public void record(String key, int ports, long durationNanos) {
+        if (this.targetNanos == 0 || ports == 0) {
+            return;
+        }
+        int previousSize = getShardSize(key);
+        double observed = (double) durationNanos / ports;
+        Double previous = this.nanosPerPort.get(key);
+        this.nanosPerPort.put(key, previous == null ? observed : previous + SMOOTHING * (observed - previous));
+
+        int size = getShardSize(key);
+        shardSizeGauge.set(key, size);
+        if (size != previousSize) {
+            Logger.logDebug(String.format("Shard of %d ports took %d ms, shard size for %s now %d ports", ports,
+                    durationNanos / 1000000, key, size));
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package portwatch.core.watch.threading;
+
+import portwatch.core.config.profile.host.HostProfile;
+import portwatch.core.config.profile.port.PortSet;
+import portwatch.core.config.profile.port.PortSpecProfile;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+import portwatch.core.watch.scan.ScanEngine;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Batch whose port profile is split into shards, each scanned as its own ScanThread.
+ * Once every shard has finished the shard results are merged into a single result per host.
+ */
+class ShardedBatch {
+
+    private int id;
+    private ArrayList<HostProfile> hostProfiles;
+    private ArrayList<ScanThread> shards;
+    private int finished = 0;
+
+    /**
+     * @param id batch index within scan cycle
+     * @param hostProfiles host profiles of batch, all sharing the same port profile
+     * @param shardSize maximum ports per shard
+     * @param firstShardId id of first shard's ScanThread, following shards are numbered consecutively
+     * @param engine engine to scan shards with
+     */
+    ShardedBatch(int id, ArrayList<HostProfile> hostProfiles, int shardSize, int firstShardId, ScanEngine engine) {
+        this.id = id;
+        this.hostProfiles = hostProfiles;
+        this.shards = new ArrayList<ScanThread>();
+
+        PortSet portSet = hostProfiles.get(0).getPortProfile().getPortSet();
+        for (PortSet shardPorts : portSet.split(shardSize)) {
+            PortSpecProfile shardProfile = new PortSpecProfile(shardPorts);
+            ArrayList<HostProfile> shardHosts = new ArrayList<HostProfile>();
+            for (HostProfile hostProfile : hostProfiles) {
+                shardHosts.add(new HostProfile(hostProfile.getHost(), shardProfile, hostProfile.getIntervalSeconds(),
+                        hostProfile.getMetricLabel()));
+            }
+            this.shards.add(new ScanThread(firstShardId + this.shards.size(), shardHosts, engine));
+        }
+    }
+
+    /**
+     * @return host profiles of batch, before sharding
+     */
+    ArrayList<HostProfile> getHostProfiles() {
+        return this.hostProfiles;
+    }
+
+    /**
+     * @return shard scans, in ascending port order
+     */
+    ArrayList<ScanThread> getShards() {
+        return this.shards;
+    }
+
+    /**
+     * Record a shard as finished
+     * @return true if every shard has now finished
+     */
+    boolean shardFinished() {
+        return ++this.finished == this.shards.size();
+    }
+
+    /**
+     * Merge shard results, a host is up if any shard found it up.
+     * @return completed scan of the batch's original host profiles, failed if any shard failed
+     */
+    ScanThread merge() {
+        long durationNanos = 0;
+        for (ScanThread shard : this.shards) {
+            if (!shard.isCompleted()) {
+                //a partial result would report the failed shard's ports as closed
+                return shard.isFailed() ? ScanThread.failed(this.id, this.hostProfiles, shard.getError())
+                        : new ScanThread(this.id, this.hostProfiles, null);
+            }
+            durationNanos += shard.getDurationNanos();
+        }
+
+        HashMap<String, HostSnapshot> results = new HashMap<String, HostSnapshot>();
+        final PortSnapshot.Builder builder = new PortSnapshot.Builder();
+        for (int i = 0; i < this.hostProfiles.size(); i++) {
+            builder.reset();
+            boolean up = false;
+            long timestamp = 0;
+            for (ScanThread shard : this.shards) {
+                HostSnapshot result = shard.getResult(shard.getHostProfiles().get(i));
+                if (result == null) {
+                    continue;
+                }
+                timestamp = Math.max(timestamp, result.getTimestamp());
+                if (result.isUp()) {
+                    up = true;
+                    result.getPorts().forEachPort(new PortSnapshot.ChangeVisitor() {
+                        @Override
+                        public void portChanged(int port, int oldState, int oldService, int state, int service) {
+                            builder.add(port, state, service);
+                        }
+                    });
+                }
+            }
+            String host = this.hostProfiles.get(i).getHost();
+            results.put(host, up ? new HostSnapshot(timestamp, true, builder.build()) : HostSnapshot.down(timestamp));
+        }
+        return ScanThread.completed(this.id, this.hostProfiles, results, durationNanos);
+    }
+}
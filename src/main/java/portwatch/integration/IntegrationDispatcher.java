@@ -0,0 +1,235 @@
+package portwatch.integration;
+
+import portwatch.core.logging.Logger;
+import portwatch.core.metrics.Counter;
+import portwatch.core.metrics.Gauge;
+import portwatch.core.metrics.Histogram;
+import portwatch.core.metrics.Metrics;
+import portwatch.core.watch.model.HostUpdate;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.Observable;
+import java.util.Observer;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Decouples an integration from the scanner.
+ * Host updates are placed in a bounded queue and delivered to the integration by a dedicated thread,
+ * so a slow integration can't stall scanning. Integrations observe the dispatcher rather than the PortWatcher.
+ */
+public class IntegrationDispatcher extends Observable implements Observer, Runnable {
+
+    public enum OverflowPolicy { BLOCK, DROP_OLDEST, COALESCE }
+
+    public static final int DEFAULT_QUEUE_SIZE = 1000;
+
+    private static final Histogram deliveryLatency = Metrics.histogram("portwatch_integration_delivery_seconds",
+            "Time from an update being queued to its delivery to the integration completing", "integration",
+            Histogram.DURATION_BUCKETS);
+    private static final Counter droppedUpdates = Metrics.counter("portwatch_integration_dropped_total",
+            "Updates discarded because the integration's queue was full", "integration");
+    private static final Counter coalescedUpdates = Metrics.counter("portwatch_integration_coalesced_total",
+            "Updates merged into a queued update because the integration's queue was full", "integration");
+
+    /**
+     * Queued update with the time it was first queued
+     */
+    private static class QueuedUpdate {
+        private final HostUpdate update;
+        private final long queuedNanos;
+
+        QueuedUpdate(HostUpdate update, long queuedNanos) {
+            this.update = update;
+            this.queuedNanos = queuedNanos;
+        }
+    }
+
+    private String name; //integration name, for logging
+    private int capacity;
+    private OverflowPolicy overflowPolicy;
+
+    private final ArrayDeque<QueuedUpdate> queue;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = this.lock.newCondition();
+    private final Condition notFull = this.lock.newCondition();
+
+    private long dropped = 0; //updates discarded due to overflow
+    private long coalesced = 0; //updates merged into a queued update due to overflow
+
+    /**
+     * @param integration integration to deliver updates to
+     * @param capacity maximum number of queued updates
+     * @param overflowPolicy action taken when an update arrives and the queue is full
+     */
+    public IntegrationDispatcher(Integration integration, int capacity, OverflowPolicy overflowPolicy) {
+        this.name = integration.getClass().getSimpleName();
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.queue = new ArrayDeque<QueuedUpdate>(capacity);
+        addObserver(integration);
+
+        Metrics.gauge("portwatch_integration_queue_depth", "Updates waiting for delivery to the integration", "integration")
+                .source(this.name, new Gauge.Source() {
+                    @Override
+                    public double get() {
+                        return getQueueDepth();
+                    }
+                });
+    }
+
+    /**
+     * Parse overflow policy from its configuration name
+     * @param policy "block", "dropOldest" or "coalesce"
+     * @return parsed policy, null if unknown
+     */
+    public static OverflowPolicy parsePolicy(String policy) {
+        if (policy.equals("block")) {
+            return OverflowPolicy.BLOCK;
+        } else if (policy.equals("dropOldest")) {
+            return OverflowPolicy.DROP_OLDEST;
+        } else if (policy.equals("coalesce")) {
+            return OverflowPolicy.COALESCE;
+        }
+        return null;
+    }
+
+    /**
+     * Start delivery thread
+     */
+    public void start() {
+        Thread thread = new Thread(this, "dispatch-" + this.name);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Deliver queued updates until interrupted
+     */
+    public void run() {
+        while (!Thread.interrupted()) {
+            QueuedUpdate queued;
+            this.lock.lock();
+            try {
+                while (this.queue.isEmpty()) {
+                    this.notEmpty.await();
+                }
+                queued = this.queue.removeFirst();
+                this.notFull.signal();
+            } catch (InterruptedException e) {
+                break;
+            } finally {
+                this.lock.unlock();
+            }
+
+            try {
+                this.setChanged();
+                this.notifyObservers(queued.update);
+                deliveryLatency.observeNanos(this.name, System.nanoTime() - queued.queuedNanos);
+                Logger.logDebug(String.format("%s delivered update for %s, %d queued", this.name, queued.update.getHost(), getQueueDepth()));
+            } catch (RuntimeException e) {
+                //never let a misbehaving integration kill its delivery thread
+                Logger.logError(e.toString(), getClass());
+            }
+        }
+    }
+
+    /**
+     * Queue an update for delivery, applying the overflow policy if the queue is full
+     * @param update update to queue
+     */
+    public void enqueue(HostUpdate update) {
+        this.lock.lock();
+        try {
+            if (this.queue.size() >= this.capacity) {
+                if (this.overflowPolicy == OverflowPolicy.BLOCK) {
+                    while (this.queue.size() >= this.capacity) {
+                        this.notFull.await();
+                    }
+                } else if (this.overflowPolicy == OverflowPolicy.COALESCE && coalesceInto(update)) {
+                    return;
+                } else {
+                    QueuedUpdate oldest = this.queue.removeFirst();
+                    this.dropped++;
+                    droppedUpdates.inc(this.name);
+                    Logger.logError(String.format("%s queue full, dropped update for %s", this.name, oldest.update.getHost()), getClass());
+                }
+            }
+            this.queue.addLast(new QueuedUpdate(update, System.nanoTime()));
+            this.notEmpty.signal();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    /**
+     * Merge an update into the latest queued update for the same host, dropping both if they cancel out. Lock must be held.
+     * @param update update to merge
+     * @return true if merged, false if no update for the host is queued
+     */
+    private boolean coalesceInto(HostUpdate update) {
+        Iterator<QueuedUpdate> queued = this.queue.descendingIterator();
+        while (queued.hasNext()) {
+            QueuedUpdate pending = queued.next();
+            if (pending.update.getHost().equals(update.getHost())) {
+                HostUpdate merged = HostUpdate.coalesce(pending.update, update);
+                queued.remove();
+                if (merged.getType() == HostUpdate.UpdateType.UPDATE && merged.getPortUpdates().isEmpty()) {
+                    this.notFull.signal(); //every port changed back, nothing left to report
+                } else {
+                    this.queue.addLast(new QueuedUpdate(merged, pending.queuedNanos)); //latency counts from the earliest update
+                }
+                this.coalesced++;
+                coalescedUpdates.inc(this.name);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int getQueueDepth() {
+        this.lock.lock();
+        try {
+            return this.queue.size();
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public int getCapacity() {
+        return this.capacity;
+    }
+
+    public long getDropped() {
+        this.lock.lock();
+        try {
+            return this.dropped;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public long getCoalesced() {
+        this.lock.lock();
+        try {
+            return this.coalesced;
+        } finally {
+            this.lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return this.name;
+    }
+
+    @Override
+    public void update(Observable observed, Object object) {
+        if (object instanceof HostUpdate) {
+            //PortWatcher detected update, hand off without waiting for the integration
+            enqueue((HostUpdate) object);
+        }
+    }
+}
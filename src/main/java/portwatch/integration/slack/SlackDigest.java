@@ -0,0 +1,84 @@
+package portwatch.integration.slack;
+
+import java.util.ArrayList;
+
+/**
+ * Collects formatted updates into digest messages no longer than a maximum length.
+ */
+public class SlackDigest {
+
+    private int maxLength; //maximum characters per message
+    private ArrayList<String> pending;
+
+    /**
+     * @param maxLength maximum characters per message
+     */
+    public SlackDigest(int maxLength) {
+        this.maxLength = maxLength;
+        this.pending = new ArrayList<String>();
+    }
+
+    /**
+     * @param formattedUpdate formatted update to include in the next digest
+     * @return true if this is the first update of the digest
+     */
+    public synchronized boolean add(String formattedUpdate) {
+        this.pending.add(formattedUpdate);
+        return this.pending.size() == 1;
+    }
+
+    /**
+     * Remove all pending updates, packed into as few messages as fit the maximum length.
+     * Updates are only split across messages if a single update exceeds the maximum length.
+     * @return digest messages, in update order
+     */
+    public ArrayList<String> drain() {
+        ArrayList<String> updates;
+        synchronized (this) {
+            updates = this.pending;
+            this.pending = new ArrayList<String>();
+        }
+
+        ArrayList<String> messages = new ArrayList<String>();
+        StringBuilder message = new StringBuilder();
+        for (String update : updates) {
+            for (String part : split(update.trim())) {
+                if (message.length() > 0 && message.length() + 1 + part.length() > this.maxLength) {
+                    messages.add(message.toString());
+                    message.setLength(0);
+                }
+                if (message.length() > 0) {
+                    message.append('\n');
+                }
+                message.append(part);
+            }
+        }
+        if (message.length() > 0) {
+            messages.add(message.toString());
+        }
+        return messages;
+    }
+
+    /**
+     * Split an update that is too long for one message, preferring line boundaries
+     * @param update update to split
+     * @return parts no longer than the maximum length
+     */
+    private ArrayList<String> split(String update) {
+        ArrayList<String> parts = new ArrayList<String>();
+        int start = 0;
+        while (update.length() - start > this.maxLength) {
+            int end = update.lastIndexOf('\n', start + this.maxLength);
+            if (end <= start) {
+                end = start + this.maxLength; //single line too long, hard split
+                parts.add(update.substring(start, end));
+                start = end;
+            } else {
+                parts.add(update.substring(start, end));
+                start = end + 1;
+            }
+        }
+        parts.add(update.substring(start));
+        return parts;
+    }
+}
@@ -6,28 +6,54 @@ import com.ullink.slack.simpleslackapi.impl.SlackSessionFactory;
 
 import portwatch.core.config.IntegrationConfig;
 import portwatch.core.logging.Logger;
+import portwatch.core.util.TokenBucket;
 import portwatch.core.watch.model.HostUpdate;
 import portwatch.core.watch.model.PortUpdate;
 import portwatch.integration.Integration;
 
 import java.io.IOException;
 import java.util.Observable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Slack integration. Sends messages to a specified slack channel when updates are observed.
+ * Updates arriving within the coalescing window are merged into digest messages, which are sent
+ * no faster than Slack's per-channel rate limit allows.
  */
 public class SlackIntegration extends Integration {
 
+    public static final int DEFAULT_COALESCE_SECONDS = 5;
+    public static final double DEFAULT_MESSAGES_PER_SECOND = 1.0; //Slack's documented per-channel limit
+    public static final int DEFAULT_BURST = 1;
+    public static final int DEFAULT_MAX_MESSAGE_LENGTH = 4000; //Slack truncates longer messages
+
     private SlackSession session; //current session
     private SlackChannel channel; //channel messages are sent to
 
-    private boolean connectionFailed = false; //true if a slack session could not be created
+    private boolean failed = false; //true if the settings are invalid or a slack session could not be created
+
+    private int coalesceSeconds; //window in which updates are merged into one digest
+    private SlackDigest digest;
+    private TokenBucket rateLimiter;
+    private ScheduledExecutorService sender; //sends digests once their window has passed
 
     /**
      * @param integrationConfig integration configuration
      */
     public SlackIntegration(IntegrationConfig integrationConfig) {
+        this(integrationConfig, SlackSessionFactory.createWebSocketSlackSession(integrationConfig.get("apiKey")));
+    }
+
+    /**
+     * @param integrationConfig integration configuration
+     * @param session session to send messages through, not yet connected
+     */
+    public SlackIntegration(IntegrationConfig integrationConfig, SlackSession session) {
         super(integrationConfig);
+        this.session = session;
         setup();
     }
 
@@ -35,13 +61,93 @@ public class SlackIntegration extends Integration {
      * Attempt initialization of integration
      */
     private void setup() {
+        this.coalesceSeconds = getIntSetting("coalesceSeconds", DEFAULT_COALESCE_SECONDS);
+        int maxMessageLength = getIntSetting("maxMessageLength", DEFAULT_MAX_MESSAGE_LENGTH);
+        double messagesPerSecond = getRateSetting("messagesPerSecond", DEFAULT_MESSAGES_PER_SECOND);
+        int burst = getIntSetting("burst", DEFAULT_BURST);
+        if (this.coalesceSeconds == 0 || maxMessageLength == 0 || messagesPerSecond == 0 || burst == 0) {
+            this.failed = true;
+            return;
+        }
+        this.digest = new SlackDigest(maxMessageLength);
+        this.rateLimiter = new TokenBucket(messagesPerSecond, burst);
+        this.sender = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "slack-sender");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+
         try {
-            this.session = SlackSessionFactory.createWebSocketSlackSession(integrationConfig.get("apiKey"));
             this.session.connect();
             this.channel = session.findChannelByName(integrationConfig.get("channel"));
         } catch (IOException e) {
             Logger.logError(e.getMessage(), getClass());
-            this.connectionFailed = true;
+            this.failed = true;
+        }
+    }
+
+    /**
+     * @param key integration config key
+     * @param defaultValue value to use if key isn't configured
+     * @return configured positive integer value, 0 if the value is invalid
+     */
+    private int getIntSetting(String key, int defaultValue) {
+        String value = integrationConfig.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            int parsed = Integer.parseInt(value);
+            if (parsed > 0) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            //logged below
+        }
+        Logger.logError(String.format("Invalid %s: %s", key, value), getClass());
+        return 0;
+    }
+
+    /**
+     * @param key integration config key
+     * @param defaultValue value to use if key isn't configured
+     * @return configured positive rate, 0 if the value is invalid
+     */
+    private double getRateSetting(String key, double defaultValue) {
+        String value = integrationConfig.get(key);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            double parsed = Double.parseDouble(value);
+            if (parsed > 0 && !Double.isInfinite(parsed)) {
+                return parsed;
+            }
+        } catch (NumberFormatException e) {
+            //logged below
+        }
+        Logger.logError(String.format("Invalid %s: %s", key, value), getClass());
+        return 0;
+    }
+
+    /**
+     * Send all pending updates as digest messages, waiting for the rate limiter before each message
+     */
+    private void sendDigest() {
+        for (String message : this.digest.drain()) {
+            try {
+                this.rateLimiter.acquire();
+                Logger.logDebug("Sending slack message");
+                this.session.sendMessage(this.channel, message);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                Logger.logError(e.toString(), getClass());
+            }
         }
     }
 
@@ -49,7 +155,7 @@ public class SlackIntegration extends Integration {
      * @param update update object to format
      * @return formatted slack message string for update
      */
-    private String formatUpdate(HostUpdate update) {
+    static String formatUpdate(HostUpdate update) {
         StringBuilder updateStr = new StringBuilder();
         if (update.getType() == HostUpdate.UpdateType.INITIAL || update.getType() == HostUpdate.UpdateType.UP) {
             if (update.getType() == HostUpdate.UpdateType.INITIAL) {
@@ -73,22 +179,30 @@ public class SlackIntegration extends Integration {
             }
         } else if (update.getType() == HostUpdate.UpdateType.DOWN) {
             updateStr.append(String.format("Host *%s* is down.\n", update.getHost()));
+        } else if (update.getType() == HostUpdate.UpdateType.FAILED) {
+            updateStr.append(String.format("Host *%s* could not be scanned: %s\n", update.getHost(), update.getReason()));
         }
         return updateStr.toString();
     }
 
     @Override
     public void update(Observable observed, Object object) {
-        if (connectionFailed) {
-            //integration connection failed, no need to continue observing
+        if (this.failed) {
+            //integration setup or connection failed, no need to continue observing
             observed.deleteObserver(this);
             return;
         }
 
         if (object instanceof HostUpdate) {
-            //PortWatcher detected update
-            Logger.logDebug("Sending slack message");
-            session.sendMessage(channel, formatUpdate((HostUpdate) object));
+            //PortWatcher detected update, the first update of a digest starts its coalescing window
+            if (this.digest.add(formatUpdate((HostUpdate) object))) {
+                this.sender.schedule(new Runnable() {
+                    @Override
+                    public void run() {
+                        sendDigest();
+                    }
+                }, this.coalesceSeconds, TimeUnit.SECONDS);
+            }
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,91 @@
+package portwatch.core.watch.history;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class StateStoreTest {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        this.directory = Files.createTempDirectory("portwatch-state").toFile();
+        this.file = new File(this.directory, "state");
+    }
+
+    @After
+    public void tearDown() {
+        for (File child : this.directory.listFiles()) {
+            child.delete();
+        }
+        this.directory.delete();
+    }
+
+    @Test
+    public void restoresLatestSnapshotPerHost() throws IOException {
+        StateStore store = new StateStore(this.file);
+        store.load();
+        store.save("a", snapshot(1, 22));
+        store.save("b", snapshot(2, 80));
+        store.save("a", snapshot(3, 443));
+        store.close();
+
+        HashMap<String, HostSnapshot> snapshots = new StateStore(this.file).load();
+
+        assertEquals(2, snapshots.size());
+        assertEquals(3, snapshots.get("a").getTimestamp());
+        assertEquals(PortSnapshot.OPEN, snapshots.get("a").getPorts().getState(443));
+        assertEquals(2, snapshots.get("b").getTimestamp());
+    }
+
+    @Test
+    public void compactsInPlaceAndKeepsSaving() throws IOException {
+        StateStore store = new StateStore(this.file);
+        store.load();
+        store.save("removed", snapshot(0, 22));
+        for (int i = 1; i <= 1000; i++) {
+            store.save(i % 2 == 0 ? "a" : "b", snapshot(i, 65535)); //about 16 KB per record
+            if (i == 10) {
+                store.remove("removed");
+            }
+        }
+        store.close();
+
+        assertTrue(this.file.length() <= 8 << 20); //compacted rather than grown past 8 MB
+        HashMap<String, HostSnapshot> snapshots = new StateStore(this.file).load();
+        assertEquals(2, snapshots.size());
+        assertFalse(snapshots.containsKey("removed"));
+        assertEquals(1000, snapshots.get("a").getTimestamp());
+        assertEquals(999, snapshots.get("b").getTimestamp());
+    }
+
+    @Test
+    public void startsOverWithUnrecognizedFile() throws IOException {
+        Files.write(this.file.toPath(), "not a state file".getBytes("UTF-8"));
+
+        StateStore store = new StateStore(this.file);
+        assertTrue(store.load().isEmpty());
+        store.save("a", snapshot(1, 22));
+        store.close();
+
+        assertTrue(new File(this.file.getPath() + ".bad").exists());
+        assertEquals(1, new StateStore(this.file).load().size());
+    }
+
+    private static HostSnapshot snapshot(long timestamp, int port) {
+        return new HostSnapshot(timestamp, true, new PortSnapshot.Builder().add(port, "open", "ssh").build());
+    }
+}
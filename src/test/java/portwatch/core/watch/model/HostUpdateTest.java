@@ -0,0 +1,77 @@
+package portwatch.core.watch.model;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class HostUpdateTest {
+
+    private static final PortStatus OPEN_SSH = new PortStatus("open", "ssh");
+    private static final PortStatus CLOSED = new PortStatus("closed", "ssh");
+
+    @Test
+    public void failureKeepsEarlierChanges() {
+        HostUpdate update = update(HostUpdate.UpdateType.UPDATE, new PortUpdate(22, CLOSED, OPEN_SSH));
+        HostUpdate initial = update(HostUpdate.UpdateType.INITIAL, new PortUpdate(22, null, OPEN_SSH));
+        HostUpdate up = new HostUpdate(HostUpdate.UpdateType.UP, "h");
+        HostUpdate down = new HostUpdate(HostUpdate.UpdateType.DOWN, "h");
+        HostUpdate failed = new HostUpdate(HostUpdate.UpdateType.FAILED, "h", "timed out");
+
+        assertSame(update, HostUpdate.coalesce(update, failed));
+        assertSame(initial, HostUpdate.coalesce(initial, failed));
+        assertSame(up, HostUpdate.coalesce(up, failed));
+        assertSame(down, HostUpdate.coalesce(down, failed));
+    }
+
+    @Test
+    public void laterFailureSupersedesEarlierFailure() {
+        HostUpdate first = new HostUpdate(HostUpdate.UpdateType.FAILED, "h", "timed out");
+        HostUpdate second = new HostUpdate(HostUpdate.UpdateType.FAILED, "h", "nmap exited with 1");
+
+        assertEquals("nmap exited with 1", HostUpdate.coalesce(first, second).getReason());
+    }
+
+    @Test
+    public void updateSupersedesFailure() {
+        HostUpdate failed = new HostUpdate(HostUpdate.UpdateType.FAILED, "h", "timed out");
+        HostUpdate update = update(HostUpdate.UpdateType.UPDATE, new PortUpdate(22, CLOSED, OPEN_SSH));
+
+        assertSame(update, HostUpdate.coalesce(failed, update));
+    }
+
+    @Test
+    public void mergesPortUpdatesKeepingEarliestOldStatus() {
+        PortStatus openHttp = new PortStatus("open", "http");
+        HostUpdate earlier = update(HostUpdate.UpdateType.UPDATE, new PortUpdate(22, CLOSED, OPEN_SSH),
+                new PortUpdate(80, CLOSED, openHttp));
+        HostUpdate later = update(HostUpdate.UpdateType.UPDATE, new PortUpdate(22, OPEN_SSH, CLOSED),
+                new PortUpdate(443, CLOSED, openHttp));
+
+        HostUpdate merged = HostUpdate.coalesce(earlier, later);
+
+        assertEquals(HostUpdate.UpdateType.UPDATE, merged.getType());
+        assertEquals(2, merged.getPortUpdates().size()); //22 changed back
+        assertEquals(80, merged.getPortUpdates().get(0).getPort());
+        assertEquals(443, merged.getPortUpdates().get(1).getPort());
+    }
+
+    @Test
+    public void describesUpdateWithNoPortChanges() {
+        HostUpdate earlier = update(HostUpdate.UpdateType.UPDATE, new PortUpdate(22, CLOSED, OPEN_SSH));
+        HostUpdate later = update(HostUpdate.UpdateType.UPDATE, new PortUpdate(22, OPEN_SSH, CLOSED));
+
+        HostUpdate merged = HostUpdate.coalesce(earlier, later);
+
+        assertTrue(merged.getPortUpdates().isEmpty());
+        assertEquals("h update: no port changes", merged.toString());
+    }
+
+    private static HostUpdate update(HostUpdate.UpdateType type, PortUpdate... portUpdates) {
+        return new HostUpdate(type, "h", new ArrayList<PortUpdate>(Arrays.asList(portUpdates)));
+    }
+}
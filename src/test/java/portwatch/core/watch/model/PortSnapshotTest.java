@@ -0,0 +1,107 @@
+package portwatch.core.watch.model;
+
+import org.junit.Test;
+import portwatch.core.config.profile.port.PortSet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class PortSnapshotTest {
+
+    private static final String[] SERVICES = {"ssh", "http", "https", "smtp"};
+
+    @Test
+    public void reportsEveryChangedPortWithoutMask() {
+        PortSnapshot oldPorts = new PortSnapshot.Builder().add(22, "open", "ssh").add(80, "open", "http")
+                .add(443, "filtered", "https").build();
+        PortSnapshot newPorts = new PortSnapshot.Builder().add(22, "open", "ssh").add(80, "open", "http-proxy")
+                .add(8080, "open", "http").build();
+
+        assertEquals(Arrays.asList("80 open/http>open/http-proxy", "443 filtered/https>closed/?",
+                "8080 closed/?>open/http"), changes(oldPorts, newPorts, null));
+    }
+
+    @Test
+    public void ignoresChangesOutsideMask() {
+        //odd ports 1 and 5 share a word with the masked ports and shift the service ids of the ports after them,
+        //so the service ids of the whole word line up although port 4 changed service
+        PortSnapshot oldPorts = new PortSnapshot.Builder().add(1, "open", "ssh").add(2, "open", "ssh")
+                .add(4, "open", "http").build();
+        PortSnapshot newPorts = new PortSnapshot.Builder().add(2, "open", "ssh").add(4, "open", "ssh")
+                .add(5, "open", "http").build();
+        PortSet evenPorts = new PortSet().add(2).add(4).add(6);
+
+        assertEquals(Arrays.asList("4 open/http>open/ssh"), changes(oldPorts, newPorts, evenPorts));
+        assertEquals(Arrays.asList("1 open/ssh>closed/?", "4 open/http>open/ssh", "5 closed/?>open/http"),
+                changes(oldPorts, newPorts, null));
+    }
+
+    @Test
+    public void skipsMaskedPortsWhenOnlyPortsOutsideMaskChanged() {
+        PortSnapshot oldPorts = new PortSnapshot.Builder().add(1, "open", "ssh").add(2, "open", "ssh").build();
+        PortSnapshot newPorts = new PortSnapshot.Builder().add(2, "open", "ssh").build();
+
+        assertEquals(new ArrayList<String>(), changes(oldPorts, newPorts, new PortSet().add(2)));
+    }
+
+    @Test
+    public void matchesPortByPortComparison() {
+        Random random = new Random(1);
+        PortSet evenPorts = new PortSet();
+        for (int port = 2; port <= PortSet.MAX_PORT; port += 2) {
+            evenPorts.add(port);
+        }
+        for (int round = 0; round < 50; round++) {
+            PortSnapshot oldPorts = randomSnapshot(random);
+            PortSnapshot newPorts = randomSnapshot(random);
+
+            assertEquals(expectedChanges(oldPorts, newPorts, null), changes(oldPorts, newPorts, null));
+            assertEquals(expectedChanges(oldPorts, newPorts, evenPorts), changes(oldPorts, newPorts, evenPorts));
+        }
+    }
+
+    /**
+     * Ports dense in a few words so that most words hold ports on both sides
+     */
+    private static PortSnapshot randomSnapshot(Random random) {
+        PortSnapshot.Builder builder = new PortSnapshot.Builder();
+        for (int port = 1; port <= 512; port++) {
+            if (random.nextInt(3) == 0) {
+                builder.add(port, random.nextBoolean() ? "open" : "filtered", SERVICES[random.nextInt(SERVICES.length)]);
+            }
+        }
+        return builder.build();
+    }
+
+    private static ArrayList<String> expectedChanges(PortSnapshot oldPorts, PortSnapshot newPorts, PortSet mask) {
+        ArrayList<String> changes = new ArrayList<String>();
+        for (int port = 1; port <= PortSet.MAX_PORT; port++) {
+            if ((mask == null || mask.contains(port)) && (oldPorts.getState(port) != newPorts.getState(port)
+                    || oldPorts.getServiceId(port) != newPorts.getServiceId(port))) {
+                changes.add(describe(port, oldPorts.getState(port), oldPorts.getServiceId(port),
+                        newPorts.getState(port), newPorts.getServiceId(port)));
+            }
+        }
+        return changes;
+    }
+
+    private static ArrayList<String> changes(PortSnapshot oldPorts, PortSnapshot newPorts, PortSet mask) {
+        final ArrayList<String> changes = new ArrayList<String>();
+        int count = PortSnapshot.diff(oldPorts, newPorts, mask, new PortSnapshot.ChangeVisitor() {
+            @Override
+            public void portChanged(int port, int oldState, int oldService, int newState, int newService) {
+                changes.add(describe(port, oldState, oldService, newState, newService));
+            }
+        });
+        assertEquals(changes.size(), count);
+        return changes;
+    }
+
+    private static String describe(int port, int oldState, int oldService, int newState, int newService) {
+        return String.format("%d %s/%s>%s/%s", port, PortSnapshot.stateName(oldState), ServiceTable.nameOf(oldService),
+                PortSnapshot.stateName(newState), ServiceTable.nameOf(newService));
+    }
+}
@@ -0,0 +1,123 @@
+package portwatch.core.watch.scan;
+
+import org.junit.After;
+import org.junit.Test;
+import portwatch.core.watch.model.HostSnapshot;
+import portwatch.core.watch.model.PortSnapshot;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ConnectScannerTest {
+
+    private static final InetAddress LOOPBACK = InetAddress.getLoopbackAddress();
+
+    private ArrayList<ServerSocket> servers = new ArrayList<ServerSocket>();
+    private ArrayList<Socket> clients = new ArrayList<Socket>();
+
+    @After
+    public void closeSockets() throws IOException {
+        for (Socket client : this.clients) {
+            client.close();
+        }
+        for (ServerSocket server : this.servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void reportsOpenAndClosedPorts() throws Exception {
+        int open = listen();
+        int closed = closedPort();
+
+        HostSnapshot[] snapshots = new ConnectScanner(1000, 10).scan(new InetAddress[] {LOOPBACK}, new int[] {open, closed});
+
+        assertTrue(snapshots[0].isUp());
+        assertEquals(PortSnapshot.OPEN, snapshots[0].getPorts().getState(open));
+        assertEquals(PortSnapshot.CLOSED, snapshots[0].getPorts().getState(closed));
+    }
+
+    @Test
+    public void reportsHostWithNoAnsweringPortDown() throws Exception {
+        HostSnapshot[] snapshots = new ConnectScanner(1000, 10).scan(new InetAddress[] {LOOPBACK}, new int[] {unanswered()});
+
+        assertEquals(false, snapshots[0].isUp());
+    }
+
+    @Test
+    public void reportsUnansweredPortFilteredAfterTimeout() throws Exception {
+        int open = listen();
+        int unanswered = unanswered();
+
+        long start = System.nanoTime();
+        HostSnapshot[] snapshots = new ConnectScanner(300, 10).scan(new InetAddress[] {LOOPBACK}, new int[] {open, unanswered});
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        assertEquals(PortSnapshot.OPEN, snapshots[0].getPorts().getState(open));
+        assertEquals(PortSnapshot.FILTERED, snapshots[0].getPorts().getState(unanswered));
+        assertTrue("scan ended after " + elapsedMillis + " ms", elapsedMillis >= 300);
+    }
+
+    @Test
+    public void keepsConcurrencyAttemptsOpen() throws Exception {
+        int open = listen();
+        int closed = closedPort();
+        int[] ports = {unanswered(), open, closed, unanswered(), listen(), closedPort(), unanswered(), listen()};
+
+        long start = System.nanoTime();
+        HostSnapshot[] snapshots = new ConnectScanner(500, 2).scan(new InetAddress[] {LOOPBACK}, ports);
+        long elapsedMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+        //two unanswered attempts fill the cap, the third only starts once they expire,
+        //answered attempts must not hold a slot until the unanswered one ahead of them expires
+        assertTrue("scan ended after " + elapsedMillis + " ms", elapsedMillis >= 1000 && elapsedMillis < 1500);
+        assertEquals(PortSnapshot.OPEN, snapshots[0].getPorts().getState(open));
+        assertEquals(PortSnapshot.CLOSED, snapshots[0].getPorts().getState(closed));
+        assertEquals(PortSnapshot.FILTERED, snapshots[0].getPorts().getState(ports[6]));
+    }
+
+    /**
+     * @return port of a new listening socket
+     */
+    private int listen() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, LOOPBACK);
+        this.servers.add(server);
+        return server.getLocalPort();
+    }
+
+    /**
+     * @return port nothing listens on
+     */
+    private int closedPort() throws IOException {
+        ServerSocket server = new ServerSocket(0, 50, LOOPBACK);
+        server.close();
+        return server.getLocalPort();
+    }
+
+    /**
+     * Listen without accepting and fill the accept backlog, so further connection attempts are never answered
+     * @return port of the listening socket
+     */
+    private int unanswered() throws IOException {
+        ServerSocket server = new ServerSocket(0, 1, LOOPBACK);
+        this.servers.add(server);
+        for (int i = 0; i < 16; i++) {
+            Socket client = new Socket();
+            this.clients.add(client);
+            try {
+                client.connect(new InetSocketAddress(LOOPBACK, server.getLocalPort()), 200);
+            } catch (IOException e) {
+                return server.getLocalPort(); //backlog is full
+            }
+        }
+        throw new IOException("Accept backlog never filled");
+    }
+}
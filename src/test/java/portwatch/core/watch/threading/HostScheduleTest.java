@@ -0,0 +1,66 @@
+package portwatch.core.watch.threading;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HostScheduleTest {
+
+    @Test
+    public void pollsHostsInDueOrder() {
+        HostSchedule schedule = new HostSchedule();
+        Random random = new Random(1);
+        for (long key = 0; key < 10000; key++) {
+            schedule.add(key, random.nextInt(1000));
+        }
+
+        long previous = Long.MIN_VALUE;
+        for (int i = 0; i < 10000; i++) {
+            long due = schedule.peekDueMillis();
+            assertTrue(due >= previous);
+            previous = due;
+            schedule.poll();
+        }
+        assertTrue(schedule.isEmpty());
+        assertEquals(Long.MAX_VALUE, schedule.peekDueMillis());
+    }
+
+    @Test
+    public void replacesDueTimeOfScheduledHost() {
+        HostSchedule schedule = new HostSchedule();
+        schedule.add(1, 100);
+        schedule.add(2, 200);
+        schedule.add(-1, 300);
+
+        schedule.add(-1, 50);
+        schedule.add(1, 400);
+
+        assertEquals(3, schedule.size());
+        assertEquals(-1, schedule.poll());
+        assertEquals(2, schedule.poll());
+        assertEquals(1, schedule.poll());
+    }
+
+    @Test
+    public void removesHostsAnywhereInSchedule() {
+        HostSchedule schedule = new HostSchedule();
+        for (long key = 0; key < 1000; key++) {
+            schedule.add(key, 1000 - key);
+        }
+        for (long key = 0; key < 1000; key += 2) {
+            assertTrue(schedule.remove(key));
+        }
+        assertFalse(schedule.remove(0));
+        assertFalse(schedule.contains(500));
+        assertTrue(schedule.contains(501));
+
+        for (long key = 999; key > 0; key -= 2) {
+            assertEquals(key, schedule.poll());
+        }
+        assertTrue(schedule.isEmpty());
+    }
+}
@@ -0,0 +1,57 @@
+package portwatch.integration.slack;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackDigestTest {
+
+    @Test
+    public void packsUpdatesIntoOneMessage() {
+        SlackDigest digest = new SlackDigest(100);
+        assertTrue(digest.add("Host *a* is down.\n"));
+        assertFalse(digest.add("Host *b* is down.\n"));
+
+        assertEquals(Arrays.asList("Host *a* is down.\nHost *b* is down."), digest.drain());
+        assertTrue(digest.drain().isEmpty());
+        assertTrue(digest.add("Host *c* is down.\n")); //starts the next digest
+    }
+
+    @Test
+    public void startsNewMessageAtMaxLength() {
+        SlackDigest digest = new SlackDigest(20);
+        digest.add("Host *a* is down.\n"); //17 characters once trimmed
+        digest.add("Host *b* is down.\n");
+        digest.add("Host *c* is down.\n");
+
+        assertEquals(Arrays.asList("Host *a* is down.", "Host *b* is down.", "Host *c* is down."), digest.drain());
+    }
+
+    @Test
+    public void splitsLongUpdateAtLineBoundaries() {
+        SlackDigest digest = new SlackDigest(21);
+        digest.add("Host *a* update:\n>*22* open\n>*80* open\n");
+
+        ArrayList<String> messages = digest.drain();
+
+        assertEquals(Arrays.asList("Host *a* update:", ">*22* open\n>*80* open"), messages);
+    }
+
+    @Test
+    public void hardSplitsSingleOverlongLine() {
+        SlackDigest digest = new SlackDigest(10);
+        digest.add("Host *a* could not be scanned");
+
+        ArrayList<String> messages = digest.drain();
+
+        assertEquals(Arrays.asList("Host *a* c", "ould not b", "e scanned"), messages);
+        for (String message : messages) {
+            assertTrue(message.length() <= 10);
+        }
+    }
+}
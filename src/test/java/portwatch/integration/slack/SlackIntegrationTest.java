@@ -0,0 +1,125 @@
+package portwatch.integration.slack;
+
+import com.ullink.slack.simpleslackapi.SlackSession;
+import org.junit.Test;
+import portwatch.core.config.IntegrationConfig;
+import portwatch.core.watch.model.HostUpdate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Observable;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class SlackIntegrationTest {
+
+    /**
+     * Local stand-in for a Slack session, records the messages sent through it
+     */
+    private static class FakeSession implements InvocationHandler {
+
+        private final SlackSession session = (SlackSession) Proxy.newProxyInstance(SlackSession.class.getClassLoader(),
+                new Class<?>[] {SlackSession.class}, this);
+        private final ArrayList<String> messages = new ArrayList<String>(); //guarded by this
+        private final ArrayList<Long> sentNanos = new ArrayList<Long>(); //guarded by this
+        private boolean connected = false; //guarded by this
+
+        @Override
+        public synchronized Object invoke(Object proxy, Method method, Object[] args) {
+            if (method.getName().equals("connect")) {
+                this.connected = true;
+            } else if (method.getName().equals("sendMessage") && args.length == 2 && args[1] instanceof String) {
+                this.messages.add((String) args[1]);
+                this.sentNanos.add(System.nanoTime());
+                notifyAll();
+            } else if (method.getName().equals("equals")) {
+                return proxy == args[0];
+            } else if (method.getName().equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            return method.getReturnType() == boolean.class ? false : null;
+        }
+
+        /**
+         * @param count number of messages to wait for
+         * @param timeoutMillis maximum time to wait
+         * @return messages sent so far
+         */
+        synchronized ArrayList<String> awaitMessages(int count, long timeoutMillis) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+            long remainingNanos;
+            while (this.messages.size() < count && (remainingNanos = deadline - System.nanoTime()) > 0) {
+                TimeUnit.NANOSECONDS.timedWait(this, remainingNanos);
+            }
+            return new ArrayList<String>(this.messages);
+        }
+    }
+
+    @Test
+    public void mergesBurstIntoOneDigest() throws Exception {
+        FakeSession fake = new FakeSession();
+        SlackIntegration integration = new SlackIntegration(config("coalesceSeconds", "1"), fake.session);
+        Observable observed = new Observable();
+        for (int i = 1; i <= 5; i++) {
+            integration.update(observed, new HostUpdate(HostUpdate.UpdateType.DOWN, "10.0.0." + i));
+        }
+
+        assertTrue(fake.awaitMessages(1, 500).isEmpty()); //window still open
+        ArrayList<String> messages = fake.awaitMessages(2, 1500);
+
+        assertEquals(1, messages.size());
+        for (int i = 1; i <= 5; i++) {
+            assertTrue(messages.get(0).contains("Host *10.0.0." + i + "* is down."));
+        }
+    }
+
+    @Test
+    public void pacesMessagesWithRateLimit() throws Exception {
+        FakeSession fake = new FakeSession();
+        IntegrationConfig config = config("coalesceSeconds", "1");
+        config.put("maxMessageLength", "30"); //one update per message
+        config.put("messagesPerSecond", "10");
+        SlackIntegration integration = new SlackIntegration(config, fake.session);
+        Observable observed = new Observable();
+        for (int i = 1; i <= 4; i++) {
+            integration.update(observed, new HostUpdate(HostUpdate.UpdateType.DOWN, "10.0.0." + i));
+        }
+
+        assertEquals(4, fake.awaitMessages(4, 3000).size());
+        synchronized (fake) {
+            for (int i = 1; i < 4; i++) {
+                long gapMillis = TimeUnit.NANOSECONDS.toMillis(fake.sentNanos.get(i) - fake.sentNanos.get(i - 1));
+                assertTrue("messages sent " + gapMillis + " ms apart", gapMillis >= 90);
+            }
+        }
+    }
+
+    @Test
+    public void disablesIntegrationWithInvalidSettings() {
+        String[][] invalid = {{"coalesceSeconds", "soon"}, {"maxMessageLength", "0"}, {"messagesPerSecond", "-1"},
+                {"burst", "1.5"}};
+        for (String[] setting : invalid) {
+            FakeSession fake = new FakeSession();
+            SlackIntegration integration = new SlackIntegration(config(setting[0], setting[1]), fake.session);
+            Observable observed = new Observable();
+            observed.addObserver(integration);
+
+            integration.update(observed, new HostUpdate(HostUpdate.UpdateType.DOWN, "10.0.0.1"));
+
+            assertFalse(setting[0], fake.connected);
+            assertEquals(setting[0], 0, observed.countObservers());
+        }
+    }
+
+    private static IntegrationConfig config(String key, String value) {
+        IntegrationConfig config = new IntegrationConfig();
+        config.put("channel", "general");
+        config.put(key, value);
+        return config;
+    }
+}